@@ -554,6 +554,18 @@ module.controller('RealmTokenDetailCtrl', function($scope, Realm, realm, $http,
         $scope.realm.accessCodeLifespanUserAction = TimeUnit.convert($scope.realm.accessCodeLifespanUserAction, from, to);
     });
 
+    $scope.realm.refreshTokenLifespanUnit = TimeUnit.autoUnit(realm.refreshTokenLifespan);
+    $scope.realm.refreshTokenLifespan = TimeUnit.toUnit(realm.refreshTokenLifespan, $scope.realm.refreshTokenLifespanUnit);
+    $scope.$watch('realm.refreshTokenLifespanUnit', function(to, from) {
+        $scope.realm.refreshTokenLifespan = TimeUnit.convert($scope.realm.refreshTokenLifespan, from, to);
+    });
+
+    $scope.realm.bruteForceProtected = realm.bruteForceProtected;
+    $scope.realm.failureFactor = realm.failureFactor;
+    $scope.realm.waitIncrementSeconds = realm.waitIncrementSeconds;
+    $scope.realm.maxFailureWaitSeconds = realm.maxFailureWaitSeconds;
+    $scope.realm.failureDecaySeconds = realm.failureDecaySeconds;
+
 
     var oldCopy = angular.copy($scope.realm);
     $scope.changed = false;
@@ -569,10 +581,12 @@ module.controller('RealmTokenDetailCtrl', function($scope, Realm, realm, $http,
         delete realmCopy["tokenLifespanUnit"];
         delete realmCopy["accessCodeLifespanUnit"];
         delete realmCopy["accessCodeLifespanUserActionUnit"];
+        delete realmCopy["refreshTokenLifespanUnit"];
 
         realmCopy.tokenLifespan = TimeUnit.toSeconds($scope.realm.tokenLifespan, $scope.realm.tokenLifespanUnit)
         realmCopy.accessCodeLifespan = TimeUnit.toSeconds($scope.realm.accessCodeLifespan, $scope.realm.accessCodeLifespanUnit)
         realmCopy.accessCodeLifespanUserAction = TimeUnit.toSeconds($scope.realm.accessCodeLifespanUserAction, $scope.realm.accessCodeLifespanUserActionUnit)
+        realmCopy.refreshTokenLifespan = TimeUnit.toSeconds($scope.realm.refreshTokenLifespan, $scope.realm.refreshTokenLifespanUnit)
 
         $scope.changed = false;
         Realm.update(realmCopy, function () {
@@ -0,0 +1,73 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.util.Base64Url;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Base64Url} against the previous String based implementation, {@link LegacyBase64Url}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64UrlBenchmark {
+
+    /**
+     * Typical sizes: a JWS header, a signature and a token payload with a fair amount of roles.
+     */
+    @Param({"32", "256", "2048"})
+    public int size;
+
+    private byte[] bytes;
+    private String encoded;
+    private char[] buffer;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        encoded = Base64Url.encode(bytes);
+        buffer = new char[Base64Url.encodedLength(size)];
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64Url.encode(bytes);
+    }
+
+    @Benchmark
+    public char[] encodeIntoBuffer() {
+        Base64Url.encode(bytes, 0, bytes.length, buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        return LegacyBase64Url.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64Url.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] decodeLegacy() {
+        return LegacyBase64Url.decode(encoded);
+    }
+}
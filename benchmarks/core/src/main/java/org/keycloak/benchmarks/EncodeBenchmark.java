@@ -0,0 +1,42 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.util.Encode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Percent encoding and decoding of redirect URIs and form parameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+    private static final String REDIRECT_URI = "https://localhost:8443/customer-portal/customers/view.jsp?first=1&second=two words";
+
+    @Benchmark
+    public String encodeQueryParam() {
+        return Encode.encodeQueryParamAsIs(REDIRECT_URI);
+    }
+
+    @Benchmark
+    public String encodePathSegment() {
+        return Encode.encodePathSegment("customer portal/view");
+    }
+
+    @Benchmark
+    public String decode() {
+        return Encode.decode("https%3A%2F%2Flocalhost%3A8443%2Fcustomer-portal%2Fcustomers%2Fview.jsp%3Ffirst%3D1%26second%3Dtwo+words");
+    }
+}
@@ -0,0 +1,69 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PrivateKey;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing and signing a token, which is what the auth server pays for every token it issues.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWSBuilderBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int applications;
+
+    @Param({"2", "20"})
+    public int roles;
+
+    private SkeletonKeyToken token;
+    private PrivateKey privateKey;
+    private byte[] sharedSecret;
+
+    @Setup
+    public void setup() {
+        token = TokenFixtures.createToken(applications, roles);
+        privateKey = TokenFixtures.generateRsaKeyPair().getPrivate();
+        sharedSecret = new byte[32];
+        new Random(42).nextBytes(sharedSecret);
+    }
+
+    @Benchmark
+    public String rsa256() {
+        return new JWSBuilder().jsonContent(token).rsa256(privateKey);
+    }
+
+    @Benchmark
+    public String rsa256Compressed() {
+        return new JWSBuilder().compressed().jsonContent(token).rsa256(privateKey);
+    }
+
+    @Benchmark
+    public String hmac256() {
+        return new JWSBuilder().jsonContent(token).hmac256(sharedSecret);
+    }
+
+    @Benchmark
+    public String none() {
+        return new JWSBuilder().jsonContent(token).none();
+    }
+}
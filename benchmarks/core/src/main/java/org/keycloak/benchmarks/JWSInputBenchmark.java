@@ -0,0 +1,68 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a compact JWS serialization, without signature verification.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWSInputBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int applications;
+
+    @Param({"2", "20"})
+    public int roles;
+
+    private String encoded;
+    private String compressed;
+
+    @Setup
+    public void setup() {
+        SkeletonKeyToken token = TokenFixtures.createToken(applications, roles);
+        encoded = new JWSBuilder().jsonContent(token).none();
+        compressed = new JWSBuilder().compressed().jsonContent(token).none();
+    }
+
+    @Benchmark
+    public JWSHeader header() {
+        return new JWSInput(encoded).getHeader();
+    }
+
+    @Benchmark
+    public byte[] content() {
+        return new JWSInput(encoded).getContent();
+    }
+
+    @Benchmark
+    public SkeletonKeyToken readToken() throws IOException {
+        return new JWSInput(encoded).readJsonContent(SkeletonKeyToken.class);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken readCompressedToken() throws IOException {
+        return new JWSInput(compressed).readJsonContent(SkeletonKeyToken.class);
+    }
+}
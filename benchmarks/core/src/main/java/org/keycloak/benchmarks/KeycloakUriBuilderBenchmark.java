@@ -0,0 +1,51 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.util.KeycloakUriBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URI building as done by the adapters when redirecting to the login page and exchanging codes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeycloakUriBuilderBenchmark {
+    private static final String AUTH_URL = "https://localhost:8443/auth/rest/realms/demo/tokens/login";
+    private static final String REDIRECT_URI = "https://localhost:8443/customer-portal/customers/view.jsp?first=1&second=2";
+    private static final String STATE = "b1d3a6c2-5f4e-4a7b-9c8d-0e1f2a3b4c5d";
+
+    private final KeycloakUriBuilder template = KeycloakUriBuilder.fromUri(AUTH_URL);
+
+    @Benchmark
+    public URI loginRedirect() {
+        return template.clone()
+                .queryParam("client_id", "customer-portal")
+                .queryParam("redirect_uri", REDIRECT_URI)
+                .queryParam("state", STATE)
+                .build();
+    }
+
+    @Benchmark
+    public URI parseAndBuild() {
+        return KeycloakUriBuilder.fromUri(REDIRECT_URI).replaceQueryParam("code", STATE).build();
+    }
+
+    @Benchmark
+    public URI pathTemplate() {
+        return KeycloakUriBuilder.fromUri("https://localhost:8443/auth/rest").path("/realms/{realm}/tokens/login").build("demo");
+    }
+}
@@ -0,0 +1,43 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.models.utils.TimeBasedOTP;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * TimeBasedOTP.validate as it was before it reused Macs: a Calendar per call, hex strings for the interval and
+ * Mac.getInstance for every interval of the delay window.  Kept only as a baseline for
+ * {@link TotpValidationBenchmark}.
+ */
+public class LegacyTimeBasedOTP {
+    public static boolean validate(String token, byte[] secret) {
+        long currentInterval = (GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis() / 1000)
+                / TimeBasedOTP.DEFAULT_INTERVAL_SECONDS;
+        for (int i = TimeBasedOTP.DEFAULT_DELAY_WINDOW; i >= 0; --i) {
+            String steps = Long.toHexString(currentInterval - i).toUpperCase();
+            while (steps.length() < 16) steps = "0" + steps;
+            byte[] bArray = new BigInteger("10" + steps, 16).toByteArray();
+            byte[] msg = new byte[bArray.length - 1];
+            System.arraycopy(bArray, 1, msg, 0, msg.length);
+            byte[] hash;
+            try {
+                Mac hmac = Mac.getInstance(TimeBasedOTP.DEFAULT_ALGORITHM);
+                hmac.init(new SecretKeySpec(new String(secret).getBytes(), "RAW"));
+                hash = hmac.doFinal(msg);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            int offset = hash[hash.length - 1] & 0xf;
+            int binary = ((hash[offset] & 0x7f) << 24) | ((hash[offset + 1] & 0xff) << 16)
+                    | ((hash[offset + 2] & 0xff) << 8) | (hash[offset + 3] & 0xff);
+            String result = Integer.toString(binary % 1000000);
+            while (result.length() < TimeBasedOTP.DEFAULT_NUMBER_DIGITS) result = "0" + result;
+            if (result.equals(token)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.VerificationException;
+import org.keycloak.VerifiedTokenCache;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bearer token verification as done by the adapters on every request, with and without the verified token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RSATokenVerifierBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int applications;
+
+    @Param({"2", "20"})
+    public int roles;
+
+    private String encoded;
+    private String compressed;
+    private PublicKey publicKey;
+    private VerifiedTokenCache cache;
+
+    @Setup
+    public void setup() {
+        KeyPair keyPair = TokenFixtures.generateRsaKeyPair();
+        SkeletonKeyToken token = TokenFixtures.createToken(applications, roles);
+        encoded = new JWSBuilder().jsonContent(token).rsa256(keyPair.getPrivate());
+        compressed = new JWSBuilder().compressed().jsonContent(token).rsa256(keyPair.getPrivate());
+        publicKey = keyPair.getPublic();
+        cache = new VerifiedTokenCache(1000);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken verify() throws VerificationException {
+        return RSATokenVerifier.verifyToken(encoded, publicKey, TokenFixtures.REALM);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken verifyCompressed() throws VerificationException {
+        return RSATokenVerifier.verifyToken(compressed, publicKey, TokenFixtures.REALM);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken verifyCached() throws VerificationException {
+        return RSATokenVerifier.verifyToken(encoded, publicKey, TokenFixtures.REALM, cache);
+    }
+}
@@ -0,0 +1,49 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.representations.SkeletonKeyToken;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds realistic tokens for the benchmarks.  Token size is driven by the number of applications the user has
+ * access to and the number of roles per application (and realm).
+ */
+public final class TokenFixtures {
+    public static final String REALM = "demo";
+
+    private TokenFixtures() {
+    }
+
+    public static SkeletonKeyToken createToken(int applications, int roles) {
+        SkeletonKeyToken token = new SkeletonKeyToken();
+        token.id("a1b2c3d4-e5f6-7890-abcd-ef0123456789");
+        token.principal("bburke@redhat.com");
+        token.audience(REALM);
+        token.issuedFor("customer-portal");
+        token.issuedAt(System.currentTimeMillis() / 1000);
+        token.expiration(Integer.MAX_VALUE);
+        token.setRealmAccess(new SkeletonKeyToken.Access());
+        for (int r = 0; r < roles; r++) {
+            token.getRealmAccess().addRole("realm-role-" + r);
+        }
+        for (int a = 0; a < applications; a++) {
+            SkeletonKeyToken.Access access = token.addAccess("application-" + a);
+            for (int r = 0; r < roles; r++) {
+                access.addRole("role-" + r);
+            }
+        }
+        return token;
+    }
+
+    public static KeyPair generateRsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
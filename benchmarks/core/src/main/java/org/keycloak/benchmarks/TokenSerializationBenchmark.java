@@ -0,0 +1,67 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SkeletonKeyToken} JSON binding through the general purpose {@link JsonSerialization} mapper compared to the
+ * streaming {@link TokenSerialization}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSerializationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int applications;
+
+    @Param({"2", "20"})
+    public int roles;
+
+    private SkeletonKeyToken token;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        token = TokenFixtures.createToken(applications, roles);
+        json = JsonSerialization.writeValueAsBytes(token);
+    }
+
+    @Benchmark
+    public byte[] writeDatabind() throws IOException {
+        return JsonSerialization.writeValueAsBytes(token);
+    }
+
+    @Benchmark
+    public byte[] writeStreaming() throws IOException {
+        return TokenSerialization.writeValueAsBytes(token);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken readDatabind() throws IOException {
+        return JsonSerialization.readValue(json, SkeletonKeyToken.class);
+    }
+
+    @Benchmark
+    public SkeletonKeyToken readStreaming() throws IOException {
+        return TokenSerialization.readValue(json, SkeletonKeyToken.class);
+    }
+}
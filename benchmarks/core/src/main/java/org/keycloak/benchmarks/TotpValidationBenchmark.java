@@ -0,0 +1,115 @@
+package org.keycloak.benchmarks;
+
+import org.keycloak.models.utils.Pbkdf2PasswordEncoder;
+import org.keycloak.models.utils.TimeBasedOTP;
+import org.keycloak.models.utils.TotpReplayCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating a password and a TOTP token the way <code>RealmModel.validateTOTP</code> does, before and after TOTP
+ * validation reused Macs and was moved in front of the password hash.  The old validation is
+ * {@link LegacyTimeBasedOTP}.
+ * <p/>
+ * The password is checked with {@link Pbkdf2PasswordEncoder#verify(String, String)}, so both variants include handing
+ * the hash to the <code>PasswordHashingExecutor</code> pool, as a login does.  The new variant also claims the token in
+ * a {@link TotpReplayCache}, which is cleared again after every claim so each call measures a first use of the token.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TotpValidationBenchmark {
+
+    private static final byte[] SECRET = "totpSecret".getBytes();
+
+    /**
+     * PBKDF2 iterations of the password hash.
+     */
+    @Param({"1", "20000"})
+    public int iterations;
+
+    private final TimeBasedOTP totp = new TimeBasedOTP();
+    private final TotpReplayCache replayCache = new TotpReplayCache();
+    private byte[] salt;
+    private String hash;
+    private String token;
+    private String wrongToken;
+
+    @Setup
+    public void setup() {
+        salt = Pbkdf2PasswordEncoder.getSalt();
+        hash = new Pbkdf2PasswordEncoder(salt, iterations).hash("password");
+    }
+
+    // tokens are only valid for two intervals of 30 seconds
+    @Setup(Level.Iteration)
+    public void generateToken() {
+        token = totp.generate(new String(SECRET));
+        wrongToken = token.equals("000000") ? "000001" : "000000";
+    }
+
+    private boolean verifyPassword(String password) {
+        return new Pbkdf2PasswordEncoder(salt, iterations).verify(password, hash);
+    }
+
+    private boolean validateBefore(String password, String token) {
+        if (!verifyPassword(password)) return false;
+        return LegacyTimeBasedOTP.validate(token, SECRET);
+    }
+
+    private boolean validateAfter(String password, String token) {
+        long interval = totp.validateInterval(token, SECRET);
+        if (interval == -1) return false;
+        if (!verifyPassword(password)) return false;
+        boolean claimed = replayCache.use("user", token, totp.getExpiration(interval));
+        replayCache.clear();
+        return claimed;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean tokenOnlyBefore() {
+        return LegacyTimeBasedOTP.validate(wrongToken, SECRET);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long tokenOnlyAfter() {
+        return totp.validateInterval(wrongToken, SECRET);
+    }
+
+    @Benchmark
+    public boolean validTokenBefore() {
+        return validateBefore("password", token);
+    }
+
+    @Benchmark
+    public boolean validTokenAfter() {
+        return validateAfter("password", token);
+    }
+
+    @Benchmark
+    public boolean wrongTokenBefore() {
+        return validateBefore("password", wrongToken);
+    }
+
+    @Benchmark
+    public boolean wrongTokenAfter() {
+        return validateAfter("password", wrongToken);
+    }
+}
@@ -1,33 +1,51 @@
 package org.keycloak;
 
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureProvider;
 import org.keycloak.representations.SkeletonKeyToken;
 
 import java.io.IOException;
 import java.security.PublicKey;
 
 /**
+ * Verifies access tokens signed with the realm key.  Despite the name, both RSA and ECDSA signed tokens are
+ * supported; the algorithm in the token header has to match the type of the realm key.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class RSATokenVerifier {
 
-    public static SkeletonKeyToken verifyToken(String tokenString, PublicKey realmKey, String realm) throws VerificationException {
-        JWSInput input = new JWSInput(tokenString);
-        boolean verified = false;
-        try {
-            verified = RSAProvider.verify(input, realmKey);
-        } catch (Exception ignore) {
-
-        }
-        if (!verified) throw new VerificationException("Token signature not validated");
+    /**
+     * Same as {@link #verifyToken(String, java.security.PublicKey, String)} but consults the given cache first and
+     * stores successfully verified tokens in it.
+     *
+     * @param cache may be null, in which case every token is fully verified
+     */
+    public static SkeletonKeyToken verifyToken(String tokenString, PublicKey realmKey, String realm, VerifiedTokenCache cache) throws VerificationException {
+        if (cache == null) return verifyToken(tokenString, realmKey, realm);
+        SkeletonKeyToken token = cache.get(tokenString);
+        if (token != null) return token;
+        token = verifyToken(tokenString, realmKey, realm);
+        cache.put(tokenString, token);
+        return token;
+    }
 
+    /**
+     * The cheap claim checks (activity, subject, audience) run before the signature is verified so that stale or
+     * misdirected tokens are rejected without an RSA operation.  Nothing from the token is trusted until the
+     * signature check has passed as well.
+     */
+    public static SkeletonKeyToken verifyToken(String tokenString, PublicKey realmKey, String realm) throws VerificationException {
+        JWSInput input = null;
         SkeletonKeyToken token = null;
         try {
+            input = new JWSInput(tokenString);
             token = input.readJsonContent(SkeletonKeyToken.class);
         } catch (IOException e) {
             throw new VerificationException(e);
+        } catch (RuntimeException e) {
+            throw new VerificationException("Failed to parse token", e);
         }
         if (!token.isActive()) {
             throw new VerificationException("Token is not active.");
@@ -40,6 +58,14 @@ public class RSATokenVerifier {
             throw new VerificationException("Token audience doesn't match domain");
 
         }
+
+        boolean verified = false;
+        try {
+            verified = SignatureProvider.verify(input, realmKey);
+        } catch (Exception ignore) {
+
+        }
+        if (!verified) throw new VerificationException("Token signature not validated");
         return token;
     }
 }
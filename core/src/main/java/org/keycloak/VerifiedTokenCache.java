@@ -0,0 +1,117 @@
+package org.keycloak;
+
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.util.Base64Url;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of bearer tokens that already passed {@link RSATokenVerifier} checks.  Entries are keyed by a
+ * SHA-256 digest of the raw token string and are dropped once the token's own expiration passes.  Tokens without
+ * an expiration are never cached.
+ * <p/>
+ * A cache instance must only be used for a single realm and realm key.  Cached tokens are shared between requests
+ * and must be treated as read-only.
+ */
+public class VerifiedTokenCache {
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    protected final ConcurrentHashMap<String, SkeletonKeyToken> tokens = new ConcurrentHashMap<String, SkeletonKeyToken>();
+    protected final int maxSize;
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    public VerifiedTokenCache(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param tokenString raw token as received on the wire
+     * @return the previously verified token, or null if it is not cached or no longer active
+     */
+    public SkeletonKeyToken get(String tokenString) {
+        String key = digest(tokenString);
+        SkeletonKeyToken token = tokens.get(key);
+        if (token == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!token.isActive()) {
+            tokens.remove(key, token);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return token;
+    }
+
+    public void put(String tokenString, SkeletonKeyToken token) {
+        if (token.getExpiration() == 0) return;
+        if (tokens.size() >= maxSize) {
+            evictExpired();
+            if (tokens.size() >= maxSize) evictOne();
+        }
+        tokens.put(digest(tokenString), token);
+    }
+
+    public void clear() {
+        tokens.clear();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    protected void evictExpired() {
+        Iterator<Map.Entry<String, SkeletonKeyToken>> it = tokens.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().isExpired()) it.remove();
+        }
+    }
+
+    protected void evictOne() {
+        Iterator<String> it = tokens.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    protected static String digest(String tokenString) {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        try {
+            return Base64Url.encode(digest.digest(tokenString.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.keycloak.adapters;
 
+import org.keycloak.VerifiedTokenCache;
+
 import java.security.KeyStore;
 import java.security.PublicKey;
 
@@ -15,6 +17,7 @@ public class ResourceMetadata {
     protected KeyStore truststore;
     protected PublicKey realmKey;
     protected String scope;
+    protected VerifiedTokenCache tokenCache;
 
     public String getResourceName() {
         return resourceName;
@@ -87,4 +90,17 @@ public class ResourceMetadata {
     public void setScope(String scope) {
         this.scope = scope;
     }
+
+    /**
+     * Cache of already verified bearer tokens.  Null if token caching is disabled.
+     *
+     * @return
+     */
+    public VerifiedTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public void setTokenCache(VerifiedTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
 }
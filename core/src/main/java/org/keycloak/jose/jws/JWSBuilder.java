@@ -1,22 +1,52 @@
 package org.keycloak.jose.jws;
 
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 import org.keycloak.jose.jws.crypto.HMACProvider;
 import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureProvider;
 import org.keycloak.util.Base64Url;
-import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.DeflateUtils;
+import org.keycloak.util.TokenSerialization;
 
 import javax.crypto.SecretKey;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Encoded headers are computed once per (alg, typ, cty, zip) and the compact serialization is assembled in a reusable,
+ * per-thread buffer so that building a token allocates little more than the resulting String.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class JWSBuilder {
+    private static final int MAX_CACHED_HEADERS = 64;
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    /**
+     * Encoded headers without typ, cty or zip, indexed by algorithm ordinal.
+     */
+    private static final char[][] plainHeaders = new char[Algorithm.values().length][];
+    private static final ConcurrentHashMap<String, char[]> headers = new ConcurrentHashMap<String, char[]>();
+
+    static {
+        for (Algorithm alg : Algorithm.values()) {
+            plainHeaders[alg.ordinal()] = buildHeader(alg, null, null, null).toCharArray();
+        }
+    }
+
+    private static final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[1024];
+        }
+    };
+
     String type;
     String contentType;
+    String compressionAlgorithm;
     byte[] contentBytes;
 
     public JWSBuilder type(String type) {
@@ -29,6 +59,16 @@ public class JWSBuilder {
         return this;
     }
 
+    /**
+     * DEFLATE the content before it is signed and announce it with a "zip":"DEF" header.
+     *
+     * @return
+     */
+    public JWSBuilder compressed() {
+        this.compressionAlgorithm = DeflateUtils.DEFLATE;
+        return this;
+    }
+
     public EncodingBuilder content(byte[] bytes) {
         this.contentBytes = bytes;
         return new EncodingBuilder();
@@ -36,7 +76,7 @@ public class JWSBuilder {
 
     public EncodingBuilder jsonContent(Object object) {
         try {
-            this.contentBytes = JsonSerialization.writeValueAsBytes(object);
+            this.contentBytes = TokenSerialization.writeValueAsBytes(object);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -45,11 +85,30 @@ public class JWSBuilder {
 
 
     protected String encodeHeader(Algorithm alg) {
+        return new String(getEncodedHeader(alg));
+    }
+
+    /**
+     * The returned array is shared and must not be modified.
+     */
+    protected char[] getEncodedHeader(Algorithm alg) {
+        if (type == null && contentType == null && compressionAlgorithm == null) return plainHeaders[alg.ordinal()];
+        String key = alg + "\n" + type + "\n" + contentType + "\n" + compressionAlgorithm;
+        char[] encoded = headers.get(key);
+        if (encoded == null) {
+            encoded = buildHeader(alg, type, contentType, compressionAlgorithm).toCharArray();
+            if (headers.size() < MAX_CACHED_HEADERS) headers.putIfAbsent(key, encoded);
+        }
+        return encoded;
+    }
+
+    protected static String buildHeader(Algorithm alg, String type, String contentType, String compressionAlgorithm) {
         StringBuilder builder = new StringBuilder("{");
         builder.append("\"alg\":\"").append(alg.toString()).append("\"");
 
         if (type != null) builder.append(",\"typ\" : \"").append(type).append("\"");
         if (contentType != null) builder.append(",\"cty\":\"").append(contentType).append("\"");
+        if (compressionAlgorithm != null) builder.append(",\"zip\":\"").append(compressionAlgorithm).append("\"");
         builder.append("}");
         try {
             return Base64Url.encode(builder.toString().getBytes("UTF-8"));
@@ -59,18 +118,28 @@ public class JWSBuilder {
     }
 
     protected String encode(Algorithm alg, byte[] data, byte[] signature) {
-        StringBuffer encoding = new StringBuffer();
-        encoding.append(encodeHeader(alg));
-        encoding.append('.');
-        encoding.append(Base64Url.encode(data));
-        encoding.append('.');
+        char[] header = getEncodedHeader(alg);
+        int length = header.length + 1 + Base64Url.encodedLength(data.length) + 1;
+        if (alg != Algorithm.none) length += Base64Url.encodedLength(signature.length);
+
+        char[] buffer = buffers.get();
+        if (buffer.length < length) {
+            buffer = new char[length];
+            if (length <= MAX_RETAINED_BUFFER) buffers.set(buffer);
+        }
+        System.arraycopy(header, 0, buffer, 0, header.length);
+        int pos = header.length;
+        buffer[pos++] = '.';
+        pos += Base64Url.encode(data, 0, data.length, buffer, pos);
+        buffer[pos++] = '.';
         if (alg != Algorithm.none) {
-            encoding.append(Base64Url.encode(signature));
+            pos += Base64Url.encode(signature, 0, signature.length, buffer, pos);
         }
-        return encoding.toString();
+        return new String(buffer, 0, pos);
     }
 
     protected byte[] marshalContent() {
+        if (compressionAlgorithm != null) return DeflateUtils.deflate(contentBytes);
         return contentBytes;
     }
 
@@ -98,6 +167,37 @@ public class JWSBuilder {
             return encode(Algorithm.RS512, data, signature);
         }
 
+        public String es256(PrivateKey privateKey) {
+            byte[] data = marshalContent();
+            byte[] signature = ECDSAProvider.sign(data, Algorithm.ES256, privateKey);
+            return encode(Algorithm.ES256, data, signature);
+        }
+
+        public String es384(PrivateKey privateKey) {
+            byte[] data = marshalContent();
+            byte[] signature = ECDSAProvider.sign(data, Algorithm.ES384, privateKey);
+            return encode(Algorithm.ES384, data, signature);
+        }
+
+        public String es512(PrivateKey privateKey) {
+            byte[] data = marshalContent();
+            byte[] signature = ECDSAProvider.sign(data, Algorithm.ES512, privateKey);
+            return encode(Algorithm.ES512, data, signature);
+        }
+
+        /**
+         * Sign with an RSA or EC private key, picking the algorithm from the key type.
+         *
+         * @param privateKey
+         * @return
+         */
+        public String sign(PrivateKey privateKey) {
+            Algorithm algorithm = SignatureProvider.getAlgorithm(privateKey);
+            byte[] data = marshalContent();
+            byte[] signature = SignatureProvider.sign(data, algorithm, privateKey);
+            return encode(algorithm, data, signature);
+        }
+
 
         public String hmac256(byte[] sharedSecret) {
             byte[] data = marshalContent();
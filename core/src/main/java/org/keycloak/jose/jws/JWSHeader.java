@@ -22,6 +22,9 @@ public class JWSHeader implements Serializable {
     @JsonProperty("cty")
     private String contentType;
 
+    @JsonProperty("zip")
+    private String compressionAlgorithm;
+
     public JWSHeader() {
     }
 
@@ -31,6 +34,11 @@ public class JWSHeader implements Serializable {
         this.contentType = contentType;
     }
 
+    public JWSHeader(Algorithm algorithm, String type, String contentType, String compressionAlgorithm) {
+        this(algorithm, type, contentType);
+        this.compressionAlgorithm = compressionAlgorithm;
+    }
+
     public Algorithm getAlgorithm() {
         return algorithm;
     }
@@ -43,6 +51,13 @@ public class JWSHeader implements Serializable {
         return contentType;
     }
 
+    /**
+     * @return "DEF" if the content is DEFLATE compressed, null otherwise
+     */
+    public String getCompressionAlgorithm() {
+        return compressionAlgorithm;
+    }
+
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
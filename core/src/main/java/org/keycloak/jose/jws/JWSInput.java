@@ -1,12 +1,18 @@
 package org.keycloak.jose.jws;
 
 import org.keycloak.util.Base64Url;
-import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.DeflateUtils;
+import org.keycloak.util.TokenSerialization;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 
 /**
+ * Splits a compact JWS serialization in a single pass.  The header, content and signature are only decoded the first
+ * time they are asked for, so input that is rejected early never pays for decoding the parts it doesn't need.
+ * <p/>
+ * Signatures are computed over the content as it appears on the wire.  If the header carries "zip":"DEF" the
+ * content is inflated transparently by {@link #readJsonContent(Class)} and {@link #readContentAsString()}.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
@@ -17,26 +23,22 @@ public class JWSInput {
     String encodedSignature;
     JWSHeader header;
     byte[] content;
+    byte[] payload;
     byte[] signature;
 
 
     public JWSInput(String wire) {
         this.wireString = wire;
-        String[] parts = wire.split("\\.");
-        if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("Parsing error");
-        encodedHeader = parts[0];
-        encodedContent = parts[1];
-        try {
-            content = Base64Url.decode(encodedContent);
-            if (parts.length > 2) {
-                encodedSignature = parts[2];
-                signature = Base64Url.decode(encodedSignature);
-
-            }
-            byte[] headerBytes = Base64Url.decode(encodedHeader);
-            header = JsonSerialization.readValue(headerBytes, JWSHeader.class);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        int headerEnd = wire.indexOf('.');
+        if (headerEnd < 0) throw new IllegalArgumentException("Parsing error");
+        int contentEnd = wire.indexOf('.', headerEnd + 1);
+        encodedHeader = wire.substring(0, headerEnd);
+        if (contentEnd < 0) {
+            encodedContent = wire.substring(headerEnd + 1);
+        } else {
+            if (wire.indexOf('.', contentEnd + 1) >= 0) throw new IllegalArgumentException("Parsing error");
+            encodedContent = wire.substring(headerEnd + 1, contentEnd);
+            if (contentEnd + 1 < wire.length()) encodedSignature = wire.substring(contentEnd + 1);
         }
     }
 
@@ -57,25 +59,53 @@ public class JWSInput {
     }
 
     public JWSHeader getHeader() {
+        if (header == null) {
+            try {
+                header = TokenSerialization.readValue(Base64Url.decode(encodedHeader), JWSHeader.class);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
         return header;
     }
 
     public byte[] getContent() {
+        if (content == null) content = Base64Url.decode(encodedContent);
         return content;
     }
 
+    /**
+     * Content after decompression.  Same as {@link #getContent()} unless the header has a "zip" parameter.
+     *
+     * @return
+     */
+    public byte[] getPayload() throws IOException {
+        if (payload == null) {
+            String zip = getHeader().getCompressionAlgorithm();
+            if (zip == null) {
+                payload = getContent();
+            } else if (DeflateUtils.DEFLATE.equals(zip)) {
+                payload = DeflateUtils.inflate(getContent());
+            } else {
+                throw new IOException("Unsupported compression algorithm: " + zip);
+            }
+        }
+        return payload;
+    }
+
     public byte[] getSignature() {
+        if (signature == null && encodedSignature != null) signature = Base64Url.decode(encodedSignature);
         return signature;
     }
 
     public <T> T readJsonContent(Class<T> type) throws IOException {
-        return JsonSerialization.readValue(content, type);
+        return TokenSerialization.readValue(getPayload(), type);
     }
 
     public String readContentAsString() {
         try {
-            return new String(content, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
+            return new String(getPayload(), "UTF-8");
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -0,0 +1,145 @@
+package org.keycloak.jose.jws.crypto;
+
+
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECKey;
+
+/**
+ * ECDSA signatures for JWS.  The JCA produces and expects DER encoded signatures while JWS uses the fixed size
+ * concatenation of R and S, so signatures are converted on the way in and out.
+ */
+public class ECDSAProvider {
+    public static String getJavaAlgorithm(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return "SHA256withECDSA";
+            case ES384:
+                return "SHA384withECDSA";
+            case ES512:
+                return "SHA512withECDSA";
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * Length in bytes of each of R and S for the given algorithm.
+     */
+    public static int getSignatureComponentLength(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return 32;
+            case ES384:
+                return 48;
+            case ES512:
+                return 66;
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * Picks the JWS algorithm matching the curve of an EC key.
+     *
+     * @param key
+     * @return
+     */
+    public static Algorithm getAlgorithm(Key key) {
+        if (!(key instanceof ECKey)) throw new IllegalArgumentException("Not an EC key");
+        int fieldSize = ((ECKey) key).getParams().getCurve().getField().getFieldSize();
+        if (fieldSize <= 256) return Algorithm.ES256;
+        if (fieldSize <= 384) return Algorithm.ES384;
+        return Algorithm.ES512;
+    }
+
+    public static Signature getSignature(Algorithm alg) {
+        try {
+            return Signature.getInstance(getJavaAlgorithm(alg));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        try {
+            Signature signature = getSignature(algorithm);
+            signature.initSign(privateKey);
+            signature.update(data);
+            return derToConcatenated(signature.sign(), getSignatureComponentLength(algorithm));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static boolean verify(JWSInput input, PublicKey publicKey) {
+        try {
+            Algorithm algorithm = input.getHeader().getAlgorithm();
+            byte[] signature = input.getSignature();
+            if (signature == null || signature.length != 2 * getSignatureComponentLength(algorithm)) return false;
+            Signature verifier = getSignature(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(input.getContent());
+            return verifier.verify(concatenatedToDer(signature));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static byte[] derToConcatenated(byte[] der, int length) {
+        int offset = 1;
+        if ((der[offset++] & 0x80) != 0) offset++; // long form sequence length, signatures never need more than one byte
+        byte[] result = new byte[2 * length];
+        offset = copyInteger(der, offset, result, 0, length);
+        copyInteger(der, offset, result, length, length);
+        return result;
+    }
+
+    private static int copyInteger(byte[] der, int offset, byte[] dest, int destOffset, int length) {
+        if (der[offset++] != 0x02) throw new IllegalArgumentException("Invalid ECDSA signature encoding");
+        int intLength = der[offset++] & 0xff;
+        int start = offset;
+        int end = offset + intLength;
+        while (end - start > length && der[start] == 0) start++;
+        if (end - start > length) throw new IllegalArgumentException("Invalid ECDSA signature encoding");
+        System.arraycopy(der, start, dest, destOffset + length - (end - start), end - start);
+        return end;
+    }
+
+    static byte[] concatenatedToDer(byte[] signature) {
+        int length = signature.length / 2;
+        byte[] r = toUnsignedInteger(signature, 0, length);
+        byte[] s = toUnsignedInteger(signature, length, length);
+        int contentLength = 2 + r.length + 2 + s.length;
+        boolean longForm = contentLength > 127;
+        byte[] der = new byte[(longForm ? 3 : 2) + contentLength];
+        int offset = 0;
+        der[offset++] = 0x30;
+        if (longForm) der[offset++] = (byte) 0x81;
+        der[offset++] = (byte) contentLength;
+        der[offset++] = 0x02;
+        der[offset++] = (byte) r.length;
+        System.arraycopy(r, 0, der, offset, r.length);
+        offset += r.length;
+        der[offset++] = 0x02;
+        der[offset++] = (byte) s.length;
+        System.arraycopy(s, 0, der, offset, s.length);
+        return der;
+    }
+
+    private static byte[] toUnsignedInteger(byte[] bytes, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end - 1 && bytes[start] == 0) start++;
+        boolean pad = (bytes[start] & 0x80) != 0;
+        byte[] result = new byte[(end - start) + (pad ? 1 : 0)];
+        System.arraycopy(bytes, start, result, pad ? 1 : 0, end - start);
+        return result;
+    }
+
+}
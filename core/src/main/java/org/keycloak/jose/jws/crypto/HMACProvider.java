@@ -3,11 +3,11 @@ package org.keycloak.jose.jws.crypto;
 
 import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.util.Base64Url;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -64,8 +64,7 @@ public class HMACProvider {
     public static boolean verify(JWSInput input, SecretKey key) {
         try {
             byte[] signature = sign(input.getContent(), input.getHeader().getAlgorithm(), key);
-            String x = Base64Url.encode(signature);
-            return x.equals(input.getEncodedSignature());
+            return input.getSignature() != null && MessageDigest.isEqual(signature, input.getSignature());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -75,8 +74,7 @@ public class HMACProvider {
     public static boolean verify(JWSInput input, byte[] sharedSecret) {
         try {
             byte[] signature = sign(input.getContent(), input.getHeader().getAlgorithm(), sharedSecret);
-            String x = Base64Url.encode(signature);
-            return x.equals(input.getEncodedSignature());
+            return input.getSignature() != null && MessageDigest.isEqual(signature, input.getSignature());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -4,15 +4,40 @@ package org.keycloak.jose.jws.crypto;
 import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSInput;
 
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
+ * Signing and verification use thread-confined, already initialized {@link Signature} engines so that the JCA
+ * provider lookup and key setup are paid once per (algorithm, key) and thread instead of on every call.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class RSAProvider {
+    /**
+     * Maximum number of initialized engines each thread keeps for signing and, separately, for verifying.
+     */
+    public static final int MAX_CACHED_SIGNATURES = 16;
+
+    private static final ThreadLocal<SignatureCache> signers = new ThreadLocal<SignatureCache>() {
+        @Override
+        protected SignatureCache initialValue() {
+            return new SignatureCache();
+        }
+    };
+
+    private static final ThreadLocal<SignatureCache> verifiers = new ThreadLocal<SignatureCache>() {
+        @Override
+        protected SignatureCache initialValue() {
+            return new SignatureCache();
+        }
+    };
+
     public static String getJavaAlgorithm(Algorithm alg) {
         switch (alg) {
             case RS256:
@@ -35,27 +60,80 @@ public class RSAProvider {
     }
 
     public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        CacheKey key = new CacheKey(algorithm, privateKey);
+        SignatureCache cache = signers.get();
         try {
-            Signature signature = getSignature(algorithm);
-            signature.initSign(privateKey);
+            Signature signature = cache.get(key);
+            if (signature == null) {
+                signature = getSignature(algorithm);
+                signature.initSign(privateKey);
+                cache.put(key, signature);
+            }
             signature.update(data);
+            // sign() resets the engine to its initialized state, ready for the next call
             return signature.sign();
         } catch (Exception e) {
+            cache.remove(key);
             throw new RuntimeException(e);
         }
     }
 
     public static boolean verify(JWSInput input, PublicKey publicKey) {
+        Algorithm algorithm = input.getHeader().getAlgorithm();
+        CacheKey key = new CacheKey(algorithm, publicKey);
+        SignatureCache cache = verifiers.get();
         try {
-            Signature verifier = getSignature(input.getHeader().getAlgorithm());
-            verifier.initVerify(publicKey);
+            Signature verifier = cache.get(key);
+            if (verifier == null) {
+                verifier = getSignature(algorithm);
+                verifier.initVerify(publicKey);
+                cache.put(key, verifier);
+            }
             verifier.update(input.getContent());
             return verifier.verify(input.getSignature());
         } catch (Exception e) {
+            // engine state is undefined after a failure, don't hand it out again
+            cache.remove(key);
             throw new RuntimeException(e);
         }
 
     }
 
+    private static class SignatureCache extends LinkedHashMap<CacheKey, Signature> {
+        SignatureCache() {
+            super(MAX_CACHED_SIGNATURES * 2, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, Signature> eldest) {
+            return size() > MAX_CACHED_SIGNATURES;
+        }
+    }
+
+    private static class CacheKey {
+        private final Algorithm algorithm;
+        private final Key key;
+        private final int hash;
+
+        CacheKey(Algorithm algorithm, Key key) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.hash = 31 * algorithm.hashCode() + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return algorithm == other.algorithm && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
 
 }
@@ -0,0 +1,68 @@
+package org.keycloak.jose.jws.crypto;
+
+
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Signs and verifies with whatever kind of asymmetric key a realm has, delegating to {@link RSAProvider} or
+ * {@link ECDSAProvider}.
+ */
+public class SignatureProvider {
+
+    /**
+     * JWS algorithm used to sign with the given key: RS256 for RSA keys, ES256/ES384/ES512 for EC keys depending
+     * on the curve.
+     *
+     * @param key
+     * @return
+     */
+    public static Algorithm getAlgorithm(Key key) {
+        if ("RSA".equals(key.getAlgorithm())) return Algorithm.RS256;
+        if ("EC".equals(key.getAlgorithm()) || "ECDSA".equals(key.getAlgorithm())) return ECDSAProvider.getAlgorithm(key);
+        throw new IllegalArgumentException("Unsupported key algorithm: " + key.getAlgorithm());
+    }
+
+    public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        switch (algorithm) {
+            case RS256:
+            case RS384:
+            case RS512:
+                return RSAProvider.sign(data, algorithm, privateKey);
+            case ES256:
+            case ES384:
+            case ES512:
+                return ECDSAProvider.sign(data, algorithm, privateKey);
+            default:
+                throw new IllegalArgumentException("Not an asymmetric signature algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Verifies the signature of the input against the public key.  Only RSA and ECDSA algorithms are accepted.
+     *
+     * @param input
+     * @param publicKey
+     * @return
+     */
+    public static boolean verify(JWSInput input, PublicKey publicKey) {
+        Algorithm algorithm = input.getHeader().getAlgorithm();
+        if (algorithm == null) return false;
+        switch (algorithm) {
+            case RS256:
+            case RS384:
+            case RS512:
+                return RSAProvider.verify(input, publicKey);
+            case ES256:
+            case ES384:
+            case ES512:
+                return ECDSAProvider.verify(input, publicKey);
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.keycloak.representations;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Issued next to an access token, so a new access token can be obtained without the user's credentials.  It only
+ * records who the token was issued to and how, the roles are looked up again when it is exchanged.
+ */
+public class RefreshToken extends JsonWebToken {
+    public static final String TYPE = "refresh";
+
+    /**
+     * Token issued by exchanging an access code.
+     */
+    public static final String GRANT_CODE = "code";
+    /**
+     * Token issued by grants/access.
+     */
+    public static final String GRANT_ACCESS = "access";
+    /**
+     * Token issued by grants/identity-token.
+     */
+    public static final String GRANT_IDENTITY = "identity";
+
+    @JsonProperty("issuedFor")
+    protected String issuedFor;
+
+    @JsonProperty("grant")
+    protected String grant;
+
+    @JsonProperty("scope")
+    protected String scope;
+
+    @JsonProperty("applications")
+    protected List<String> applications;
+
+    public String getIssuedFor() {
+        return issuedFor;
+    }
+
+    public RefreshToken issuedFor(String issuedFor) {
+        this.issuedFor = issuedFor;
+        return this;
+    }
+
+    public String getGrant() {
+        return grant;
+    }
+
+    public RefreshToken grant(String grant) {
+        this.grant = grant;
+        return this;
+    }
+
+    /**
+     * @return the scope param of the original request, if any
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    public RefreshToken scope(String scope) {
+        this.scope = scope;
+        return this;
+    }
+
+    /**
+     * @return applications the access token was restricted to, or null if it carries the roles of every application
+     */
+    public List<String> getApplications() {
+        return applications;
+    }
+
+    public RefreshToken applications(List<String> applications) {
+        this.applications = applications;
+        return this;
+    }
+}
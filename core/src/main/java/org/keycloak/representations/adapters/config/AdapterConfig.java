@@ -14,7 +14,7 @@ import org.codehaus.jackson.annotate.JsonPropertyOrder;
         "use-resource-role-mappings",
         "enable-cors", "cors-max-age", "cors-allowed-methods",
         "expose-token", "bearer-only", "scope",
-        "connection-pool-size",
+        "connection-pool-size", "token-cache-size",
         "allow-any-hostname", "disable-trust-manager", "truststore", "truststore-password",
         "client-keystore", "client-keystore-password", "client-key-password"
 })
@@ -36,6 +36,8 @@ public class AdapterConfig extends BaseAdapterConfig {
     protected String clientKeyPassword;
     @JsonProperty("connection-pool-size")
     protected int connectionPoolSize = 20;
+    @JsonProperty("token-cache-size")
+    protected int tokenCacheSize;
 
     public boolean isAllowAnyHostname() {
         return allowAnyHostname;
@@ -101,4 +103,12 @@ public class AdapterConfig extends BaseAdapterConfig {
         this.connectionPoolSize = connectionPoolSize;
     }
 
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    public void setTokenCacheSize(int tokenCacheSize) {
+        this.tokenCacheSize = tokenCacheSize;
+    }
+
 }
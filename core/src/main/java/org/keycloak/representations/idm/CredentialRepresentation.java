@@ -13,6 +13,13 @@ public class CredentialRepresentation {
     protected String value;
     protected String device;
 
+    // only used by realm import, to import passwords that were hashed already
+    protected String hashedSaltedValue;
+    protected String salt;
+    protected String algorithm;
+    protected Integer hashIterations;
+    protected Integer keySize;
+
     public String getType() {
         return type;
     }
@@ -36,4 +43,56 @@ public class CredentialRepresentation {
     public void setDevice(String device) {
         this.device = device;
     }
+
+    /**
+     * @return Base64 encoded PBKDF2 hash of the password
+     */
+    public String getHashedSaltedValue() {
+        return hashedSaltedValue;
+    }
+
+    public void setHashedSaltedValue(String hashedSaltedValue) {
+        this.hashedSaltedValue = hashedSaltedValue;
+    }
+
+    /**
+     * @return Base64 encoded salt the password was hashed with
+     */
+    public String getSalt() {
+        return salt;
+    }
+
+    public void setSalt(String salt) {
+        this.salt = salt;
+    }
+
+    /**
+     * @return PBKDF2 algorithm the password was hashed with, PBKDF2WithHmacSHA1 if null
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Integer getHashIterations() {
+        return hashIterations;
+    }
+
+    public void setHashIterations(Integer hashIterations) {
+        this.hashIterations = hashIterations;
+    }
+
+    /**
+     * @return key size in bits of the hash, 512 if null
+     */
+    public Integer getKeySize() {
+        return keySize;
+    }
+
+    public void setKeySize(Integer keySize) {
+        this.keySize = keySize;
+    }
 }
@@ -16,6 +16,14 @@ public class RealmRepresentation {
     protected Integer tokenLifespan;
     protected Integer accessCodeLifespan;
     protected Integer accessCodeLifespanUserAction;
+    protected Boolean bruteForceProtected;
+    protected Integer failureFactor;
+    protected Integer waitIncrementSeconds;
+    protected Integer maxFailureWaitSeconds;
+    protected Integer failureDecaySeconds;
+    protected Integer refreshTokenLifespan;
+    protected Boolean statelessAccessCodes;
+    protected Boolean compressTokens;
     protected Boolean enabled;
     protected Boolean sslNotRequired;
     protected Boolean registrationAllowed;
@@ -25,6 +33,7 @@ public class RealmRepresentation {
     protected Boolean updateProfileOnInitialSocialLogin;
     protected String privateKey;
     protected String publicKey;
+    protected String keyAlgorithm;
     protected RolesRepresentation roles;
     protected List<String> defaultRoles;
     protected Set<String> requiredCredentials;
@@ -208,6 +217,70 @@ public class RealmRepresentation {
         this.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
     }
 
+    public Boolean isBruteForceProtected() {
+        return bruteForceProtected;
+    }
+
+    public void setBruteForceProtected(Boolean bruteForceProtected) {
+        this.bruteForceProtected = bruteForceProtected;
+    }
+
+    public Integer getFailureFactor() {
+        return failureFactor;
+    }
+
+    public void setFailureFactor(Integer failureFactor) {
+        this.failureFactor = failureFactor;
+    }
+
+    public Integer getWaitIncrementSeconds() {
+        return waitIncrementSeconds;
+    }
+
+    public void setWaitIncrementSeconds(Integer waitIncrementSeconds) {
+        this.waitIncrementSeconds = waitIncrementSeconds;
+    }
+
+    public Integer getMaxFailureWaitSeconds() {
+        return maxFailureWaitSeconds;
+    }
+
+    public void setMaxFailureWaitSeconds(Integer maxFailureWaitSeconds) {
+        this.maxFailureWaitSeconds = maxFailureWaitSeconds;
+    }
+
+    public Integer getFailureDecaySeconds() {
+        return failureDecaySeconds;
+    }
+
+    public void setFailureDecaySeconds(Integer failureDecaySeconds) {
+        this.failureDecaySeconds = failureDecaySeconds;
+    }
+
+    public Integer getRefreshTokenLifespan() {
+        return refreshTokenLifespan;
+    }
+
+    public void setRefreshTokenLifespan(Integer refreshTokenLifespan) {
+        this.refreshTokenLifespan = refreshTokenLifespan;
+    }
+
+    public Boolean isStatelessAccessCodes() {
+        return statelessAccessCodes;
+    }
+
+    public void setStatelessAccessCodes(Boolean statelessAccessCodes) {
+        this.statelessAccessCodes = statelessAccessCodes;
+    }
+
+    public Boolean isCompressTokens() {
+        return compressTokens;
+    }
+
+    public void setCompressTokens(Boolean compressTokens) {
+        this.compressTokens = compressTokens;
+    }
+
     public List<String> getDefaultRoles() {
         return defaultRoles;
     }
@@ -232,6 +305,19 @@ public class RealmRepresentation {
         this.publicKey = publicKey;
     }
 
+    /**
+     * JWS algorithm the realm keys are generated for: RS256 (default), ES256, ES384 or ES512.
+     *
+     * @return
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public void setKeyAlgorithm(String keyAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
     public Boolean isRegistrationAllowed() {
         return registrationAllowed;
     }
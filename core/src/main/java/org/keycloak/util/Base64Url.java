@@ -1,43 +1,139 @@
 package org.keycloak.util;
 
 
-import net.iharder.Base64;
-
 /**
+ * URL-safe Base64 (RFC 4648 section 5) without padding, as used by JOSE.  Encoding and decoding work directly on
+ * arrays; the {@code encode} variants that take a destination let callers write into a buffer they already own.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class Base64Url {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final byte[] DECODABET = new byte[128];
+
+    static {
+        for (int i = 0; i < DECODABET.length; i++) DECODABET[i] = -1;
+        for (int i = 0; i < ALPHABET.length; i++) DECODABET[ALPHABET[i]] = (byte) i;
+        // be lenient and accept the standard alphabet as well
+        DECODABET['+'] = 62;
+        DECODABET['/'] = 63;
+    }
+
+    /**
+     * @return number of characters needed to encode {@code length} bytes
+     */
+    public static int encodedLength(int length) {
+        int rem = length % 3;
+        return (length / 3) * 4 + (rem == 0 ? 0 : rem + 1);
+    }
+
     public static String encode(byte[] bytes) {
-        String s = Base64.encodeBytes(bytes);
-        s = s.split("=")[0]; // Remove any trailing '='s
-        s = s.replace('+', '-'); // 62nd char of encoding
-        s = s.replace('/', '_'); // 63rd char of encoding
-        return s;
+        char[] chars = new char[encodedLength(bytes.length)];
+        encode(bytes, 0, bytes.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode into a caller supplied char buffer.
+     *
+     * @return number of chars written
+     */
+    public static int encode(byte[] src, int offset, int length, char[] dest, int destOffset) {
+        int d = destOffset;
+        int end = offset + length - length % 3;
+        int s = offset;
+        while (s < end) {
+            int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dest[d++] = ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = ALPHABET[(bits >>> 12) & 0x3f];
+            dest[d++] = ALPHABET[(bits >>> 6) & 0x3f];
+            dest[d++] = ALPHABET[bits & 0x3f];
+        }
+        int rem = length % 3;
+        if (rem == 1) {
+            int bits = (src[s] & 0xff) << 16;
+            dest[d++] = ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = ALPHABET[(bits >>> 12) & 0x3f];
+        } else if (rem == 2) {
+            int bits = (src[s] & 0xff) << 16 | (src[s + 1] & 0xff) << 8;
+            dest[d++] = ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = ALPHABET[(bits >>> 12) & 0x3f];
+            dest[d++] = ALPHABET[(bits >>> 6) & 0x3f];
+        }
+        return d - destOffset;
+    }
+
+    /**
+     * Encode into a caller supplied byte buffer as US-ASCII.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(byte[] src, int offset, int length, byte[] dest, int destOffset) {
+        int d = destOffset;
+        int end = offset + length - length % 3;
+        int s = offset;
+        while (s < end) {
+            int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dest[d++] = (byte) ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = (byte) ALPHABET[(bits >>> 12) & 0x3f];
+            dest[d++] = (byte) ALPHABET[(bits >>> 6) & 0x3f];
+            dest[d++] = (byte) ALPHABET[bits & 0x3f];
+        }
+        int rem = length % 3;
+        if (rem == 1) {
+            int bits = (src[s] & 0xff) << 16;
+            dest[d++] = (byte) ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = (byte) ALPHABET[(bits >>> 12) & 0x3f];
+        } else if (rem == 2) {
+            int bits = (src[s] & 0xff) << 16 | (src[s + 1] & 0xff) << 8;
+            dest[d++] = (byte) ALPHABET[(bits >>> 18) & 0x3f];
+            dest[d++] = (byte) ALPHABET[(bits >>> 12) & 0x3f];
+            dest[d++] = (byte) ALPHABET[(bits >>> 6) & 0x3f];
+        }
+        return d - destOffset;
     }
 
     public static byte[] decode(String s) {
-        s = s.replace('-', '+'); // 62nd char of encoding
-        s = s.replace('_', '/'); // 63rd char of encoding
-        switch (s.length() % 4) // Pad with trailing '='s
-        {
-            case 0:
-                break; // No pad chars in this case
-            case 2:
-                s += "==";
-                break; // Two pad chars
-            case 3:
-                s += "=";
-                break; // One pad char
-            default:
-                throw new RuntimeException(
-                        "Illegal base64url string!");
+        return decode(s, 0, s.length());
+    }
+
+    /**
+     * Decode a region of a string, e.g. one segment of a JWS, without copying it out first.  Trailing '=' padding
+     * is tolerated.
+     */
+    public static byte[] decode(String s, int offset, int length) {
+        int end = offset + length;
+        while (end > offset && s.charAt(end - 1) == '=') end--;
+        int len = end - offset;
+        int rem = len % 4;
+        if (rem == 1) throw new RuntimeException("Illegal base64url string!");
+        byte[] out = new byte[(len / 4) * 3 + (rem == 0 ? 0 : rem - 1)];
+        int o = 0;
+        int i = offset;
+        int full = end - rem;
+        while (i < full) {
+            int bits = sextet(s.charAt(i++)) << 18 | sextet(s.charAt(i++)) << 12 | sextet(s.charAt(i++)) << 6 | sextet(s.charAt(i++));
+            out[o++] = (byte) (bits >>> 16);
+            out[o++] = (byte) (bits >>> 8);
+            out[o++] = (byte) bits;
         }
-        try {
-            return Base64.decode(s);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (rem == 2) {
+            int bits = sextet(s.charAt(i)) << 18 | sextet(s.charAt(i + 1)) << 12;
+            out[o] = (byte) (bits >>> 16);
+        } else if (rem == 3) {
+            int bits = sextet(s.charAt(i)) << 18 | sextet(s.charAt(i + 1)) << 12 | sextet(s.charAt(i + 2)) << 6;
+            out[o++] = (byte) (bits >>> 16);
+            out[o] = (byte) (bits >>> 8);
         }
+        return out;
+    }
+
+    private static int sextet(char c) {
+        int v = c < 128 ? DECODABET[c] : -1;
+        if (v < 0) throw new RuntimeException("Illegal base64url character: " + c);
+        return v;
     }
 
 
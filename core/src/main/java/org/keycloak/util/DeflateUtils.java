@@ -0,0 +1,69 @@
+package org.keycloak.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw DEFLATE (RFC 1951, no zlib wrapper) as used by the JOSE "zip":"DEF" header parameter.
+ */
+public final class DeflateUtils {
+    /**
+     * Compression algorithm value for the JOSE "zip" header.
+     */
+    public static final String DEFLATE = "DEF";
+
+    /**
+     * Inflated content larger than this is rejected so that a tiny token can't expand into something huge.
+     */
+    public static final int MAX_INFLATED_SIZE = 256 * 1024;
+
+    private DeflateUtils() {
+    }
+
+    public static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IOException("Truncated or invalid DEFLATE content");
+                    }
+                    continue;
+                }
+                if (out.size() + count > MAX_INFLATED_SIZE) {
+                    throw new IOException("Inflated content exceeds " + MAX_INFLATED_SIZE + " bytes");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid DEFLATE content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
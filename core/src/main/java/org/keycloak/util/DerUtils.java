@@ -36,17 +36,25 @@ public final class DerUtils {
         dis.readFully(keyBytes);
         dis.close();
 
-        PKCS8EncodedKeySpec spec =
-                new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        return decodePrivateKey(keyBytes);
     }
 
+    /**
+     * Decodes an RSA or EC public key
+     *
+     * @param der
+     * @return
+     */
     public static PublicKey decodePublicKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         X509EncodedKeySpec spec =
                 new X509EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePublic(spec);
+        try {
+            KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
+            return kf.generatePublic(spec);
+        } catch (InvalidKeySpecException e) {
+            KeyFactory kf = KeyFactory.getInstance("EC", "BC");
+            return kf.generatePublic(spec);
+        }
     }
 
     public static X509Certificate decodeCertificate(InputStream is) throws Exception {
@@ -56,10 +64,21 @@ public final class DerUtils {
         return cert;
     }
 
+    /**
+     * Decodes an RSA or EC private key
+     *
+     * @param der
+     * @return
+     */
     public static PrivateKey decodePrivateKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         PKCS8EncodedKeySpec spec =
                 new PKCS8EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        try {
+            KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
+            return kf.generatePrivate(spec);
+        } catch (InvalidKeySpecException e) {
+            KeyFactory kf = KeyFactory.getInstance("EC", "BC");
+            return kf.generatePrivate(spec);
+        }
     }
 }
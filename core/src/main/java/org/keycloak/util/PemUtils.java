@@ -7,6 +7,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
@@ -92,6 +93,17 @@ public final class PemUtils {
         return Base64.decode(pem);
     }
 
+    /**
+     * Encode a key in its standard DER form (X.509 for public keys, PKCS8 for private keys) without PEM begin and
+     * end markers, i.e. the form {@link #decodePublicKey(String)} and {@link #decodePrivateKey(String)} read.
+     *
+     * @param key
+     * @return
+     */
+    public static String encodeKey(Key key) {
+        return Base64.encodeBytes(key.getEncoded());
+    }
+
     public static String removeBeginEnd(String pem) {
         pem = pem.replaceAll("-----BEGIN (.*)-----", "");
         pem = pem.replaceAll("-----END (.*)----", "");
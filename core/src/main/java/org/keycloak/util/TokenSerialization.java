@@ -0,0 +1,204 @@
+package org.keycloak.util;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.representations.SkeletonKeyToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON handling for token payloads.  {@link SkeletonKeyToken} and {@link JsonWebToken} are written and read with
+ * hand written streaming code instead of going through data binding.  Everything else goes through
+ * {@link JsonSerialization#mapper} with a cached {@link ObjectReader} per type and a shared {@link ObjectWriter}.
+ * <p/>
+ * The streaming path produces the same JSON as the mapper: null properties are left out.  Unknown properties are
+ * skipped when reading.
+ */
+public class TokenSerialization {
+    private static final JsonFactory factory = JsonSerialization.mapper.getJsonFactory();
+    private static final ObjectWriter writer = JsonSerialization.mapper.writer();
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    public static byte[] writeValueAsBytes(Object obj) throws IOException {
+        Class<?> type = obj.getClass();
+        if (type != SkeletonKeyToken.class && type != JsonWebToken.class) return writer.writeValueAsBytes(obj);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(512);
+        JsonGenerator generator = factory.createJsonGenerator(os, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        writeJsonWebToken(generator, (JsonWebToken) obj);
+        if (type == SkeletonKeyToken.class) writeSkeletonKeyToken(generator, (SkeletonKeyToken) obj);
+        generator.writeEndObject();
+        generator.close();
+        return os.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T readValue(byte[] bytes, Class<T> type) throws IOException {
+        if (type == SkeletonKeyToken.class) return (T) readToken(bytes, new SkeletonKeyToken());
+        if (type == JsonWebToken.class) return (T) readToken(bytes, new JsonWebToken());
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = JsonSerialization.mapper.reader(type);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader.readValue(bytes);
+    }
+
+    private static void writeJsonWebToken(JsonGenerator generator, JsonWebToken token) throws IOException {
+        writeString(generator, "jti", token.getId());
+        generator.writeNumberField("exp", token.getExpiration());
+        generator.writeNumberField("nbf", token.getNotBefore());
+        generator.writeNumberField("iat", token.getIssuedAt());
+        writeString(generator, "iss", token.getIssuer());
+        writeString(generator, "aud", token.getAudience());
+        writeString(generator, "sub", token.getSubject());
+        writeString(generator, "typ", token.getType());
+    }
+
+    private static void writeSkeletonKeyToken(JsonGenerator generator, SkeletonKeyToken token) throws IOException {
+        writeString(generator, "issuedFor", token.getIssuedFor());
+        writeStrings(generator, "trusted-certs", token.getTrustedCertificates());
+        writeStrings(generator, "allowed-origins", token.getAllowedOrigins());
+        if (token.getRealmAccess() != null) {
+            generator.writeFieldName("realm_access");
+            writeAccess(generator, token.getRealmAccess());
+        }
+        if (token.getResourceAccess() != null) {
+            generator.writeObjectFieldStart("resource_access");
+            for (Map.Entry<String, SkeletonKeyToken.Access> entry : token.getResourceAccess().entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                if (entry.getValue() == null) generator.writeNull();
+                else writeAccess(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeAccess(JsonGenerator generator, SkeletonKeyToken.Access access) throws IOException {
+        generator.writeStartObject();
+        writeStrings(generator, "roles", access.getRoles());
+        if (access.getVerifyCaller() != null) generator.writeBooleanField("verify_caller", access.getVerifyCaller());
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) generator.writeStringField(name, value);
+    }
+
+    private static void writeStrings(JsonGenerator generator, String name, Set<String> values) throws IOException {
+        if (values == null) return;
+        generator.writeArrayFieldStart(name);
+        for (String value : values) generator.writeString(value);
+        generator.writeEndArray();
+    }
+
+    private static JsonWebToken readToken(byte[] bytes, JsonWebToken token) throws IOException {
+        JsonParser parser = factory.createJsonParser(bytes);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException("Expected token object", parser.getCurrentLocation());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!readJsonWebTokenField(parser, name, value, token)
+                        && !(token instanceof SkeletonKeyToken && readSkeletonKeyTokenField(parser, name, value, (SkeletonKeyToken) token))) {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        return token;
+    }
+
+    private static boolean readJsonWebTokenField(JsonParser parser, String name, JsonToken value, JsonWebToken token) throws IOException {
+        if ("jti".equals(name)) token.id(readString(parser, value));
+        else if ("exp".equals(name)) token.expiration(readLong(parser, value));
+        else if ("nbf".equals(name)) token.notBefore(readLong(parser, value));
+        else if ("iat".equals(name)) token.issuedAt(readLong(parser, value));
+        else if ("iss".equals(name)) token.issuer(readString(parser, value));
+        else if ("aud".equals(name)) token.audience(readString(parser, value));
+        else if ("sub".equals(name)) token.principal(readString(parser, value));
+        else if ("typ".equals(name)) token.type(readString(parser, value));
+        else return false;
+        return true;
+    }
+
+    private static boolean readSkeletonKeyTokenField(JsonParser parser, String name, JsonToken value, SkeletonKeyToken token) throws IOException {
+        if ("issuedFor".equals(name)) {
+            token.issuedFor(readString(parser, value));
+        } else if ("trusted-certs".equals(name)) {
+            token.setTrustedCertificates(readStrings(parser, value));
+        } else if ("allowed-origins".equals(name)) {
+            token.setAllowedOrigins(readStrings(parser, value));
+        } else if ("realm_access".equals(name)) {
+            token.setRealmAccess(value == JsonToken.VALUE_NULL ? null : readAccess(parser, value, new SkeletonKeyToken.Access()));
+        } else if ("resource_access".equals(name)) {
+            if (value == JsonToken.VALUE_NULL) return true;
+            expect(parser, value, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String resource = parser.getCurrentName();
+                JsonToken accessToken = parser.nextToken();
+                if (accessToken == JsonToken.VALUE_NULL) token.getResourceAccess().put(resource, null);
+                else readAccess(parser, accessToken, token.addAccess(resource));
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static SkeletonKeyToken.Access readAccess(JsonParser parser, JsonToken value, SkeletonKeyToken.Access access) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken fieldValue = parser.nextToken();
+            if ("roles".equals(name)) {
+                access.roles(readStrings(parser, fieldValue));
+            } else if ("verify_caller".equals(name)) {
+                access.verifyCaller(fieldValue == JsonToken.VALUE_NULL ? null : parser.getBooleanValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return access;
+    }
+
+    private static String readString(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        return parser.getText();
+    }
+
+    private static long readLong(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) return Long.parseLong(parser.getText().trim());
+        return parser.getLongValue();
+    }
+
+    private static Set<String> readStrings(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        expect(parser, value, JsonToken.START_ARRAY);
+        Set<String> values = new HashSet<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("Expected " + expected + " but was " + actual, parser.getCurrentLocation());
+        }
+    }
+}
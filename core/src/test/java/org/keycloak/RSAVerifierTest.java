@@ -8,6 +8,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.representations.SkeletonKeyToken;
 
 import javax.security.auth.x500.X500Principal;
@@ -143,6 +144,103 @@ public class RSAVerifierTest {
         }
     }
 
+    @Test
+    public void testCachedSignaturesAcrossKeys() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String bad = new JWSBuilder()
+                    .jsonContent(token)
+                    .rsa256(badPair.getPrivate());
+            try {
+                verifySkeletonKeyToken(bad);
+                Assert.fail();
+            } catch (VerificationException ignored) {
+            }
+
+            String good = new JWSBuilder()
+                    .jsonContent(token)
+                    .rsa256(idpPair.getPrivate());
+            Assert.assertEquals("CN=Client", verifySkeletonKeyToken(good).getSubject());
+        }
+    }
+
+    @Test
+    public void testVerifiedTokenCache() throws Exception {
+        token.expiration((System.currentTimeMillis() / 1000) + 100);
+        String encoded = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        SkeletonKeyToken first = RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "domain", cache);
+        SkeletonKeyToken second = RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "domain", cache);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        String bad = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(badPair.getPrivate());
+        try {
+            RSATokenVerifier.verifyToken(bad, idpPair.getPublic(), "domain", cache);
+            Assert.fail();
+        } catch (VerificationException ignored) {
+        }
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEcdsaVerification() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        KeyPair ecPair = generator.generateKeyPair();
+
+        String encoded = new JWSBuilder()
+                .jsonContent(token)
+                .es256(ecPair.getPrivate());
+        SkeletonKeyToken verified = RSATokenVerifier.verifyToken(encoded, ecPair.getPublic(), "domain");
+        Assert.assertEquals("CN=Client", verified.getSubject());
+
+        encoded = new JWSBuilder()
+                .jsonContent(token)
+                .sign(ecPair.getPrivate());
+        Assert.assertEquals("CN=Client", RSATokenVerifier.verifyToken(encoded, ecPair.getPublic(), "domain").getSubject());
+
+        try {
+            RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "domain");
+            Assert.fail();
+        } catch (VerificationException ignored) {
+        }
+    }
+
+    @Test
+    public void testCompressedToken() throws Exception {
+        for (int i = 0; i < 20; i++) token.addAccess("service" + i).addRole("admin").addRole("user");
+        String plain = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+        String encoded = new JWSBuilder()
+                .compressed()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+        Assert.assertTrue(encoded.length() < plain.length());
+        Assert.assertEquals("DEF", new JWSInput(encoded).getHeader().getCompressionAlgorithm());
+
+        SkeletonKeyToken token = verifySkeletonKeyToken(encoded);
+        Assert.assertTrue(token.getResourceAccess("service19").getRoles().contains("user"));
+        Assert.assertEquals("CN=Client", token.getSubject());
+    }
+
+    @Test
+    public void testMalformedToken() throws Exception {
+        String[] garbage = {"garbage", "a.b.c.d", "!!!.@@@.###"};
+        for (String encoded : garbage) {
+            try {
+                verifySkeletonKeyToken(encoded);
+                Assert.fail();
+            } catch (VerificationException ignored) {
+            }
+        }
+    }
+
     @Test
     public void testNotBeforeGood() throws Exception {
         token.notBefore((System.currentTimeMillis() / 1000) - 100);
@@ -6,6 +6,7 @@ import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenSerialization;
 import org.keycloak.representations.SkeletonKeyScope;
 import org.keycloak.representations.SkeletonKeyToken;
 
@@ -51,6 +52,41 @@ public class SkeletonKeyTokenTest
 
    }
 
+   @Test
+   public void testStreamingSerialization() throws Exception
+   {
+      SkeletonKeyToken token = new SkeletonKeyToken();
+      token.id("111").principal("bburke").audience("demo").issuedNow().expiration(1000);
+      token.issuedFor("customer-portal");
+      token.setRealmAccess(new SkeletonKeyToken.Access().addRole("user").verifyCaller(true));
+      token.addAccess("foo").addRole("admin").addRole("user");
+      token.addAccess("bar").addRole("user");
+
+      // streaming writer must be readable by the databinding path and vice versa
+      byte[] streamed = TokenSerialization.writeValueAsBytes(token);
+      SkeletonKeyToken bound = JsonSerialization.readValue(streamed, SkeletonKeyToken.class);
+      assertSameToken(token, bound);
+
+      byte[] json = JsonSerialization.writeValueAsBytes(token);
+      SkeletonKeyToken parsed = TokenSerialization.readValue(json, SkeletonKeyToken.class);
+      assertSameToken(token, parsed);
+   }
+
+   private void assertSameToken(SkeletonKeyToken expected, SkeletonKeyToken actual)
+   {
+      Assert.assertEquals(expected.getId(), actual.getId());
+      Assert.assertEquals(expected.getSubject(), actual.getSubject());
+      Assert.assertEquals(expected.getAudience(), actual.getAudience());
+      Assert.assertEquals(expected.getIssuedAt(), actual.getIssuedAt());
+      Assert.assertEquals(expected.getExpiration(), actual.getExpiration());
+      Assert.assertEquals(expected.getIssuedFor(), actual.getIssuedFor());
+      Assert.assertEquals(expected.getRealmAccess().getRoles(), actual.getRealmAccess().getRoles());
+      Assert.assertEquals(expected.getRealmAccess().getVerifyCaller(), actual.getRealmAccess().getVerifyCaller());
+      Assert.assertEquals(expected.getResourceAccess().keySet(), actual.getResourceAccess().keySet());
+      Assert.assertEquals(expected.getResourceAccess("foo").getRoles(), actual.getResourceAccess("foo").getRoles());
+      Assert.assertNull(actual.getAllowedOrigins());
+   }
+
    @Test
    public void testRSA() throws Exception
    {
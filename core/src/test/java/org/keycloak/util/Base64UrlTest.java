@@ -0,0 +1,135 @@
+package org.keycloak.util;
+
+import net.iharder.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Base64UrlTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testRoundTrip() {
+        // every remainder of the encoded length: 0, 2 and 3 mod 4
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = randomBytes(length);
+            String encoded = Base64Url.encode(bytes);
+            Assert.assertEquals(Base64Url.encodedLength(length), encoded.length());
+            Assert.assertFalse(encoded.length() % 4 == 1);
+            Assert.assertArrayEquals(bytes, Base64Url.decode(encoded));
+        }
+    }
+
+    @Test
+    public void testKnownValues() {
+        Assert.assertEquals("", Base64Url.encode(new byte[0]));
+        Assert.assertEquals("Zg", Base64Url.encode("f".getBytes()));
+        Assert.assertEquals("Zm8", Base64Url.encode("fo".getBytes()));
+        Assert.assertEquals("Zm9v", Base64Url.encode("foo".getBytes()));
+        Assert.assertEquals("-_8", Base64Url.encode(new byte[] { (byte) 0xfb, (byte) 0xff }));
+    }
+
+    @Test
+    public void testEncodeIntoBuffer() {
+        byte[] bytes = randomBytes(20);
+        String expected = Base64Url.encode(Arrays.copyOfRange(bytes, 3, 17));
+
+        char[] chars = new char[Base64Url.encodedLength(14) + 2];
+        Assert.assertEquals(expected.length(), Base64Url.encode(bytes, 3, 14, chars, 2));
+        Assert.assertEquals(expected, new String(chars, 2, expected.length()));
+
+        byte[] ascii = new byte[Base64Url.encodedLength(14) + 2];
+        Assert.assertEquals(expected.length(), Base64Url.encode(bytes, 3, 14, ascii, 2));
+        Assert.assertEquals(expected, new String(ascii, 2, expected.length()));
+    }
+
+    @Test
+    public void testDecodeRegion() {
+        byte[] header = randomBytes(10);
+        byte[] content = randomBytes(31);
+        String jws = Base64Url.encode(header) + "." + Base64Url.encode(content) + ".sig";
+        int start = jws.indexOf('.') + 1;
+        int end = jws.indexOf('.', start);
+
+        Assert.assertArrayEquals(content, Base64Url.decode(jws, start, end - start));
+        Assert.assertArrayEquals(header, Base64Url.decode(jws, 0, start - 1));
+        Assert.assertArrayEquals(new byte[0], Base64Url.decode(jws, start, 0));
+    }
+
+    @Test
+    public void testLenientDecoding() {
+        byte[] bytes = { (byte) 0xfb, (byte) 0xff, (byte) 0xbf };
+        Assert.assertArrayEquals(bytes, Base64Url.decode("-_-_"));
+        Assert.assertArrayEquals(bytes, Base64Url.decode("+/+/"));
+        Assert.assertArrayEquals("f".getBytes(), Base64Url.decode("Zg=="));
+        Assert.assertArrayEquals("fo".getBytes(), Base64Url.decode("Zm8="));
+        Assert.assertArrayEquals("f".getBytes(), Base64Url.decode("xZg==x", 1, 4));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertInvalid("Zm9v*");
+        assertInvalid("Zm*v");
+        assertInvalid("Zm9v\u00e9A");
+        assertInvalid("Zm 9");
+        assertInvalid("Zm=v");
+        // a single character left over can't encode a byte
+        assertInvalid("Z");
+        assertInvalid("Zm9vZ");
+        assertInvalid("Zm9vZ===");
+    }
+
+    @Test
+    public void testSameAsLegacy() {
+        for (int length = 0; length < 300; length++) {
+            byte[] bytes = randomBytes(length);
+            String encoded = Base64Url.encode(bytes);
+            Assert.assertEquals(legacyEncode(bytes), encoded);
+            Assert.assertArrayEquals(legacyDecode(encoded), Base64Url.decode(encoded));
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private void assertInvalid(String s) {
+        try {
+            Base64Url.decode(s);
+            Assert.fail("Expected " + s + " to be rejected");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    // the String based implementation keycloak-core used before
+    private static String legacyEncode(byte[] bytes) {
+        String s = Base64.encodeBytes(bytes);
+        s = s.split("=")[0];
+        s = s.replace('+', '-');
+        s = s.replace('/', '_');
+        return s;
+    }
+
+    private static byte[] legacyDecode(String s) {
+        s = s.replace('-', '+');
+        s = s.replace('_', '/');
+        switch (s.length() % 4) {
+            case 2:
+                s += "==";
+                break;
+            case 3:
+                s += "=";
+                break;
+        }
+        try {
+            return Base64.decode(s);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.keycloak.adapters.config;
 
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.keycloak.VerifiedTokenCache;
 import org.keycloak.representations.SkeletonKeyScope;
 import org.keycloak.util.Base64Url;
 import org.keycloak.util.EnvUtil;
@@ -66,6 +67,9 @@ public class AdapterConfigLoader {
         String clientKeyPassword = adapterConfig.getClientKeyPassword();
         resourceMetadata.setClientKeyPassword(clientKeyPassword);
         resourceMetadata.setTruststore(this.truststore);
+        if (adapterConfig.getTokenCacheSize() > 0) {
+            resourceMetadata.setTokenCache(new VerifiedTokenCache(adapterConfig.getTokenCacheSize()));
+        }
 
         if (adapterConfig.getScope() != null) {
             String scope = encodeScope(adapterConfig.getScope());
@@ -22,10 +22,9 @@ import org.keycloak.representations.adapters.config.AdapterConfig;
 import org.keycloak.adapters.config.RealmConfiguration;
 import org.keycloak.adapters.config.RealmConfigurationLoader;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureProvider;
 import org.keycloak.representations.SkeletonKeyToken;
 import org.keycloak.representations.adapters.action.LogoutAction;
-import org.keycloak.util.JsonSerialization;
 import org.keycloak.util.StreamUtil;
 
 import javax.security.auth.login.LoginException;
@@ -133,7 +132,7 @@ public class KeycloakAuthenticatorValve extends FormAuthenticator implements Lif
         JWSInput input = new JWSInput(token);
         boolean verified = false;
         try {
-            verified = RSAProvider.verify(input, resourceMetadata.getRealmKey());
+            verified = SignatureProvider.verify(input, resourceMetadata.getRealmKey());
         } catch (Exception ignore) {
         }
         if (!verified) {
@@ -147,7 +146,7 @@ public class KeycloakAuthenticatorValve extends FormAuthenticator implements Lif
     protected void remoteLogout(JWSInput token, HttpServletResponse response) throws IOException {
         try {
             log.debug("->> remoteLogout: ");
-            LogoutAction action = JsonSerialization.readValue(token.getContent(), LogoutAction.class);
+            LogoutAction action = token.readJsonContent(LogoutAction.class);
             if (action.isExpired()) {
                 log.warn("admin request failed, expired token");
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expired token");
@@ -66,7 +66,7 @@ public class JaxrsBearerTokenFilter implements ContainerRequestFilter {
 
 
         try {
-            SkeletonKeyToken token = RSATokenVerifier.verifyToken(tokenString, resourceMetadata.getRealmKey(), resourceMetadata.getRealm());
+            SkeletonKeyToken token = RSATokenVerifier.verifyToken(tokenString, resourceMetadata.getRealmKey(), resourceMetadata.getRealm(), resourceMetadata.getTokenCache());
             SkeletonKeySession skSession = new SkeletonKeySession(tokenString, token, resourceMetadata);
             ResteasyProviderFactory.pushContext(SkeletonKeySession.class, skSession);
             String callerPrincipal = securityContext.getUserPrincipal() != null ? securityContext.getUserPrincipal().getName() : null;
@@ -10,7 +10,7 @@ import org.jboss.logging.Logger;
 import org.keycloak.adapters.AdapterConstants;
 import org.keycloak.adapters.config.RealmConfiguration;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureProvider;
 import org.keycloak.util.StreamUtil;
 
 import javax.servlet.http.HttpServletRequest;
@@ -61,7 +61,7 @@ public class ServletAdminActionsHandler implements HttpHandler {
         JWSInput input = new JWSInput(token);
         boolean verified = false;
         try {
-            verified = RSAProvider.verify(input, realmConfig.getMetadata().getRealmKey());
+            verified = SignatureProvider.verify(input, realmConfig.getMetadata().getRealmKey());
         } catch (Exception ignore) {
         }
         if (!verified) {
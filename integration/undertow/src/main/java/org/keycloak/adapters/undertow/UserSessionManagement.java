@@ -11,7 +11,6 @@ import org.jboss.logging.Logger;
 import org.keycloak.adapters.config.RealmConfiguration;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.representations.adapters.action.LogoutAction;
-import org.keycloak.util.JsonSerialization;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -42,7 +41,7 @@ public class UserSessionManagement implements SessionListener {
     public void remoteLogout(JWSInput token, SessionManager manager, HttpServletResponse response) throws IOException {
         try {
             log.debug("->> remoteLogout: ");
-            LogoutAction action = JsonSerialization.readValue(token.getContent(), LogoutAction.class);
+            LogoutAction action = token.readJsonContent(LogoutAction.class);
             if (action.isExpired()) {
                 log.warn("admin request failed, expired token");
                 response.sendError(StatusCodes.BAD_REQUEST, "Expired token");
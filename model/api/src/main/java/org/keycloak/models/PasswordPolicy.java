@@ -1,5 +1,7 @@
 package org.keycloak.models;
 
+import org.keycloak.models.utils.Pbkdf2PasswordEncoder;
+
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -9,9 +11,21 @@ import java.util.List;
  */
 public class PasswordPolicy {
 
+    public static final String HASH_ALGORITHM = "hashAlgorithm";
+    public static final String HASH_ITERATIONS = "hashIterations";
+    public static final String HASH_KEY_SIZE = "hashKeySize";
+
     private List<Policy> policies;
     private String policyString;
 
+    private String hashAlgorithm = Pbkdf2PasswordEncoder.PBKDF2_ALGORITHM;
+    private int hashIterations = Pbkdf2PasswordEncoder.DEFAULT_ITERATIONS;
+    private int hashKeySize = Pbkdf2PasswordEncoder.DEFAULT_KEY_SIZE;
+
+    /**
+     * @param policyString
+     * @throws IllegalArgumentException if the policy is invalid, including hashing parameters that can't be used
+     */
     public PasswordPolicy(String policyString) {
         if (policyString == null || policyString.length() == 0) {
             this.policyString = null;
@@ -19,10 +33,11 @@ public class PasswordPolicy {
         } else {
             this.policyString = policyString;
             policies = parse(policyString);
+            Pbkdf2PasswordEncoder.checkParameters(hashAlgorithm, hashIterations, hashKeySize);
         }
     }
 
-    private static List<Policy> parse(String policyString) {
+    private List<Policy> parse(String policyString) {
         List<Policy> list = new LinkedList<Policy>();
         String[] policies = policyString.split(" and ");
         for (String policy : policies) {
@@ -52,6 +67,12 @@ public class PasswordPolicy {
                 list.add(new UpperCase(args));
             } else if (name.equals(SpecialChars.NAME)) {
                 list.add(new SpecialChars(args));
+            } else if (name.equals(HASH_ALGORITHM)) {
+                hashAlgorithm = stringArg(HASH_ALGORITHM, hashAlgorithm, args);
+            } else if (name.equals(HASH_ITERATIONS)) {
+                hashIterations = intArg(HASH_ITERATIONS, hashIterations, args);
+            } else if (name.equals(HASH_KEY_SIZE)) {
+                hashKeySize = intArg(HASH_KEY_SIZE, hashKeySize, args);
             }
         }
         return list;
@@ -67,6 +88,27 @@ public class PasswordPolicy {
         return null;
     }
 
+    /**
+     * @return PBKDF2 algorithm new password hashes are created with
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * @return iterations new password hashes are created with
+     */
+    public int getHashIterations() {
+        return hashIterations;
+    }
+
+    /**
+     * @return key size in bits new password hashes are created with
+     */
+    public int getHashKeySize() {
+        return hashKeySize;
+    }
+
     private static interface Policy {
         public String validate(String password);
     }
@@ -175,6 +217,16 @@ public class PasswordPolicy {
         }
     }
 
+    private static String stringArg(String policy, String defaultValue, String... args) {
+        if (args == null || args.length == 0) {
+            return defaultValue;
+        } else if (args.length == 1) {
+            return args[0];
+        } else {
+            throw new IllegalArgumentException("Invalid arguments to " + policy + ", expect no argument or single string");
+        }
+    }
+
     @Override
     public String toString() {
         return policyString;
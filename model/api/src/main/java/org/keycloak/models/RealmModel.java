@@ -50,6 +50,76 @@ public interface RealmModel extends RoleContainerModel, RoleMapperModel, ScopeMa
 
     void setAccessCodeLifespanUserAction(int accessCodeLifespanUserAction);
 
+    /**
+     * Whether failed logins are counted and users or source addresses are locked out after too many.
+     */
+    boolean isBruteForceProtected();
+
+    void setBruteForceProtected(boolean bruteForceProtected);
+
+    /**
+     * Failed logins of a user before it is locked out, 0 for the default of 30.  A source address may fail ten times
+     * as often.
+     */
+    int getFailureFactor();
+
+    void setFailureFactor(int failureFactor);
+
+    /**
+     * Lockout after the first failure beyond the failure factor, doubled for each further failure.  0 for the
+     * default of one minute.
+     */
+    int getWaitIncrementSeconds();
+
+    void setWaitIncrementSeconds(int waitIncrementSeconds);
+
+    /**
+     * Longest a user or address is locked out for, 0 for the default of 15 minutes.
+     */
+    int getMaxFailureWaitSeconds();
+
+    void setMaxFailureWaitSeconds(int maxFailureWaitSeconds);
+
+    /**
+     * Failure counts are halved every so many seconds, 0 for the default of one hour.
+     */
+    int getFailureDecaySeconds();
+
+    void setFailureDecaySeconds(int failureDecaySeconds);
+
+    /**
+     * Lifespan of refresh tokens in seconds, refresh tokens are not issued if this is 0.
+     */
+    int getRefreshTokenLifespan();
+
+    void setRefreshTokenLifespan(int refreshTokenLifespan);
+
+    /**
+     * If true, access codes carry their own state encrypted with a realm key instead of being kept on the server.
+     * Used codes are still recorded in the access code store, so single use only holds across nodes if they share the
+     * store, or if sessions are sticky.
+     */
+    boolean isStatelessAccessCodes();
+
+    void setStatelessAccessCodes(boolean statelessAccessCodes);
+
+    /**
+     * If true, tokens issued for this realm have their claims DEFLATE compressed (JOSE "zip":"DEF").  Only adapters
+     * that can inflate them can read such tokens.  Tokens issued to clients in the code flow are never compressed.
+     */
+    boolean isCompressTokens();
+
+    void setCompressTokens(boolean compressTokens);
+
+    /**
+     * Changes whenever a role of the realm or one of its applications is added, removed or renamed, or the
+     * composites of a role change.  Lets derived role data, like the transitive closure of composite roles, be cached
+     * until the next change.
+     *
+     * @return
+     */
+    String getRolesVersion();
+
     String getPublicKeyPem();
 
     void setPublicKeyPem(String publicKeyPem);
@@ -76,10 +146,31 @@ public interface RealmModel extends RoleContainerModel, RoleMapperModel, ScopeMa
 
     boolean validatePassword(UserModel user, String password);
 
+    /**
+     * Validates the password credential of an application or OAuth client.  Unlike user passwords, verified client
+     * secrets may be remembered so they don't have to be hashed on every request.
+     */
+    boolean validateSecret(UserModel client, String secret);
+
     boolean validateTOTP(UserModel user, String password, String token);
 
     void updateCredential(UserModel user, UserCredentialModel cred);
 
+    /**
+     * Hashes a credential the way {@link #updateCredential(UserModel, UserCredentialModel)} would, without storing it.
+     * Doesn't touch the model, so it may be called from other threads once {@link #getPasswordPolicy()} was called.
+     * Models that hash credentials as they store them return the value unhashed.
+     */
+    UserCredentialValueModel hashCredential(UserCredentialModel cred);
+
+    /**
+     * Stores a credential without hashing it again, for credentials from {@link #hashCredential(UserCredentialModel)}
+     * or imported with their hash.  Changes may only be flushed when the transaction commits.
+     *
+     * @throws UnsupportedOperationException if the model can't store passwords hashed with PBKDF2
+     */
+    void updateCredentialDirectly(UserModel user, UserCredentialValueModel cred);
+
     UserModel getUser(String name);
 
     UserModel getUserByEmail(String email);
@@ -0,0 +1,72 @@
+package org.keycloak.models;
+
+/**
+ * A credential as it is stored.  Passwords are hashed with the algorithm, salt, iterations and key size, if the
+ * algorithm is null the value hasn't been hashed yet and is hashed when it is stored.
+ */
+public class UserCredentialValueModel {
+
+    protected String type;
+    protected String value;
+    protected String device;
+    protected byte[] salt;
+    protected String algorithm;
+    protected int hashIterations;
+    protected int keySize;
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public void setDevice(String device) {
+        this.device = device;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public void setSalt(byte[] salt) {
+        this.salt = salt;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public int getHashIterations() {
+        return hashIterations;
+    }
+
+    public void setHashIterations(int hashIterations) {
+        this.hashIterations = hashIterations;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public void setKeySize(int keySize) {
+        this.keySize = keySize;
+    }
+}
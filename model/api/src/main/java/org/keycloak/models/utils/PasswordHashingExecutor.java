@@ -0,0 +1,185 @@
+package org.keycloak.models.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashes on a small, fixed size pool with a bounded wait queue.  PBKDF2 is deliberately slow, so a burst
+ * of logins would otherwise keep every container thread busy hashing and stall cheap requests.  With the pool at most
+ * as many hashes run at once as there are threads, and once the queue is full further hashes are rejected straight
+ * away with a {@link PasswordHashingRejectedException} instead of waiting for a container thread to free up.
+ * <p/>
+ * The pool can be sized with the <code>keycloak.hashing.threads</code> (defaults to the number of processors),
+ * <code>keycloak.hashing.queue</code> (defaults to 16 per thread) and <code>keycloak.hashing.retryAfter</code>
+ * (seconds, defaults to 1) system properties.
+ */
+public class PasswordHashingExecutor {
+    public static final String THREADS = "keycloak.hashing.threads";
+    public static final String QUEUE = "keycloak.hashing.queue";
+    public static final String RETRY_AFTER = "keycloak.hashing.retryAfter";
+
+    private static final PasswordHashingExecutor instance = createInstance();
+
+    protected final ThreadPoolExecutor executor;
+    protected final int queueSize;
+    protected final int retryAfter;
+
+    protected final AtomicLong hashes = new AtomicLong();
+    protected final AtomicLong rejected = new AtomicLong();
+    protected final AtomicLong totalWaitNanos = new AtomicLong();
+    protected final AtomicLong totalHashNanos = new AtomicLong();
+    protected final AtomicLong maxHashNanos = new AtomicLong();
+
+    public static PasswordHashingExecutor getInstance() {
+        return instance;
+    }
+
+    private static PasswordHashingExecutor createInstance() {
+        int threads = Integer.getInteger(THREADS, Runtime.getRuntime().availableProcessors());
+        int queue = Integer.getInteger(QUEUE, threads * 16);
+        int retryAfter = Integer.getInteger(RETRY_AFTER, 1);
+        return new PasswordHashingExecutor(threads, queue, retryAfter);
+    }
+
+    public PasswordHashingExecutor(int threads, int queueSize, int retryAfter) {
+        this.queueSize = queueSize;
+        this.retryAfter = retryAfter;
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new HashingThreadFactory());
+    }
+
+    /**
+     * Runs a hash on the pool and waits for it.
+     *
+     * @param hash
+     * @return result of the hash
+     * @throws PasswordHashingRejectedException if the wait queue is full
+     */
+    public <T> T execute(final Callable<T> hash) throws PasswordHashingRejectedException {
+        final long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long started = System.nanoTime();
+                    totalWaitNanos.addAndGet(started - submitted);
+                    try {
+                        return hash.call();
+                    } finally {
+                        recordHash(System.nanoTime() - started);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new PasswordHashingRejectedException(retryAfter);
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    protected void recordHash(long nanos) {
+        hashes.incrementAndGet();
+        totalHashNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxHashNanos.get())) {
+            if (maxHashNanos.compareAndSet(max, nanos)) break;
+        }
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public long getHashes() {
+        return hashes.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return average milliseconds a hash waited in the queue
+     */
+    public double getAverageWaitMillis() {
+        long count = hashes.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return average milliseconds a hash took to compute
+     */
+    public double getAverageHashMillis() {
+        long count = hashes.get();
+        return count == 0 ? 0 : totalHashNanos.get() / 1000000.0 / count;
+    }
+
+    public double getMaxHashMillis() {
+        return maxHashNanos.get() / 1000000.0;
+    }
+
+    public void resetStatistics() {
+        hashes.set(0);
+        rejected.set(0);
+        totalWaitNanos.set(0);
+        totalHashNanos.set(0);
+        maxHashNanos.set(0);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "keycloak-password-hashing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
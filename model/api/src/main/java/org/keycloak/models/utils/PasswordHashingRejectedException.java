@@ -0,0 +1,22 @@
+package org.keycloak.models.utils;
+
+/**
+ * Thrown when a password can't be hashed because the {@link PasswordHashingExecutor} is saturated.  The request should
+ * be retried later.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final int retryAfter;
+
+    public PasswordHashingRejectedException(int retryAfter) {
+        super("Too many concurrent password hashes, retry after " + retryAfter + " seconds");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return seconds the client should wait before retrying
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
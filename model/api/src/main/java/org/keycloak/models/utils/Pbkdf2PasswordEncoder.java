@@ -4,10 +4,12 @@ import net.iharder.Base64;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.concurrent.Callable;
 
 /**
  * <p>
@@ -23,34 +25,58 @@ public class Pbkdf2PasswordEncoder {
     public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
     public static final String RNG_ALGORITHM = "SHA1PRNG";
 
-    private static final int DERIVED_KEY_SIZE = 512;
-    private static final int ITERATIONS = 20000;
+    /**
+     * Parameters of credentials that were hashed before they were stored with the credential.
+     */
+    public static final int DEFAULT_KEY_SIZE = 512;
+    public static final int DEFAULT_ITERATIONS = 20000;
 
+    private final String algorithm;
     private final int iterations;
+    private final int keySize;
     private byte[] salt;
 
-    public Pbkdf2PasswordEncoder(byte[] salt, int iterations) {
+    public Pbkdf2PasswordEncoder(byte[] salt, int iterations, String algorithm, int keySize) {
         this.salt = salt;
         this.iterations = iterations;
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+    }
+
+    public Pbkdf2PasswordEncoder(byte[] salt, int iterations) {
+        this(salt, iterations, PBKDF2_ALGORITHM, DEFAULT_KEY_SIZE);
     }
 
     public Pbkdf2PasswordEncoder(byte[] salt) {
-        this(salt, ITERATIONS);
+        this(salt, DEFAULT_ITERATIONS);
     }
 
     /**
-     * Encode the raw password provided
+     * Encode the raw password provided, hashing it on the {@link PasswordHashingExecutor}
      * @param rawPassword The password used as a master key to derive into a session key
      * @return encoded password in Base64
+     * @throws PasswordHashingRejectedException if too many passwords are being hashed already
      */
-    public String encode(String rawPassword) {
+    public String encode(final String rawPassword) {
+        return PasswordHashingExecutor.getInstance().execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return hash(rawPassword);
+            }
+        });
+    }
+
+    /**
+     * Hashes the password on the calling thread, for callers that run their own threads such as bulk imports.
+     */
+    public String hash(String rawPassword) {
 
         String encodedPassword;
 
-        KeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterations, DERIVED_KEY_SIZE);
+        KeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterations, keySize);
 
         try {
-            byte[] key = getSecretKeyFactory().generateSecret(spec).getEncoded();
+            byte[] key = getSecretKeyFactory(algorithm).generateSecret(spec).getEncoded();
             encodedPassword = Base64.encodeBytes(key);
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException("Credential could not be encoded");
@@ -66,7 +92,19 @@ public class Pbkdf2PasswordEncoder {
      * @return true if the password is valid, otherwise false for invalid credentials
      */
     public boolean verify(String rawPassword, String encodedPassword) {
-        return encode(rawPassword).equals(encodedPassword);
+        return MessageDigest.isEqual(encode(rawPassword).getBytes(), encodedPassword.getBytes());
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getKeySize() {
+        return keySize;
     }
 
     /**
@@ -89,11 +127,27 @@ public class Pbkdf2PasswordEncoder {
         return buffer;
     }
 
-    private static SecretKeyFactory getSecretKeyFactory() {
+    /**
+     * Checks parameters before passwords are hashed with them, so a bad setting is rejected where it is made rather
+     * than on the next login.
+     *
+     * @throws IllegalArgumentException if the algorithm isn't available or iterations or key size aren't positive
+     */
+    public static void checkParameters(String algorithm, int iterations, int keySize) {
+        if (iterations <= 0) throw new IllegalArgumentException("Invalid hash iterations: " + iterations);
+        if (keySize <= 0) throw new IllegalArgumentException("Invalid hash key size: " + keySize);
+        try {
+            SecretKeyFactory.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported hash algorithm: " + algorithm);
+        }
+    }
+
+    private static SecretKeyFactory getSecretKeyFactory(String algorithm) {
         try {
-            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+            return SecretKeyFactory.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("PBKDF2 algorithm not found");
+            throw new RuntimeException("PBKDF2 algorithm not found: " + algorithm);
         }
     }
 }
@@ -0,0 +1,264 @@
+package org.keycloak.models.utils;
+
+import org.keycloak.models.ApplicationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleContainerModel;
+import org.keycloak.models.RoleModel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the roles of each realm together with the transitive closure of their composites, so role checks and token
+ * construction don't have to walk composite roles through the model.  A realm's roles are loaded again when
+ * {@link RealmModel#getRolesVersion()} changes, which happens whenever roles or composites are changed.
+ * <p/>
+ * Every role of a realm gets a dense index, and sets of roles (closures, a user's effective roles, a client's scope)
+ * are {@link BitSet}s over those indexes, so checking and intersecting them are word-wise operations.  Cached roles
+ * only hold ids and names, never models, so they can be shared between requests.
+ */
+public class RoleClosureCache {
+    private static final RoleClosureCache instance = new RoleClosureCache();
+
+    protected final ConcurrentHashMap<String, RealmRoles> realms = new ConcurrentHashMap<String, RealmRoles>();
+
+    /**
+     * @return the cache shared by the model and services
+     */
+    public static RoleClosureCache getInstance() {
+        return instance;
+    }
+
+    public RealmRoles getRealmRoles(RealmModel realm) {
+        // the version is read before the roles, so roles loaded concurrently with a change are never cached as current
+        String version = realm.getRolesVersion();
+        RealmRoles roles = realms.get(realm.getId());
+        if (roles != null && roles.isVersion(version)) return roles;
+        roles = new RealmRoles(version);
+        roles.load(realm);
+        realms.put(realm.getId(), roles);
+        return roles;
+    }
+
+    public void evict(String realmId) {
+        realms.remove(realmId);
+    }
+
+    public void clear() {
+        realms.clear();
+    }
+
+    public static class RoleInfo {
+        protected final int index;
+        protected final String id;
+        protected final String name;
+        protected final String application;
+        protected final boolean surrogateAuthRequired;
+        protected final List<RoleInfo> composites = new ArrayList<RoleInfo>();
+        protected BitSet closure;
+
+        protected RoleInfo(int index, String id, String name, String application, boolean surrogateAuthRequired) {
+            this.index = index;
+            this.id = id;
+            this.name = name;
+            this.application = application;
+            this.surrogateAuthRequired = surrogateAuthRequired;
+        }
+
+        /**
+         * @return position of the role in the bit sets of its realm
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the application the role belongs to, or null for realm roles
+         */
+        public String getApplication() {
+            return application;
+        }
+
+        public boolean isRealmRole() {
+            return application == null;
+        }
+
+        public boolean isSurrogateAuthRequired() {
+            return surrogateAuthRequired;
+        }
+
+        public boolean isComposite() {
+            return !composites.isEmpty();
+        }
+
+        public List<RoleInfo> getComposites() {
+            return composites;
+        }
+
+        /**
+         * @return this role and every role it contains, directly or through other composites.  Must not be modified.
+         */
+        public BitSet getClosure() {
+            return closure;
+        }
+
+        public boolean hasRole(RoleInfo role) {
+            return closure.get(role.index);
+        }
+
+        @Override
+        public String toString() {
+            return application == null ? name : application + "/" + name;
+        }
+    }
+
+    public static class RealmRoles {
+        protected final String version;
+        protected final Map<String, RoleInfo> roles = new HashMap<String, RoleInfo>();
+        protected final List<RoleInfo> byIndex = new ArrayList<RoleInfo>();
+
+        protected RealmRoles(String version) {
+            this.version = version;
+        }
+
+        protected boolean isVersion(String version) {
+            return this.version == null ? version == null : this.version.equals(version);
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public RoleInfo getRole(String id) {
+            return roles.get(id);
+        }
+
+        public RoleInfo getRole(RoleModel role) {
+            return roles.get(role.getId());
+        }
+
+        public RoleInfo getRole(int index) {
+            return byIndex.get(index);
+        }
+
+        /**
+         * Roles that are not known to the cache are left out.
+         *
+         * @param models
+         * @return
+         */
+        public List<RoleInfo> getRoles(Collection<RoleModel> models) {
+            List<RoleInfo> list = new ArrayList<RoleInfo>(models.size());
+            for (RoleModel model : models) {
+                RoleInfo role = roles.get(model.getId());
+                if (role != null) list.add(role);
+            }
+            return list;
+        }
+
+        /**
+         * @param roles
+         * @return the roles themselves, without their composites
+         */
+        public BitSet toBits(Collection<RoleInfo> roles) {
+            BitSet bits = new BitSet(byIndex.size());
+            for (RoleInfo role : roles) bits.set(role.index);
+            return bits;
+        }
+
+        /**
+         * @param roles
+         * @return the roles and every role they contain
+         */
+        public BitSet closureOf(Collection<RoleInfo> roles) {
+            BitSet bits = new BitSet(byIndex.size());
+            for (RoleInfo role : roles) bits.or(role.closure);
+            return bits;
+        }
+
+        public List<RoleInfo> fromBits(BitSet bits) {
+            List<RoleInfo> list = new ArrayList<RoleInfo>(bits.cardinality());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) list.add(byIndex.get(i));
+            return list;
+        }
+
+        public int size() {
+            return byIndex.size();
+        }
+
+        protected void load(RealmModel realm) {
+            Map<RoleInfo, RoleModel> models = new HashMap<RoleInfo, RoleModel>();
+            for (RoleModel role : realm.getRoles()) {
+                models.put(add(role, null, false), role);
+            }
+            for (ApplicationModel application : realm.getApplications()) {
+                for (RoleModel role : application.getRoles()) {
+                    models.put(add(role, application.getName(), application.isSurrogateAuthRequired()), role);
+                }
+            }
+
+            for (Map.Entry<RoleInfo, RoleModel> entry : models.entrySet()) {
+                if (!entry.getValue().isComposite()) continue;
+                for (RoleModel composite : entry.getValue().getComposites()) {
+                    RoleInfo info = roles.get(composite.getId());
+                    if (info == null) info = add(composite);
+                    entry.getKey().composites.add(info);
+                }
+            }
+
+            for (RoleInfo role : byIndex) {
+                role.closure = closure(role);
+            }
+        }
+
+        protected RoleInfo add(RoleModel role, String application, boolean surrogateAuthRequired) {
+            RoleInfo info = new RoleInfo(byIndex.size(), role.getId(), role.getName(), application, surrogateAuthRequired);
+            roles.put(info.id, info);
+            byIndex.add(info);
+            return info;
+        }
+
+        /**
+         * For composites that belong to neither the realm nor one of its applications.
+         */
+        protected RoleInfo add(RoleModel role) {
+            RoleContainerModel container = role.getContainer();
+            if (container instanceof ApplicationModel) {
+                ApplicationModel application = (ApplicationModel) container;
+                return add(role, application.getName(), application.isSurrogateAuthRequired());
+            }
+            return add(role, null, false);
+        }
+
+        protected BitSet closure(RoleInfo role) {
+            BitSet closure = new BitSet(byIndex.size());
+            List<RoleInfo> pending = new ArrayList<RoleInfo>();
+            pending.add(role);
+            while (!pending.isEmpty()) {
+                RoleInfo next = pending.remove(pending.size() - 1);
+                if (closure.get(next.index)) continue;
+                // closures computed earlier are reused whole
+                if (next.closure != null) {
+                    closure.or(next.closure);
+                    continue;
+                }
+                closure.set(next.index);
+                pending.addAll(next.composites);
+            }
+            return closure;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.keycloak.models.utils;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers client secrets that have been verified against their stored hash, so clients that exchange an access
+ * code on every login don't pay for a PBKDF2 hash each time.  Only an HMAC of each secret is kept, under a random key
+ * that never leaves the process, and it is compared in constant time.
+ * <p/>
+ * An entry is bound to the stored hash it was verified against, so it stops matching as soon as the credential is
+ * changed, on any node.  Adapters also drop it in {@link org.keycloak.models.RealmModel#updateCredential}.
+ * <p/>
+ * This is only meant for client secrets, which are long and random.  User passwords must always be hashed.
+ */
+public class SecretVerificationCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final SecretVerificationCache instance = new SecretVerificationCache();
+
+    protected final ConcurrentHashMap<String, Entry> verified = new ConcurrentHashMap<String, Entry>();
+    protected final SecretKey key;
+    protected final int maxEntries;
+
+    protected static class Entry {
+        protected final String storedHash;
+        protected final byte[] digest;
+
+        protected Entry(String storedHash, byte[] digest) {
+            this.storedHash = storedHash;
+            this.digest = digest;
+        }
+    }
+
+    public static SecretVerificationCache getInstance() {
+        return instance;
+    }
+
+    public SecretVerificationCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public SecretVerificationCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        try {
+            key = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param id id of the client
+     * @param storedHash the hash the secret is currently stored as
+     * @param secret
+     * @return true if the same secret was verified against the same stored hash before
+     */
+    public boolean isVerified(String id, String storedHash, String secret) {
+        Entry entry = verified.get(id);
+        if (entry == null || !entry.storedHash.equals(storedHash)) return false;
+        return MessageDigest.isEqual(entry.digest, digest(storedHash, secret));
+    }
+
+    /**
+     * Remembers a secret after it has been verified against the stored hash.  Nothing is remembered if the cache is
+     * full.
+     *
+     * @param id
+     * @param storedHash
+     * @param secret
+     */
+    public void verified(String id, String storedHash, String secret) {
+        if (verified.size() >= maxEntries && !verified.containsKey(id)) return;
+        verified.put(id, new Entry(storedHash, digest(storedHash, secret)));
+    }
+
+    public void invalidate(String id) {
+        verified.remove(id);
+    }
+
+    public void clear() {
+        verified.clear();
+    }
+
+    public int size() {
+        return verified.size();
+    }
+
+    protected byte[] digest(String storedHash, String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(storedHash.getBytes("UTF-8"));
+            mac.update((byte) 0);
+            return mac.doFinal(secret.getBytes("UTF-8"));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -3,9 +3,10 @@ package org.keycloak.models.utils;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * TOTP: Time-based One-time Password Algorithm Based on http://tools.ietf.org/html/draft-mraihi-totp-timebased-06
@@ -27,6 +28,14 @@ public class TimeBasedOTP {
     // 0 1 2 3 4 5 6 7 8
     private static final int[] DIGITS_POWER = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000};
 
+    // Mac.getInstance looks up the provider every time, so each thread keeps a Mac per algorithm instead
+    private static final ThreadLocal<Map<String, Mac>> macs = new ThreadLocal<Map<String, Mac>>() {
+        @Override
+        protected Map<String, Mac> initialValue() {
+            return new HashMap<String, Mac>();
+        }
+    };
+
     private Clock clock;
     private final String algorithm;
     private final int numberDigits;
@@ -55,15 +64,7 @@ public class TimeBasedOTP {
      * @param secretKey the secret key to derive the token from.
      */
     public String generate(String secretKey) {
-        long T = this.clock.getCurrentInterval();
-
-        String steps = Long.toHexString(T).toUpperCase();
-
-        // Just get a 16 digit string
-        while (steps.length() < 16)
-            steps = "0" + steps;
-
-        return generateTOTP(secretKey, steps, this.numberDigits, this.algorithm);
+        return generateTOTP(secretKey.getBytes(), this.clock.getCurrentInterval(), this.numberDigits, this.algorithm);
     }
 
     /**
@@ -78,9 +79,6 @@ public class TimeBasedOTP {
      *
      */
     public String generateTOTP(String key, String time, int returnDigits, String crypto) {
-        String result = null;
-        byte[] hash;
-
         // Using the counter
         // First 8 bytes are for the movingFactor
         // Complaint with base RFC 4226 (HOTP)
@@ -94,7 +92,29 @@ public class TimeBasedOTP {
         // byte[] k = hexStr2Bytes(key);
         byte[] k = key.getBytes();
 
-        hash = hmac_sha1(crypto, k, msg);
+        return generateTOTP(k, msg, returnDigits, crypto);
+    }
+
+    /**
+     * Generates the TOTP value of an interval, without going through a hex string.
+     *
+     * @param key          the shared secret
+     * @param interval     the interval, the moving factor of RFC 4226
+     * @param returnDigits number of digits to return
+     * @param crypto       the crypto function to use
+     * @return
+     */
+    public String generateTOTP(byte[] key, long interval, int returnDigits, String crypto) {
+        byte[] msg = new byte[8];
+        for (int i = msg.length - 1; i >= 0; i--) {
+            msg[i] = (byte) interval;
+            interval >>>= 8;
+        }
+        return generateTOTP(key, msg, returnDigits, crypto);
+    }
+
+    private String generateTOTP(byte[] key, byte[] msg, int returnDigits, String crypto) {
+        byte[] hash = hmac_sha1(crypto, key, msg);
 
         // put selected bytes into result int
         int offset = hash[hash.length - 1] & 0xf;
@@ -104,12 +124,12 @@ public class TimeBasedOTP {
 
         int otp = binary % DIGITS_POWER[returnDigits];
 
-        result = Integer.toString(otp);
-
-        while (result.length() < returnDigits) {
-            result = "0" + result;
+        char[] result = new char[returnDigits];
+        for (int i = returnDigits - 1; i >= 0; i--) {
+            result[i] = (char) ('0' + otp % 10);
+            otp /= 10;
         }
-        return result;
+        return new String(result);
     }
 
     /**
@@ -120,23 +140,41 @@ public class TimeBasedOTP {
      * @return
      */
     public boolean validate(String token, byte[] secret) {
-        long currentInterval = this.clock.getCurrentInterval();
+        return validateInterval(token, secret) != -1;
+    }
 
-        for (int i = this.delayWindow; i >= 0; --i) {
-            String steps = Long.toHexString(currentInterval - i).toUpperCase();
+    /**
+     * <p>Validates a token using a secret key.</p>
+     *
+     * @param token  OTP string to validate
+     * @param secret Shared secret
+     * @return the interval the token was generated for, or -1 if it isn't valid
+     */
+    public long validateInterval(String token, byte[] secret) {
+        if (token == null || token.length() != this.numberDigits) {
+            return -1;
+        }
 
-            // Just get a 16 digit string
-            while (steps.length() < 16)
-                steps = "0" + steps;
+        byte[] tokenBytes = token.getBytes();
+        long currentInterval = this.clock.getCurrentInterval();
 
-            String candidate = generateTOTP(new String(secret), steps, this.numberDigits, this.algorithm);
+        for (int i = this.delayWindow; i >= 0; --i) {
+            String candidate = generateTOTP(secret, currentInterval - i, this.numberDigits, this.algorithm);
 
-            if (candidate.equals(token)) {
-                return true;
+            if (MessageDigest.isEqual(candidate.getBytes(), tokenBytes)) {
+                return currentInterval - i;
             }
         }
 
-        return false;
+        return -1;
+    }
+
+    /**
+     * @param interval the interval a token was generated for
+     * @return time in milliseconds after which the token isn't accepted anymore
+     */
+    public long getExpiration(long interval) {
+        return (interval + this.delayWindow + 1) * this.clock.interval * 1000L;
     }
 
     public void setCalendar(Calendar calendar) {
@@ -159,7 +197,12 @@ public class TimeBasedOTP {
         byte[] value;
 
         try {
-            Mac hmac = Mac.getInstance(crypto);
+            Map<String, Mac> threadMacs = macs.get();
+            Mac hmac = threadMacs.get(crypto);
+            if (hmac == null) {
+                hmac = Mac.getInstance(crypto);
+                threadMacs.put(crypto, hmac);
+            }
             SecretKeySpec macKey = new SecretKeySpec(keyBytes, "RAW");
 
             hmac.init(macKey);
@@ -202,11 +245,9 @@ public class TimeBasedOTP {
         public long getCurrentInterval() {
             Calendar currentCalendar = this.calendar;
 
-            if (currentCalendar == null) {
-                currentCalendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
-            }
+            long time = currentCalendar != null ? currentCalendar.getTimeInMillis() : System.currentTimeMillis();
 
-            return (currentCalendar.getTimeInMillis() / 1000) / this.interval;
+            return (time / 1000) / this.interval;
         }
 
         public void setCalendar(Calendar calendar) {
@@ -0,0 +1,77 @@
+package org.keycloak.models.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the TOTP tokens each user logged in with until they expire, so a token that was seen, for example over a
+ * shoulder, can't be used a second time.  A token is claimed with a single <code>putIfAbsent</code>, so two concurrent
+ * logins with the same token can't both succeed.
+ * <p/>
+ * Claimed tokens are only remembered in this node's memory.  In a cluster a token used on one node can still be
+ * used once on each of the other nodes until it expires, unless logins of a user always reach the same node.
+ */
+public class TotpReplayCache {
+    public static final int DEFAULT_CLEANUP_THRESHOLD = 10000;
+
+    private static final TotpReplayCache instance = new TotpReplayCache();
+
+    protected final ConcurrentHashMap<String, Long> used = new ConcurrentHashMap<String, Long>();
+    protected final int cleanupThreshold;
+
+    public static TotpReplayCache getInstance() {
+        return instance;
+    }
+
+    public TotpReplayCache() {
+        this(DEFAULT_CLEANUP_THRESHOLD);
+    }
+
+    /**
+     * @param cleanupThreshold number of tokens after which expired tokens are removed
+     */
+    public TotpReplayCache(int cleanupThreshold) {
+        this.cleanupThreshold = cleanupThreshold;
+    }
+
+    /**
+     * Claims a token for a user.
+     *
+     * @param id id of the user
+     * @param token
+     * @param expiration time in milliseconds after which the token isn't valid anymore, see
+     *                   {@link TimeBasedOTP#getExpiration(long)}
+     * @return false if the user already used the token
+     */
+    public boolean use(String id, String token, long expiration) {
+        long now = currentTime();
+        if (used.size() >= cleanupThreshold) {
+            removeExpired(now);
+        }
+
+        String key = id + ":" + token;
+        Long existing = used.putIfAbsent(key, expiration);
+        if (existing == null) return true;
+        // the same digits may come up again once the old token expired
+        return existing <= now && used.replace(key, existing, expiration);
+    }
+
+    public void clear() {
+        used.clear();
+    }
+
+    public int size() {
+        return used.size();
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    protected void removeExpired(long now) {
+        Iterator<Long> itr = used.values().iterator();
+        while (itr.hasNext()) {
+            if (itr.next() <= now) itr.remove();
+        }
+    }
+}
@@ -75,4 +75,36 @@ public class PasswordPolicyTest {
         Assert.assertNull(policy.validate("12aaBB&-"));
     }
 
+    @Test
+    public void testHashing() {
+        PasswordPolicy policy = new PasswordPolicy("length");
+        Assert.assertEquals("PBKDF2WithHmacSHA1", policy.getHashAlgorithm());
+        Assert.assertEquals(20000, policy.getHashIterations());
+        Assert.assertEquals(512, policy.getHashKeySize());
+
+        // the only PBKDF2 algorithm every supported JDK has
+        policy = new PasswordPolicy("length and hashAlgorithm(PBKDF2WithHmacSHA1) and hashIterations(1000) and hashKeySize(256)");
+        Assert.assertEquals("PBKDF2WithHmacSHA1", policy.getHashAlgorithm());
+        Assert.assertEquals(1000, policy.getHashIterations());
+        Assert.assertEquals(256, policy.getHashKeySize());
+        Assert.assertNull(policy.validate("12345678"));
+    }
+
+    @Test
+    public void testInvalidHashing() {
+        assertInvalid("hashIterations(0)");
+        assertInvalid("hashIterations(-1)");
+        assertInvalid("hashIterations(many)");
+        assertInvalid("hashKeySize(-256)");
+        assertInvalid("length and hashAlgorithm(PBKDF2WithHmacMD4)");
+    }
+
+    private void assertInvalid(String policy) {
+        try {
+            new PasswordPolicy(policy);
+            Assert.fail("Expected " + policy + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
 }
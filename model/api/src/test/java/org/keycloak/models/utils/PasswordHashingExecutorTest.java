@@ -0,0 +1,104 @@
+package org.keycloak.models.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PasswordHashingExecutorTest {
+
+    private PasswordHashingExecutor executor;
+    private CountDownLatch release;
+
+    @Before
+    public void before() {
+        executor = new PasswordHashingExecutor(1, 1, 5);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private Thread submitBlocked(final CountDownLatch started) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                executor.execute(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return "hash";
+                    }
+                });
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testExecute() {
+        Assert.assertEquals("hash", executor.execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return "hash";
+            }
+        }));
+        Assert.assertEquals(1, executor.getHashes());
+        Assert.assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testFailure() {
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException();
+                }
+            });
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread running = submitBlocked(started);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // fills the queue
+        Thread queued = submitBlocked(new CountDownLatch(1));
+        while (executor.getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+
+        try {
+            executor.execute(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "hash";
+                }
+            });
+            Assert.fail("Expected PasswordHashingRejectedException");
+        } catch (PasswordHashingRejectedException e) {
+            Assert.assertEquals(5, e.getRetryAfter());
+        }
+        Assert.assertEquals(1, executor.getRejected());
+
+        release.countDown();
+        running.join(10000);
+        queued.join(10000);
+        Assert.assertEquals(2, executor.getHashes());
+        Assert.assertEquals(0, executor.getQueueDepth());
+    }
+}
@@ -0,0 +1,34 @@
+package org.keycloak.models.utils;
+
+/**
+ * Time for tests of the caches and stores that read the time through a protected <code>currentTime()</code>.  Tests
+ * override <code>currentTime()</code> to return {@link #currentTime()} and move the time forward by hand.  The unit is
+ * whatever the class under test uses, seconds or milliseconds.
+ */
+public class TestClock {
+    private volatile long time;
+
+    public TestClock() {
+        this(1000000);
+    }
+
+    public TestClock(long time) {
+        this.time = time;
+    }
+
+    public long currentTime() {
+        return time;
+    }
+
+    public void set(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @return the new time
+     */
+    public long advance(long amount) {
+        time += amount;
+        return time;
+    }
+}
@@ -0,0 +1,65 @@
+package org.keycloak.models.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+public class TimeBasedOTPTest {
+
+    private static final String SEED = "12345678901234567890";
+
+    @Test
+    public void testRfc6238() {
+        // test vectors of RFC 6238, appendix B
+        TimeBasedOTP totp = new TimeBasedOTP(TimeBasedOTP.HMAC_SHA1, 8, 30, 0);
+        Assert.assertEquals("94287082", totp.generateTOTP(SEED, "1", 8, TimeBasedOTP.HMAC_SHA1));
+        Assert.assertEquals("94287082", totp.generateTOTP(SEED.getBytes(), 1, 8, TimeBasedOTP.HMAC_SHA1));
+        Assert.assertEquals("07081804", totp.generateTOTP(SEED, "23523EC", 8, TimeBasedOTP.HMAC_SHA1));
+        Assert.assertEquals("07081804", totp.generateTOTP(SEED.getBytes(), 0x23523EC, 8, TimeBasedOTP.HMAC_SHA1));
+        Assert.assertEquals("65353130", totp.generateTOTP(SEED.getBytes(), 0x27BC86AA, 8, TimeBasedOTP.HMAC_SHA1));
+    }
+
+    @Test
+    public void testValidate() {
+        TimeBasedOTP totp = new TimeBasedOTP();
+        Calendar calendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(1111111109000L);
+        totp.setCalendar(calendar);
+
+        String token = totp.generate("secret");
+        long interval = 1111111109L / 30;
+        Assert.assertEquals(interval, totp.validateInterval(token, "secret".getBytes()));
+        Assert.assertEquals(-1, totp.validateInterval(token, "other".getBytes()));
+        Assert.assertEquals(-1, totp.validateInterval(null, "secret".getBytes()));
+
+        // still valid in the next interval, not after that
+        calendar.setTimeInMillis(1111111109000L + 30000);
+        Assert.assertTrue(totp.validate(token, "secret".getBytes()));
+        Assert.assertEquals((interval + 2) * 30000, totp.getExpiration(interval));
+        calendar.setTimeInMillis(totp.getExpiration(interval));
+        Assert.assertFalse(totp.validate(token, "secret".getBytes()));
+    }
+
+    @Test
+    public void testReplay() {
+        final TestClock clock = new TestClock();
+        TotpReplayCache cache = new TotpReplayCache(2) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+
+        Assert.assertTrue(cache.use("user", "123456", clock.currentTime() + 60000));
+        Assert.assertFalse(cache.use("user", "123456", clock.currentTime() + 60000));
+        Assert.assertTrue(cache.use("other", "123456", clock.currentTime() + 60000));
+
+        // the same digits may be used again once the token expired
+        clock.advance(60000);
+        Assert.assertTrue(cache.use("user", "123456", clock.currentTime() + 60000));
+        Assert.assertEquals(1, cache.size());
+    }
+}
@@ -58,6 +58,7 @@ public class ApplicationAdapter implements ApplicationModel {
     @Override
     public void setName(String name) {
         application.setName(name);
+        ((RealmAdapter) realm).rolesChanged();
     }
 
     @Override
@@ -78,6 +79,7 @@ public class ApplicationAdapter implements ApplicationModel {
     @Override
     public void setSurrogateAuthRequired(boolean surrogateAuthRequired) {
         application.setSurrogateAuthRequired(surrogateAuthRequired);
+        ((RealmAdapter) realm).rolesChanged();
     }
 
     @Override
@@ -119,6 +121,7 @@ public class ApplicationAdapter implements ApplicationModel {
         entity.setApplication(application);
         em.persist(entity);
         application.getRoles().add(entity);
+        ((RealmAdapter) realm).rolesChanged();
         em.flush();
         return new RoleAdapter(realm, em, entity);
     }
@@ -138,6 +141,7 @@ public class ApplicationAdapter implements ApplicationModel {
         role.setApplication(null);
         em.flush();
         em.remove(role);
+        ((RealmAdapter) realm).rolesChanged();
 
         return true;
     }
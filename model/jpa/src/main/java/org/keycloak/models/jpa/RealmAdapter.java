@@ -1,6 +1,7 @@
 package org.keycloak.models.jpa;
 
 import org.bouncycastle.openssl.PEMWriter;
+import org.jboss.logging.Logger;
 import org.keycloak.models.RoleContainerModel;
 import org.keycloak.models.jpa.entities.ApplicationEntity;
 import org.keycloak.models.jpa.entities.CredentialEntity;
@@ -14,6 +15,10 @@ import org.keycloak.models.jpa.entities.UserEntity;
 import org.keycloak.models.jpa.entities.UserRoleMappingEntity;
 import org.keycloak.models.jpa.entities.UserScopeMappingEntity;
 import org.keycloak.models.utils.Pbkdf2PasswordEncoder;
+import org.keycloak.models.utils.RoleClosureCache;
+import org.keycloak.models.utils.RoleClosureCache.RealmRoles;
+import org.keycloak.models.utils.RoleClosureCache.RoleInfo;
+import org.keycloak.models.utils.SecretVerificationCache;
 import org.keycloak.util.PemUtils;
 import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.OAuthClientModel;
@@ -23,8 +28,10 @@ import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SocialLinkModel;
 import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.TimeBasedOTP;
+import org.keycloak.models.utils.TotpReplayCache;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -40,6 +47,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+
 import static org.keycloak.models.utils.Pbkdf2PasswordEncoder.*;
 
 /**
@@ -47,11 +56,15 @@ import static org.keycloak.models.utils.Pbkdf2PasswordEncoder.*;
  * @version $Revision: 1 $
  */
 public class RealmAdapter implements RealmModel {
+    private static final Logger logger = Logger.getLogger(RealmAdapter.class);
+
     protected RealmEntity realm;
     protected EntityManager em;
     protected volatile transient PublicKey publicKey;
     protected volatile transient PrivateKey privateKey;
-    private PasswordPolicy passwordPolicy;
+    private volatile PasswordPolicy passwordPolicy;
+
+    private static final TimeBasedOTP totp = new TimeBasedOTP();
 
     public RealmAdapter(EntityManager em, RealmEntity realm) {
         this.em = em;
@@ -162,6 +175,107 @@ public class RealmAdapter implements RealmModel {
         em.flush();
     }
 
+    @Override
+    public boolean isBruteForceProtected() {
+        return realm.isBruteForceProtected();
+    }
+
+    @Override
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        realm.setBruteForceProtected(bruteForceProtected);
+        em.flush();
+    }
+
+    @Override
+    public int getFailureFactor() {
+        return realm.getFailureFactor();
+    }
+
+    @Override
+    public void setFailureFactor(int failureFactor) {
+        realm.setFailureFactor(failureFactor);
+        em.flush();
+    }
+
+    @Override
+    public int getWaitIncrementSeconds() {
+        return realm.getWaitIncrementSeconds();
+    }
+
+    @Override
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        realm.setWaitIncrementSeconds(waitIncrementSeconds);
+        em.flush();
+    }
+
+    @Override
+    public int getMaxFailureWaitSeconds() {
+        return realm.getMaxFailureWaitSeconds();
+    }
+
+    @Override
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        realm.setMaxFailureWaitSeconds(maxFailureWaitSeconds);
+        em.flush();
+    }
+
+    @Override
+    public int getFailureDecaySeconds() {
+        return realm.getFailureDecaySeconds();
+    }
+
+    @Override
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        realm.setFailureDecaySeconds(failureDecaySeconds);
+        em.flush();
+    }
+
+    @Override
+    public int getRefreshTokenLifespan() {
+        return realm.getRefreshTokenLifespan();
+    }
+
+    @Override
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        realm.setRefreshTokenLifespan(refreshTokenLifespan);
+        em.flush();
+    }
+
+    @Override
+    public boolean isStatelessAccessCodes() {
+        return realm.isStatelessAccessCodes();
+    }
+
+    @Override
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        realm.setStatelessAccessCodes(statelessAccessCodes);
+        em.flush();
+    }
+
+    @Override
+    public boolean isCompressTokens() {
+        return realm.isCompressTokens();
+    }
+
+    @Override
+    public void setCompressTokens(boolean compressTokens) {
+        realm.setCompressTokens(compressTokens);
+        em.flush();
+    }
+
+    @Override
+    public String getRolesVersion() {
+        return realm.getRolesVersion();
+    }
+
+    /**
+     * A new random version rather than an increment, so concurrent changes on different nodes can't end up with the
+     * same version.
+     */
+    void rolesChanged() {
+        realm.setRolesVersion(UUID.randomUUID().toString());
+    }
+
     @Override
     public String getPublicKeyPem() {
         return realm.getPublicKeyPem();
@@ -855,6 +969,7 @@ public class RealmAdapter implements RealmModel {
         entity.setRealm(realm);
         realm.getRoles().add(entity);
         em.persist(entity);
+        rolesChanged();
         em.flush();
         return new RoleAdapter(this, em, entity);
     }
@@ -875,6 +990,7 @@ public class RealmAdapter implements RealmModel {
         em.createQuery("delete from " + UserScopeMappingEntity.class.getSimpleName() + " where role = :role").setParameter("role", roleEntity).executeUpdate();
 
         em.remove(roleEntity);
+        rolesChanged();
 
         return true;
     }
@@ -902,8 +1018,12 @@ public class RealmAdapter implements RealmModel {
         Set<RoleModel> roles = getRoleMappings(user);
         if (roles.contains(role)) return true;
 
+        RealmRoles realmRoles = RoleClosureCache.getInstance().getRealmRoles(this);
+        RoleInfo target = realmRoles.getRole(role);
         for (RoleModel mapping : roles) {
-            if (mapping.hasRole(role)) return true;
+            RoleInfo info = target != null ? realmRoles.getRole(mapping) : null;
+            // roles the cache doesn't know yet are looked up in the model
+            if (info != null ? info.hasRole(target) : mapping.hasRole(role)) return true;
         }
         return false;
     }
@@ -1029,23 +1149,92 @@ public class RealmAdapter implements RealmModel {
     public boolean validatePassword(UserModel user, String password) {
         for (CredentialEntity cred : ((UserAdapter)user).getUser().getCredentials()) {
             if (cred.getType().equals(UserCredentialModel.PASSWORD)) {
-                return new Pbkdf2PasswordEncoder(cred.getSalt()).verify(password, cred.getValue());
+                return verifyPassword(cred, password);
             }
         }
         return false;
     }
 
+    /**
+     * Verifies a password with the parameters it was hashed with.  If it is valid and the realm's password policy has
+     * changed since, the password is hashed again with the current parameters.  If that fails the old hash is kept,
+     * the password was valid either way.
+     */
+    protected boolean verifyPassword(CredentialEntity cred, String password) {
+        if (!getPasswordEncoder(cred).verify(password, cred.getValue())) return false;
+
+        boolean rehashed = false;
+        try {
+            PasswordPolicy policy = getPasswordPolicy();
+            if (!policy.getHashAlgorithm().equals(cred.getAlgorithm())
+                    || cred.getHashIterations() == null || policy.getHashIterations() != cred.getHashIterations()
+                    || cred.getKeySize() == null || policy.getHashKeySize() != cred.getKeySize()) {
+                encodePassword(cred, password);
+                rehashed = true;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to hash password of user " + cred.getUser().getLoginName() + " again, keeping the old hash", e);
+        }
+        if (rehashed) {
+            SecretVerificationCache.getInstance().invalidate(cred.getUser().getId());
+            em.flush();
+        }
+        return true;
+    }
+
+    protected Pbkdf2PasswordEncoder getPasswordEncoder(CredentialEntity cred) {
+        String algorithm = cred.getAlgorithm() != null ? cred.getAlgorithm() : PBKDF2_ALGORITHM;
+        int iterations = cred.getHashIterations() != null ? cred.getHashIterations() : DEFAULT_ITERATIONS;
+        int keySize = cred.getKeySize() != null ? cred.getKeySize() : DEFAULT_KEY_SIZE;
+        return new Pbkdf2PasswordEncoder(cred.getSalt(), iterations, algorithm, keySize);
+    }
+
+    protected void encodePassword(CredentialEntity cred, String password) {
+        PasswordPolicy policy = getPasswordPolicy();
+        byte[] salt = getSalt();
+        cred.setValue(new Pbkdf2PasswordEncoder(salt, policy.getHashIterations(), policy.getHashAlgorithm(), policy.getHashKeySize()).encode(password));
+        cred.setSalt(salt);
+        cred.setAlgorithm(policy.getHashAlgorithm());
+        cred.setHashIterations(policy.getHashIterations());
+        cred.setKeySize(policy.getHashKeySize());
+    }
+
     @Override
-    public boolean validateTOTP(UserModel user, String password, String token) {
-        if (!validatePassword(user, password)) return false;
-        for (CredentialEntity cred : ((UserAdapter)user).getUser().getCredentials()) {
-            if (cred.getType().equals(UserCredentialModel.TOTP)) {
-                return new TimeBasedOTP().validate(token, cred.getValue().getBytes());
+    public boolean validateSecret(UserModel client, String secret) {
+        UserEntity userEntity = ((UserAdapter) client).getUser();
+        for (CredentialEntity cred : userEntity.getCredentials()) {
+            if (cred.getType().equals(UserCredentialModel.PASSWORD)) {
+                SecretVerificationCache cache = SecretVerificationCache.getInstance();
+                if (cache.isVerified(userEntity.getId(), cred.getValue(), secret)) return true;
+                if (!verifyPassword(cred, secret)) return false;
+                cache.verified(userEntity.getId(), cred.getValue(), secret);
+                return true;
             }
         }
         return false;
     }
 
+    @Override
+    public boolean validateTOTP(UserModel user, String password, String token) {
+        UserEntity userEntity = ((UserAdapter) user).getUser();
+        CredentialEntity passwordCred = null;
+        CredentialEntity totpCred = null;
+        for (CredentialEntity cred : userEntity.getCredentials()) {
+            if (passwordCred == null && cred.getType().equals(UserCredentialModel.PASSWORD)) {
+                passwordCred = cred;
+            } else if (totpCred == null && cred.getType().equals(UserCredentialModel.TOTP)) {
+                totpCred = cred;
+            }
+        }
+        if (passwordCred == null || totpCred == null) return false;
+
+        // the token is checked first as it is far cheaper than hashing the password
+        long interval = totp.validateInterval(token, totpCred.getValue().getBytes());
+        if (interval == -1) return false;
+        if (!verifyPassword(passwordCred, password)) return false;
+        return TotpReplayCache.getInstance().use(userEntity.getId(), token, totp.getExpiration(interval));
+    }
+
     @Override
     public void updateCredential(UserModel user, UserCredentialModel cred) {
         CredentialEntity credentialEntity = null;
@@ -1064,9 +1253,8 @@ public class RealmAdapter implements RealmModel {
             userEntity.getCredentials().add(credentialEntity);
         }
         if (cred.getType().equals(UserCredentialModel.PASSWORD)) {
-            byte[] salt = getSalt();
-            credentialEntity.setValue(new Pbkdf2PasswordEncoder(salt).encode(cred.getValue()));
-            credentialEntity.setSalt(salt);
+            SecretVerificationCache.getInstance().invalidate(userEntity.getId());
+            encodePassword(credentialEntity, cred.getValue());
         } else {
             credentialEntity.setValue(cred.getValue());
         }
@@ -1074,6 +1262,67 @@ public class RealmAdapter implements RealmModel {
         em.flush();
     }
 
+    @Override
+    public UserCredentialValueModel hashCredential(UserCredentialModel cred) {
+        UserCredentialValueModel value = new UserCredentialValueModel();
+        value.setType(cred.getType());
+        value.setDevice(cred.getDevice());
+        if (cred.getType().equals(UserCredentialModel.PASSWORD)) {
+            PasswordPolicy policy = getPasswordPolicy();
+            byte[] salt = getSalt();
+            // the caller runs its own threads, so don't go through the hashing pool
+            value.setValue(new Pbkdf2PasswordEncoder(salt, policy.getHashIterations(), policy.getHashAlgorithm(), policy.getHashKeySize()).hash(cred.getValue()));
+            value.setSalt(salt);
+            value.setAlgorithm(policy.getHashAlgorithm());
+            value.setHashIterations(policy.getHashIterations());
+            value.setKeySize(policy.getHashKeySize());
+        } else {
+            value.setValue(cred.getValue());
+        }
+        return value;
+    }
+
+    @Override
+    public void updateCredentialDirectly(UserModel user, UserCredentialValueModel cred) {
+        boolean hashed = cred.getType().equals(UserCredentialModel.PASSWORD) && cred.getAlgorithm() != null;
+        if (cred.getType().equals(UserCredentialModel.PASSWORD) && !hashed) {
+            UserCredentialModel plain = new UserCredentialModel();
+            plain.setType(cred.getType());
+            plain.setValue(cred.getValue());
+            plain.setDevice(cred.getDevice());
+            updateCredential(user, plain);
+            return;
+        }
+
+        UserEntity userEntity = ((UserAdapter) user).getUser();
+        CredentialEntity credentialEntity = null;
+        for (CredentialEntity entity : userEntity.getCredentials()) {
+            if (entity.getType().equals(cred.getType())) {
+                credentialEntity = entity;
+            }
+        }
+        boolean created = credentialEntity == null;
+        if (created) {
+            credentialEntity = new CredentialEntity();
+            credentialEntity.setType(cred.getType());
+            credentialEntity.setUser(userEntity);
+        }
+        credentialEntity.setValue(cred.getValue());
+        credentialEntity.setDevice(cred.getDevice());
+        if (hashed) {
+            SecretVerificationCache.getInstance().invalidate(userEntity.getId());
+            credentialEntity.setSalt(cred.getSalt());
+            credentialEntity.setAlgorithm(cred.getAlgorithm());
+            credentialEntity.setHashIterations(cred.getHashIterations());
+            credentialEntity.setKeySize(cred.getKeySize());
+        }
+        // persisted with its values, and not flushed, so large imports are written in as few statements as possible
+        if (created) {
+            em.persist(credentialEntity);
+            userEntity.getCredentials().add(credentialEntity);
+        }
+    }
+
     @Override
     public PasswordPolicy getPasswordPolicy() {
         if (passwordPolicy == null) {
@@ -6,6 +6,9 @@ import org.keycloak.models.RoleModel;
 import org.keycloak.models.jpa.entities.ApplicationRoleEntity;
 import org.keycloak.models.jpa.entities.RealmRoleEntity;
 import org.keycloak.models.jpa.entities.RoleEntity;
+import org.keycloak.models.utils.RoleClosureCache;
+import org.keycloak.models.utils.RoleClosureCache.RealmRoles;
+import org.keycloak.models.utils.RoleClosureCache.RoleInfo;
 
 import javax.persistence.EntityManager;
 import java.util.HashSet;
@@ -58,6 +61,7 @@ public class RoleAdapter implements RoleModel {
     @Override
     public void setName(String name) {
         role.setName(name);
+        ((RealmAdapter) realm).rolesChanged();
     }
 
     @Override
@@ -72,6 +76,7 @@ public class RoleAdapter implements RoleModel {
             if (composite.equals(entity)) return;
         }
         getRole().getCompositeRoles().add(entity);
+        ((RealmAdapter) realm).rolesChanged();
         em.flush();
     }
 
@@ -82,6 +87,7 @@ public class RoleAdapter implements RoleModel {
         while (it.hasNext()) {
             if (it.next().equals(entity)) it.remove();
         }
+        ((RealmAdapter) realm).rolesChanged();
     }
 
     @Override
@@ -111,8 +117,13 @@ public class RoleAdapter implements RoleModel {
     @Override
     public boolean hasRole(RoleModel role) {
         if (this.equals(role)) return true;
-        if (!isComposite()) return false;
 
+        RealmRoles realmRoles = RoleClosureCache.getInstance().getRealmRoles(realm);
+        RoleInfo self = realmRoles.getRole(this);
+        RoleInfo target = realmRoles.getRole(role);
+        if (self != null && target != null) return self.hasRole(target);
+
+        if (!isComposite()) return false;
         Set<RoleModel> visited = new HashSet<RoleModel>();
         return searchFor(role, this, visited);
     }
@@ -26,6 +26,11 @@ public class CredentialEntity {
     protected String device;
     protected byte[] salt;
 
+    // null for hashes created before the hashing parameters were stored, see Pbkdf2PasswordEncoder for the defaults
+    protected String algorithm;
+    protected Integer hashIterations;
+    protected Integer keySize;
+
     @ManyToOne
     protected UserEntity user;
 
@@ -77,5 +82,29 @@ public class CredentialEntity {
         this.salt = salt;
     }
 
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Integer getHashIterations() {
+        return hashIterations;
+    }
+
+    public void setHashIterations(Integer hashIterations) {
+        this.hashIterations = hashIterations;
+    }
+
+    public Integer getKeySize() {
+        return keySize;
+    }
+
+    public void setKeySize(Integer keySize) {
+        this.keySize = keySize;
+    }
+
 
 }
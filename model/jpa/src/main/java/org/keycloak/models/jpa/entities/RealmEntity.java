@@ -44,6 +44,15 @@ public class RealmEntity {
     protected int tokenLifespan;
     protected int accessCodeLifespan;
     protected int accessCodeLifespanUserAction;
+    protected boolean bruteForceProtected;
+    protected int failureFactor;
+    protected int waitIncrementSeconds;
+    protected int maxFailureWaitSeconds;
+    protected int failureDecaySeconds;
+    protected int refreshTokenLifespan;
+    protected boolean statelessAccessCodes;
+    protected boolean compressTokens;
+    protected String rolesVersion;
 
     @Column(length = 2048)
     protected String publicKeyPem;
@@ -183,6 +192,78 @@ public class RealmEntity {
         this.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
     }
 
+    public boolean isBruteForceProtected() {
+        return bruteForceProtected;
+    }
+
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        this.bruteForceProtected = bruteForceProtected;
+    }
+
+    public int getFailureFactor() {
+        return failureFactor;
+    }
+
+    public void setFailureFactor(int failureFactor) {
+        this.failureFactor = failureFactor;
+    }
+
+    public int getWaitIncrementSeconds() {
+        return waitIncrementSeconds;
+    }
+
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        this.waitIncrementSeconds = waitIncrementSeconds;
+    }
+
+    public int getMaxFailureWaitSeconds() {
+        return maxFailureWaitSeconds;
+    }
+
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        this.maxFailureWaitSeconds = maxFailureWaitSeconds;
+    }
+
+    public int getFailureDecaySeconds() {
+        return failureDecaySeconds;
+    }
+
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        this.failureDecaySeconds = failureDecaySeconds;
+    }
+
+    public int getRefreshTokenLifespan() {
+        return refreshTokenLifespan;
+    }
+
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        this.refreshTokenLifespan = refreshTokenLifespan;
+    }
+
+    public boolean isStatelessAccessCodes() {
+        return statelessAccessCodes;
+    }
+
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        this.statelessAccessCodes = statelessAccessCodes;
+    }
+
+    public boolean isCompressTokens() {
+        return compressTokens;
+    }
+
+    public void setCompressTokens(boolean compressTokens) {
+        this.compressTokens = compressTokens;
+    }
+
+    public String getRolesVersion() {
+        return rolesVersion;
+    }
+
+    public void setRolesVersion(String rolesVersion) {
+        this.rolesVersion = rolesVersion;
+    }
+
     public String getPublicKeyPem() {
         return publicKeyPem;
     }
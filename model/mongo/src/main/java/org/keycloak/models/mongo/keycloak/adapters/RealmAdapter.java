@@ -9,6 +9,7 @@ import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SocialLinkModel;
 import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.mongo.api.NoSQL;
 import org.keycloak.models.mongo.api.query.NoSQLQuery;
@@ -35,6 +36,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -50,6 +52,7 @@ public class RealmAdapter implements RealmModel {
     // TODO: likely shouldn't be static. And ATM, just empty map is passed -> It's not possible to configure stuff like PasswordEncoder etc.
     private static PasswordCredentialHandler passwordCredentialHandler = new PasswordCredentialHandler(new HashMap<String, Object>());
     private static TOTPCredentialHandler totpCredentialHandler = new TOTPCredentialHandler(new HashMap<String, Object>());
+    private static final AtomicLong rolesVersions = new AtomicLong();
 
     public RealmAdapter(RealmData realmData, NoSQL noSQL) {
         this.realm = realmData;
@@ -197,6 +200,103 @@ public class RealmAdapter implements RealmModel {
         updateRealm();
     }
 
+    @Override
+    public boolean isBruteForceProtected() {
+        return realm.isBruteForceProtected();
+    }
+
+    @Override
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        realm.setBruteForceProtected(bruteForceProtected);
+        updateRealm();
+    }
+
+    @Override
+    public int getFailureFactor() {
+        return realm.getFailureFactor();
+    }
+
+    @Override
+    public void setFailureFactor(int failureFactor) {
+        realm.setFailureFactor(failureFactor);
+        updateRealm();
+    }
+
+    @Override
+    public int getWaitIncrementSeconds() {
+        return realm.getWaitIncrementSeconds();
+    }
+
+    @Override
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        realm.setWaitIncrementSeconds(waitIncrementSeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getMaxFailureWaitSeconds() {
+        return realm.getMaxFailureWaitSeconds();
+    }
+
+    @Override
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        realm.setMaxFailureWaitSeconds(maxFailureWaitSeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getFailureDecaySeconds() {
+        return realm.getFailureDecaySeconds();
+    }
+
+    @Override
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        realm.setFailureDecaySeconds(failureDecaySeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getRefreshTokenLifespan() {
+        return realm.getRefreshTokenLifespan();
+    }
+
+    @Override
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        realm.setRefreshTokenLifespan(refreshTokenLifespan);
+        updateRealm();
+    }
+
+    @Override
+    public boolean isStatelessAccessCodes() {
+        return realm.isStatelessAccessCodes();
+    }
+
+    @Override
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        realm.setStatelessAccessCodes(statelessAccessCodes);
+        updateRealm();
+    }
+
+    @Override
+    public boolean isCompressTokens() {
+        return realm.isCompressTokens();
+    }
+
+    @Override
+    public void setCompressTokens(boolean compressTokens) {
+        realm.setCompressTokens(compressTokens);
+        updateRealm();
+    }
+
+    /**
+     * Role changes aren't tracked here, so every call returns a new version and the
+     * {@link org.keycloak.models.utils.RoleClosureCache} loads the roles again instead of serving stale closures.
+     */
+    @Override
+    public String getRolesVersion() {
+        return Long.toString(rolesVersions.incrementAndGet());
+    }
+
     @Override
     public String getPublicKeyPem() {
         return realm.getPublicKeyPem();
@@ -722,6 +822,11 @@ public class RealmAdapter implements RealmModel {
         return status == Credentials.Status.VALID;
     }
 
+    @Override
+    public boolean validateSecret(UserModel client, String secret) {
+        return validatePassword(client, secret);
+    }
+
     @Override
     public boolean validateTOTP(UserModel user, String password, String token) {
         Credentials.Status status = totpCredentialHandler.validate(noSQL, ((UserAdapter)user).getUser(), password, token, null);
@@ -747,6 +852,28 @@ public class RealmAdapter implements RealmModel {
         }
     }
 
+    @Override
+    public UserCredentialValueModel hashCredential(UserCredentialModel cred) {
+        // credentials are hashed by the Mongo credential handlers as they are stored
+        UserCredentialValueModel value = new UserCredentialValueModel();
+        value.setType(cred.getType());
+        value.setValue(cred.getValue());
+        value.setDevice(cred.getDevice());
+        return value;
+    }
+
+    @Override
+    public void updateCredentialDirectly(UserModel user, UserCredentialValueModel cred) {
+        if (cred.getAlgorithm() != null) {
+            throw new UnsupportedOperationException("Importing hashed passwords is not supported by the Mongo model");
+        }
+        UserCredentialModel plain = new UserCredentialModel();
+        plain.setType(cred.getType());
+        plain.setValue(cred.getValue());
+        plain.setDevice(cred.getDevice());
+        updateCredential(user, plain);
+    }
+
     @Override
     public UserModel getUserBySocialLink(SocialLinkModel socialLink) {
         NoSQLQuery query = noSQL.createQueryBuilder()
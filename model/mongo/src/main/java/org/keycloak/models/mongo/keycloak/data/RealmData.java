@@ -30,6 +30,14 @@ public class RealmData implements NoSQLObject {
     private int tokenLifespan;
     private int accessCodeLifespan;
     private int accessCodeLifespanUserAction;
+    private boolean bruteForceProtected;
+    private int failureFactor;
+    private int waitIncrementSeconds;
+    private int maxFailureWaitSeconds;
+    private int failureDecaySeconds;
+    private int refreshTokenLifespan;
+    private boolean statelessAccessCodes;
+    private boolean compressTokens;
     private String publicKeyPem;
     private String privateKeyPem;
 
@@ -162,6 +170,78 @@ public class RealmData implements NoSQLObject {
         this.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
     }
 
+    @NoSQLField
+    public boolean isBruteForceProtected() {
+        return bruteForceProtected;
+    }
+
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        this.bruteForceProtected = bruteForceProtected;
+    }
+
+    @NoSQLField
+    public int getFailureFactor() {
+        return failureFactor;
+    }
+
+    public void setFailureFactor(int failureFactor) {
+        this.failureFactor = failureFactor;
+    }
+
+    @NoSQLField
+    public int getWaitIncrementSeconds() {
+        return waitIncrementSeconds;
+    }
+
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        this.waitIncrementSeconds = waitIncrementSeconds;
+    }
+
+    @NoSQLField
+    public int getMaxFailureWaitSeconds() {
+        return maxFailureWaitSeconds;
+    }
+
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        this.maxFailureWaitSeconds = maxFailureWaitSeconds;
+    }
+
+    @NoSQLField
+    public int getFailureDecaySeconds() {
+        return failureDecaySeconds;
+    }
+
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        this.failureDecaySeconds = failureDecaySeconds;
+    }
+
+    @NoSQLField
+    public int getRefreshTokenLifespan() {
+        return refreshTokenLifespan;
+    }
+
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        this.refreshTokenLifespan = refreshTokenLifespan;
+    }
+
+    @NoSQLField
+    public boolean isStatelessAccessCodes() {
+        return statelessAccessCodes;
+    }
+
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        this.statelessAccessCodes = statelessAccessCodes;
+    }
+
+    @NoSQLField
+    public boolean isCompressTokens() {
+        return compressTokens;
+    }
+
+    public void setCompressTokens(boolean compressTokens) {
+        this.compressTokens = compressTokens;
+    }
+
     @NoSQLField
     public String getPublicKeyPem() {
         return publicKeyPem;
@@ -12,6 +12,7 @@ import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SocialLinkModel;
 import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.picketlink.mappings.ApplicationData;
 import org.keycloak.models.picketlink.mappings.RealmData;
@@ -47,6 +48,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Meant to be a per-request object
@@ -55,6 +57,7 @@ import java.util.*;
  * @version $Revision: 1 $
  */
 public class RealmAdapter implements RealmModel {
+    private static final AtomicLong rolesVersions = new AtomicLong();
 
     protected RealmData realm;
     protected volatile transient PublicKey publicKey;
@@ -212,6 +215,103 @@ public class RealmAdapter implements RealmModel {
         updateRealm();
     }
 
+    @Override
+    public boolean isBruteForceProtected() {
+        return realm.isBruteForceProtected();
+    }
+
+    @Override
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        realm.setBruteForceProtected(bruteForceProtected);
+        updateRealm();
+    }
+
+    @Override
+    public int getFailureFactor() {
+        return realm.getFailureFactor();
+    }
+
+    @Override
+    public void setFailureFactor(int failureFactor) {
+        realm.setFailureFactor(failureFactor);
+        updateRealm();
+    }
+
+    @Override
+    public int getWaitIncrementSeconds() {
+        return realm.getWaitIncrementSeconds();
+    }
+
+    @Override
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        realm.setWaitIncrementSeconds(waitIncrementSeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getMaxFailureWaitSeconds() {
+        return realm.getMaxFailureWaitSeconds();
+    }
+
+    @Override
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        realm.setMaxFailureWaitSeconds(maxFailureWaitSeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getFailureDecaySeconds() {
+        return realm.getFailureDecaySeconds();
+    }
+
+    @Override
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        realm.setFailureDecaySeconds(failureDecaySeconds);
+        updateRealm();
+    }
+
+    @Override
+    public int getRefreshTokenLifespan() {
+        return realm.getRefreshTokenLifespan();
+    }
+
+    @Override
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        realm.setRefreshTokenLifespan(refreshTokenLifespan);
+        updateRealm();
+    }
+
+    @Override
+    public boolean isStatelessAccessCodes() {
+        return realm.isStatelessAccessCodes();
+    }
+
+    @Override
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        realm.setStatelessAccessCodes(statelessAccessCodes);
+        updateRealm();
+    }
+
+    @Override
+    public boolean isCompressTokens() {
+        return realm.isCompressTokens();
+    }
+
+    @Override
+    public void setCompressTokens(boolean compressTokens) {
+        realm.setCompressTokens(compressTokens);
+        updateRealm();
+    }
+
+    /**
+     * Role changes aren't tracked here, so every call returns a new version and the
+     * {@link org.keycloak.models.utils.RoleClosureCache} loads the roles again instead of serving stale closures.
+     */
+    @Override
+    public String getRolesVersion() {
+        return Long.toString(rolesVersions.incrementAndGet());
+    }
+
     @Override
     public String getPublicKeyPem() {
         return realm.getPublicKeyPem();
@@ -459,6 +559,11 @@ public class RealmAdapter implements RealmModel {
         return creds.getStatus() == Credentials.Status.VALID;
     }
 
+    @Override
+    public boolean validateSecret(UserModel client, String secret) {
+        return validatePassword(client, secret);
+    }
+
     @Override
     public boolean validateTOTP(UserModel user, String password, String token) {
         TOTPCredentials creds = new TOTPCredentials();
@@ -491,6 +596,28 @@ public class RealmAdapter implements RealmModel {
         }
     }
 
+    @Override
+    public UserCredentialValueModel hashCredential(UserCredentialModel cred) {
+        // credentials are hashed by the Picketlink credential handlers as they are stored
+        UserCredentialValueModel value = new UserCredentialValueModel();
+        value.setType(cred.getType());
+        value.setValue(cred.getValue());
+        value.setDevice(cred.getDevice());
+        return value;
+    }
+
+    @Override
+    public void updateCredentialDirectly(UserModel user, UserCredentialValueModel cred) {
+        if (cred.getAlgorithm() != null) {
+            throw new UnsupportedOperationException("Importing hashed passwords is not supported by the Picketlink model");
+        }
+        UserCredentialModel plain = new UserCredentialModel();
+        plain.setType(cred.getType());
+        plain.setValue(cred.getValue());
+        plain.setDevice(cred.getDevice());
+        updateCredential(user, plain);
+    }
+
     @Override
     public UserAdapter getUser(String name) {
         User user = findPicketlinkUser(name);
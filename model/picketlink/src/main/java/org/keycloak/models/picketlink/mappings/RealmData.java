@@ -21,6 +21,14 @@ public class RealmData extends AbstractPartition {
     private int tokenLifespan;
     private int accessCodeLifespan;
     private int accessCodeLifespanUserAction;
+    private boolean bruteForceProtected;
+    private int failureFactor;
+    private int waitIncrementSeconds;
+    private int maxFailureWaitSeconds;
+    private int failureDecaySeconds;
+    private int refreshTokenLifespan;
+    private boolean statelessAccessCodes;
+    private boolean compressTokens;
     private String publicKeyPem;
     private String privateKeyPem;
     private String[] defaultRoles;
@@ -134,6 +142,78 @@ public class RealmData extends AbstractPartition {
         this.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
     }
 
+    @AttributeProperty
+    public boolean isBruteForceProtected() {
+        return bruteForceProtected;
+    }
+
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        this.bruteForceProtected = bruteForceProtected;
+    }
+
+    @AttributeProperty
+    public int getFailureFactor() {
+        return failureFactor;
+    }
+
+    public void setFailureFactor(int failureFactor) {
+        this.failureFactor = failureFactor;
+    }
+
+    @AttributeProperty
+    public int getWaitIncrementSeconds() {
+        return waitIncrementSeconds;
+    }
+
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        this.waitIncrementSeconds = waitIncrementSeconds;
+    }
+
+    @AttributeProperty
+    public int getMaxFailureWaitSeconds() {
+        return maxFailureWaitSeconds;
+    }
+
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        this.maxFailureWaitSeconds = maxFailureWaitSeconds;
+    }
+
+    @AttributeProperty
+    public int getFailureDecaySeconds() {
+        return failureDecaySeconds;
+    }
+
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        this.failureDecaySeconds = failureDecaySeconds;
+    }
+
+    @AttributeProperty
+    public int getRefreshTokenLifespan() {
+        return refreshTokenLifespan;
+    }
+
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        this.refreshTokenLifespan = refreshTokenLifespan;
+    }
+
+    @AttributeProperty
+    public boolean isStatelessAccessCodes() {
+        return statelessAccessCodes;
+    }
+
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        this.statelessAccessCodes = statelessAccessCodes;
+    }
+
+    @AttributeProperty
+    public boolean isCompressTokens() {
+        return compressTokens;
+    }
+
+    public void setCompressTokens(boolean compressTokens) {
+        this.compressTokens = compressTokens;
+    }
+
     @AttributeProperty
     public String getPublicKeyPem() {
         return publicKeyPem;
@@ -49,6 +49,22 @@ public class RealmEntity implements Serializable {
     @AttributeValue
     private int accessCodeLifespanUserAction;
     @AttributeValue
+    private boolean bruteForceProtected;
+    @AttributeValue
+    private int failureFactor;
+    @AttributeValue
+    private int waitIncrementSeconds;
+    @AttributeValue
+    private int maxFailureWaitSeconds;
+    @AttributeValue
+    private int failureDecaySeconds;
+    @AttributeValue
+    private int refreshTokenLifespan;
+    @AttributeValue
+    private boolean statelessAccessCodes;
+    @AttributeValue
+    private boolean compressTokens;
+    @AttributeValue
     @Column(length = 2048)
     private String publicKeyPem;
     @AttributeValue
@@ -162,6 +178,70 @@ public class RealmEntity implements Serializable {
         this.accessCodeLifespanUserAction = accessCodeLifespanUserAction;
     }
 
+    public boolean isBruteForceProtected() {
+        return bruteForceProtected;
+    }
+
+    public void setBruteForceProtected(boolean bruteForceProtected) {
+        this.bruteForceProtected = bruteForceProtected;
+    }
+
+    public int getFailureFactor() {
+        return failureFactor;
+    }
+
+    public void setFailureFactor(int failureFactor) {
+        this.failureFactor = failureFactor;
+    }
+
+    public int getWaitIncrementSeconds() {
+        return waitIncrementSeconds;
+    }
+
+    public void setWaitIncrementSeconds(int waitIncrementSeconds) {
+        this.waitIncrementSeconds = waitIncrementSeconds;
+    }
+
+    public int getMaxFailureWaitSeconds() {
+        return maxFailureWaitSeconds;
+    }
+
+    public void setMaxFailureWaitSeconds(int maxFailureWaitSeconds) {
+        this.maxFailureWaitSeconds = maxFailureWaitSeconds;
+    }
+
+    public int getFailureDecaySeconds() {
+        return failureDecaySeconds;
+    }
+
+    public void setFailureDecaySeconds(int failureDecaySeconds) {
+        this.failureDecaySeconds = failureDecaySeconds;
+    }
+
+    public int getRefreshTokenLifespan() {
+        return refreshTokenLifespan;
+    }
+
+    public void setRefreshTokenLifespan(int refreshTokenLifespan) {
+        this.refreshTokenLifespan = refreshTokenLifespan;
+    }
+
+    public boolean isStatelessAccessCodes() {
+        return statelessAccessCodes;
+    }
+
+    public void setStatelessAccessCodes(boolean statelessAccessCodes) {
+        this.statelessAccessCodes = statelessAccessCodes;
+    }
+
+    public boolean isCompressTokens() {
+        return compressTokens;
+    }
+
+    public void setCompressTokens(boolean compressTokens) {
+        this.compressTokens = compressTokens;
+    }
+
     public String getPublicKeyPem() {
         return publicKeyPem;
     }
@@ -126,7 +126,7 @@ public class EmailSender {
 
     public void sendPasswordReset(UserModel user, RealmModel realm, AccessCodeEntry accessCode, UriInfo uriInfo) throws EmailException {
         UriBuilder builder = Urls.loginPasswordResetBuilder(uriInfo.getBaseUri());
-        builder.queryParam("key", accessCode.getId());
+        builder.queryParam("key", accessCode.getKey());
 
         URI uri = builder.build(realm.getName());
 
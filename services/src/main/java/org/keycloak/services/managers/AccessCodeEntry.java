@@ -1,5 +1,6 @@
 package org.keycloak.services.managers;
 
+import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
@@ -10,42 +11,70 @@ import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 /**
+ * Access codes outlive the request that created them, so they only keep ids and names of the realm, users and roles
+ * involved.  Models are looked up again in the realm of the request that uses the code.  Stores that keep entries
+ * outside of the JVM write them in the binary form of {@link AccessCodeSealer}, see {@link FileAccessCodeStore}.
+ * Realms with stateless access codes don't keep entries at all, the entry is sealed into the code itself.
+ *
 * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
 * @version $Revision: 1 $
 */
 public class AccessCodeEntry {
-    protected String id = UUID.randomUUID().toString() + System.currentTimeMillis();
+    protected String id = generateId();
     protected String code;
     protected String state;
     protected String redirectUri;
+    protected String scope;
 
-    protected long expiration;
-    protected RealmModel realm;
+    protected volatile long expiration;
+    protected String realmId;
     protected SkeletonKeyToken token;
-    protected UserModel user;
+    protected String userLoginName;
     protected Set<RequiredAction> requiredActions;
-    protected UserModel client;
-    protected List<RoleModel> realmRolesRequested = new ArrayList<RoleModel>();
-    MultivaluedMap<String, RoleModel> resourceRolesRequested = new MultivaluedHashMap<String, RoleModel>();
+    protected String clientLoginName;
+    protected List<String> realmRolesRequested = new ArrayList<String>();
+    protected MultivaluedMap<String, String> resourceRolesRequested = new MultivaluedHashMap<String, String>();
+    protected boolean selfContained;
+
+    protected static String generateId() {
+        return UUID.randomUUID().toString() + System.currentTimeMillis();
+    }
 
     public boolean isExpired() {
-        return expiration != 0 && (System.currentTimeMillis() / 1000) > expiration;
+        return isExpired(System.currentTimeMillis() / 1000);
+    }
+
+    public boolean isExpired(long currentTime) {
+        return expiration != 0 && currentTime > expiration;
     }
 
     public String getId() {
         return id;
     }
 
-    public RealmModel getRealm() {
-        return realm;
+    /**
+     * @return the value that looks this entry up again with {@link TokenManager#getAccessCode(RealmModel, String)}:
+     * the id of a stored entry, or the code itself if the code is self-contained
+     */
+    public String getKey() {
+        return selfContained ? code : id;
+    }
+
+    public boolean isSelfContained() {
+        return selfContained;
+    }
+
+    public String getRealmId() {
+        return realmId;
     }
 
     public void setRealm(RealmModel realm) {
-        this.realm = realm;
+        this.realmId = realm.getId();
     }
 
     public String getCode() {
@@ -72,20 +101,24 @@ public class AccessCodeEntry {
         this.token = token;
     }
 
-    public UserModel getClient() {
-        return client;
+    public String getClientLoginName() {
+        return clientLoginName;
     }
 
     public void setClient(UserModel client) {
-        this.client = client;
+        this.clientLoginName = client.getLoginName();
+    }
+
+    public String getUserLoginName() {
+        return userLoginName;
     }
 
-    public UserModel getUser() {
-        return user;
+    public UserModel getUser(RealmModel realm) {
+        return realm.getUser(userLoginName);
     }
 
     public void setUser(UserModel user) {
-        this.user = user;
+        this.userLoginName = user.getLoginName();
     }
 
     public Set<RequiredAction> getRequiredActions() {
@@ -96,12 +129,38 @@ public class AccessCodeEntry {
         this.requiredActions = requiredActions;
     }
 
-    public List<RoleModel> getRealmRolesRequested() {
-        return realmRolesRequested;
+    public void addRealmRoleRequested(String roleId) {
+        realmRolesRequested.add(roleId);
     }
 
-    public MultivaluedMap<String, RoleModel> getResourceRolesRequested() {
-        return resourceRolesRequested;
+    public void addResourceRoleRequested(String application, String roleId) {
+        resourceRolesRequested.add(application, roleId);
+    }
+
+    public boolean hasRolesRequested() {
+        return !realmRolesRequested.isEmpty() || !resourceRolesRequested.isEmpty();
+    }
+
+    public List<RoleModel> getRealmRolesRequested(RealmModel realm) {
+        List<RoleModel> roles = new ArrayList<RoleModel>();
+        for (String roleId : realmRolesRequested) {
+            RoleModel role = realm.getRoleById(roleId);
+            if (role != null) roles.add(role);
+        }
+        return roles;
+    }
+
+    public MultivaluedMap<String, RoleModel> getResourceRolesRequested(RealmModel realm) {
+        MultivaluedMap<String, RoleModel> roles = new MultivaluedHashMap<String, RoleModel>();
+        for (Map.Entry<String, List<String>> entry : resourceRolesRequested.entrySet()) {
+            ApplicationModel application = realm.getApplicationByName(entry.getKey());
+            if (application == null) continue;
+            for (String roleId : entry.getValue()) {
+                RoleModel role = application.getRoleById(roleId);
+                if (role != null) roles.add(entry.getKey(), role);
+            }
+        }
+        return roles;
     }
 
     public String getState() {
@@ -119,4 +178,15 @@ public class AccessCodeEntry {
     public void setRedirectUri(String redirectUri) {
         this.redirectUri = redirectUri;
     }
+
+    /**
+     * @return the scope param the code was requested with, so refresh tokens can request the same scope again
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
 }
@@ -0,0 +1,92 @@
+package org.keycloak.services.managers;
+
+import org.jboss.resteasy.logging.Logger;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers ids that may only be used once, for {@link InMemoryAccessCodeStore}.  An id only has to be remembered
+ * until it can't be used anymore, after that it is dropped.  Ids are only remembered by the node that saw them used.
+ * <p/>
+ * The cache is bounded.  When it is full and nothing can be swept, new ids are not recorded rather than forgetting ids
+ * that may still be replayed.
+ */
+public class AccessCodeReplayCache {
+    private static final Logger log = Logger.getLogger(AccessCodeReplayCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final long DEFAULT_SWEEP_INTERVAL = 5;
+
+    protected final ConcurrentHashMap<String, Long> used = new ConcurrentHashMap<String, Long>();
+    protected final int maxEntries;
+    protected final long sweepInterval;
+    protected final AtomicLong nextSweep = new AtomicLong();
+    protected final AtomicLong rejected = new AtomicLong();
+
+    public AccessCodeReplayCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    public AccessCodeReplayCache(int maxEntries, long sweepInterval) {
+        this.maxEntries = maxEntries;
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * @param id
+     * @param until time in seconds after which the id can no longer be replayed
+     * @return {@link AccessCodeStore.Use#UNRECORDED} if the cache is full
+     */
+    public AccessCodeStore.Use markUsed(String id, long until) {
+        long now = currentTime();
+        long next = nextSweep.get();
+        if (now >= next && nextSweep.compareAndSet(next, now + sweepInterval)) sweep(now);
+        if (used.size() >= maxEntries) {
+            sweep(now);
+            // ids recorded before the cache filled up are still caught
+            if (isUsed(id)) return AccessCodeStore.Use.REPEATED;
+            if (used.size() >= maxEntries) {
+                rejected.incrementAndGet();
+                log.warn("Used id cache is full: " + this);
+                return AccessCodeStore.Use.UNRECORDED;
+            }
+        }
+        return used.putIfAbsent(id, until) == null ? AccessCodeStore.Use.FIRST : AccessCodeStore.Use.REPEATED;
+    }
+
+    public boolean isUsed(String id) {
+        Long until = used.get(id);
+        return until != null && until >= currentTime();
+    }
+
+    public int size() {
+        return used.size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void clear() {
+        used.clear();
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    protected void sweep(long now) {
+        Iterator<Map.Entry<String, Long>> it = used.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() < now) it.remove();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "used ids: size=" + used.size() + ", rejected=" + rejected.get();
+    }
+}
@@ -0,0 +1,189 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.models.UserModel.RequiredAction;
+import org.keycloak.util.Base64Url;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns an access code entry into a self-contained access code and back.  The entry is written in a compact binary
+ * form, encrypted with AES-CBC and then MAC'd with HMAC-SHA256 over the IV and ciphertext.  The token of the entry is
+ * not included, it is created again from the requested roles when the code is exchanged.
+ * <p/>
+ * Self-contained codes start with {@link #PREFIX}, which can't appear in the ids of stored access codes, so both
+ * kinds of codes can be told apart.
+ */
+public class AccessCodeSealer {
+    public static final String PREFIX = "s1.";
+
+    protected static final String CIPHER = "AES/CBC/PKCS5Padding";
+    protected static final String MAC = "HmacSHA256";
+    protected static final int IV_LENGTH = 16;
+    protected static final int MAC_LENGTH = 32;
+
+    protected static final SecureRandom random = new SecureRandom();
+
+    public static boolean isSealed(String code) {
+        return code != null && code.startsWith(PREFIX);
+    }
+
+    public static String seal(AccessCodeEntry entry, SecretKey encryptionKey, SecretKey macKey) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+            byte[] ciphertext = cipher.doFinal(write(entry));
+
+            byte[] sealed = new byte[IV_LENGTH + ciphertext.length + MAC_LENGTH];
+            System.arraycopy(iv, 0, sealed, 0, IV_LENGTH);
+            System.arraycopy(ciphertext, 0, sealed, IV_LENGTH, ciphertext.length);
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(macKey);
+            mac.update(sealed, 0, IV_LENGTH + ciphertext.length);
+            mac.doFinal(sealed, IV_LENGTH + ciphertext.length);
+            return PREFIX + Base64Url.encode(sealed);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param code
+     * @param encryptionKey
+     * @param macKey
+     * @return the entry, or null if the code is malformed or was not sealed with these keys
+     */
+    public static AccessCodeEntry unseal(String code, SecretKey encryptionKey, SecretKey macKey) {
+        if (!isSealed(code)) return null;
+        try {
+            byte[] sealed = Base64Url.decode(code.substring(PREFIX.length()));
+            int contentLength = sealed.length - MAC_LENGTH;
+            if (contentLength <= IV_LENGTH) return null;
+
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(macKey);
+            mac.update(sealed, 0, contentLength);
+            byte[] expected = mac.doFinal();
+            byte[] actual = new byte[MAC_LENGTH];
+            System.arraycopy(sealed, contentLength, actual, 0, MAC_LENGTH);
+            if (!MessageDigest.isEqual(expected, actual)) return null;
+
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(sealed, 0, IV_LENGTH));
+            AccessCodeEntry entry = read(cipher.doFinal(sealed, IV_LENGTH, contentLength - IV_LENGTH));
+            entry.setCode(code);
+            return entry;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    protected static byte[] write(AccessCodeEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(out, entry);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    protected static AccessCodeEntry read(byte[] data) throws IOException {
+        AccessCodeEntry entry = read(new DataInputStream(new ByteArrayInputStream(data)));
+        entry.selfContained = true;
+        return entry;
+    }
+
+    /**
+     * Writes everything but the code and the token of an entry, also used by {@link FileAccessCodeStore}.
+     */
+    protected static void write(DataOutputStream out, AccessCodeEntry entry) throws IOException {
+        out.writeUTF(entry.id);
+        writeNullable(out, entry.realmId);
+        writeNullable(out, entry.userLoginName);
+        writeNullable(out, entry.clientLoginName);
+        writeNullable(out, entry.state);
+        writeNullable(out, entry.redirectUri);
+        writeNullable(out, entry.scope);
+        out.writeLong(entry.expiration);
+
+        if (entry.requiredActions == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(entry.requiredActions.size());
+            for (RequiredAction action : entry.requiredActions) out.writeUTF(action.name());
+        }
+
+        writeList(out, entry.realmRolesRequested);
+        out.writeInt(entry.resourceRolesRequested.size());
+        for (Map.Entry<String, List<String>> roles : entry.resourceRolesRequested.entrySet()) {
+            out.writeUTF(roles.getKey());
+            writeList(out, roles.getValue());
+        }
+    }
+
+    protected static AccessCodeEntry read(DataInputStream in) throws IOException {
+        AccessCodeEntry entry = new AccessCodeEntry();
+        entry.id = in.readUTF();
+        entry.realmId = readNullable(in);
+        entry.userLoginName = readNullable(in);
+        entry.clientLoginName = readNullable(in);
+        entry.state = readNullable(in);
+        entry.redirectUri = readNullable(in);
+        entry.scope = readNullable(in);
+        entry.expiration = in.readLong();
+
+        int actions = in.readInt();
+        if (actions >= 0) {
+            Set<RequiredAction> requiredActions = new HashSet<RequiredAction>();
+            for (int i = 0; i < actions; i++) requiredActions.add(RequiredAction.valueOf(in.readUTF()));
+            entry.requiredActions = requiredActions;
+        }
+
+        entry.realmRolesRequested = readList(in);
+        int applications = in.readInt();
+        for (int i = 0; i < applications; i++) {
+            entry.resourceRolesRequested.put(in.readUTF(), readList(in));
+        }
+        return entry;
+    }
+
+    protected static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    protected static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    protected static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) out.writeUTF(value);
+    }
+
+    protected static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Invalid list size " + size);
+        List<String> values = new ArrayList<String>(Math.min(size, 64));
+        for (int i = 0; i < size; i++) values.add(in.readUTF());
+        return values;
+    }
+}
@@ -0,0 +1,102 @@
+package org.keycloak.services.managers;
+
+/**
+ * Holds access codes between the request that issues them and the request that exchanges them.  Implementations
+ * that are shared between nodes allow codes to be exchanged on any node, so no sticky sessions are required.
+ * <p/>
+ * Stores also record which self-contained access codes and refresh tokens have been used, see
+ * {@link #markUsed(SingleUse, String, long)}.  Those are never put into the store, but a shared store still lets every
+ * node tell whether one was already exchanged on another one.
+ * <p/>
+ * Stores that are not in-process may return copies of the stored entries, so changes to an entry have to be written
+ * back with {@link #update(AccessCodeEntry)}.
+ * @see AccessCodeStoreProvider
+ */
+public interface AccessCodeStore {
+    /**
+     * Kinds of ids that can only be used once.  Each kind may be bounded separately.
+     */
+    enum SingleUse {
+        /**
+         * Ids of self-contained access codes.
+         */
+        ACCESS_CODE,
+        /**
+         * Ids of refresh tokens, which are remembered much longer than access codes.
+         */
+        REFRESH_TOKEN
+    }
+
+    /**
+     * Outcome of {@link #markUsed(SingleUse, String, long)}.
+     */
+    enum Use {
+        /**
+         * The id wasn't used before.
+         */
+        FIRST,
+        /**
+         * The id was used before.
+         */
+        REPEATED,
+        /**
+         * The use could not be recorded, for example because the store is full.  Whether the id was used before is
+         * unknown.
+         */
+        UNRECORDED
+    }
+
+    /**
+     * @param entry
+     * @return false if the store is full and the entry was rejected
+     */
+    boolean put(AccessCodeEntry entry);
+
+    /**
+     * An entry that has expired may still be returned, callers have to check {@link AccessCodeEntry#isExpired()}.
+     *
+     * @param id
+     * @return the entry, or null if there is none
+     */
+    AccessCodeEntry get(String id);
+
+    /**
+     * Stores changes made to an entry.  Does nothing if the entry has been removed in the meantime.
+     *
+     * @param entry
+     */
+    void update(AccessCodeEntry entry);
+
+    /**
+     * Removes the entry.  If multiple nodes try to remove the same entry, only one of them gets it.
+     *
+     * @param id
+     * @return the entry, or null if there is none
+     */
+    AccessCodeEntry remove(String id);
+
+    /**
+     * Records that an id that may only be used once has been used.  If multiple nodes use the same id, only one of
+     * them gets {@link Use#FIRST}.
+     *
+     * @param type
+     * @param id
+     * @param until time in seconds after which the id can't be used anyway, and may be forgotten
+     * @return
+     */
+    Use markUsed(SingleUse type, String id, long until);
+
+    /**
+     * @param type
+     * @param id
+     * @return true if the id has been used
+     */
+    boolean isUsed(SingleUse type, String id);
+
+    /**
+     * Removes all entries.  Recorded uses are kept.
+     */
+    void clear();
+
+    int size();
+}
@@ -0,0 +1,25 @@
+package org.keycloak.services.managers;
+
+import org.jboss.resteasy.logging.Logger;
+import org.keycloak.util.ProviderLoader;
+
+public class AccessCodeStoreLoader {
+    private static final Logger log = Logger.getLogger(AccessCodeStoreLoader.class);
+
+    public static final String ACCESS_CODE_STORE = "keycloak.accessCodeStore";
+    public static final String DEFAULT_ACCESS_CODE_STORE = InMemoryAccessCodeStoreProvider.ID;
+
+    private AccessCodeStoreLoader() {
+    }
+
+    public static AccessCodeStore load() {
+        String id = System.getProperty(ACCESS_CODE_STORE, DEFAULT_ACCESS_CODE_STORE);
+        for (AccessCodeStoreProvider provider : ProviderLoader.load(AccessCodeStoreProvider.class)) {
+            if (provider.getId().equals(id)) {
+                log.debug("Access code store: " + id);
+                return provider.createStore();
+            }
+        }
+        throw new RuntimeException("Access code store '" + id + "' not found");
+    }
+}
@@ -0,0 +1,11 @@
+package org.keycloak.services.managers;
+
+/**
+ * Service provider for {@link AccessCodeStore}, registered in META-INF/services.  The provider to use is selected
+ * with the "keycloak.accessCodeStore" system property.
+ */
+public interface AccessCodeStoreProvider {
+    String getId();
+
+    AccessCodeStore createStore();
+}
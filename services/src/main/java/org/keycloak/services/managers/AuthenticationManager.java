@@ -5,7 +5,10 @@ import org.jboss.resteasy.spi.HttpResponse;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.keycloak.RSATokenVerifier;
 import org.keycloak.VerificationException;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.HMACProvider;
 import org.keycloak.models.Constants;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RequiredCredentialModel;
@@ -17,12 +20,14 @@ import org.keycloak.services.resources.AccountService;
 import org.keycloak.services.resources.admin.AdminService;
 import org.keycloak.services.resources.RealmsResource;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.List;
@@ -39,6 +44,8 @@ public class AuthenticationManager {
     public static final String FORM_USERNAME = "username";
     public static final String KEYCLOAK_IDENTITY_COOKIE = "KEYCLOAK_IDENTITY";
 
+    protected IdentityCookieCache identityCookies = IdentityCookieCache.getInstance();
+
     public SkeletonKeyToken createIdentityToken(RealmModel realm, String username) {
         SkeletonKeyToken token = new SkeletonKeyToken();
         token.id(RealmManager.generateId());
@@ -83,13 +90,53 @@ public class AuthenticationManager {
         return cookie;
     }
 
+    /**
+     * Identity cookies are MAC'd with a key derived from the realm key rather than signed with it, so a login only
+     * costs a single signature, for the access token.
+     */
     protected String encodeToken(RealmModel realm, Object token) {
         String encodedToken = new JWSBuilder()
                 .jsonContent(token)
-                .rsa256(realm.getPrivateKey());
+                .hmac256(TokenManager.getIdentityCookieKey(realm));
         return encodedToken;
     }
 
+    /**
+     * Cookies that were signed with the realm key before cookies were MAC'd are still accepted until they expire.
+     */
+    protected SkeletonKeyToken verifyIdentityToken(RealmModel realm, String tokenString) throws VerificationException {
+        JWSInput input = null;
+        try {
+            input = new JWSInput(tokenString);
+            if (input.getHeader().getAlgorithm() != Algorithm.HS256) {
+                return RSATokenVerifier.verifyToken(tokenString, realm.getPublicKey(), realm.getName());
+            }
+        } catch (RuntimeException e) {
+            throw new VerificationException("Failed to parse identity cookie", e);
+        }
+
+        boolean verified = false;
+        try {
+            verified = HMACProvider.verify(input, TokenManager.getIdentityCookieKey(realm));
+        } catch (RuntimeException ignore) {
+        }
+        if (!verified) throw new VerificationException("Identity cookie signature not validated");
+
+        SkeletonKeyToken token = null;
+        try {
+            token = input.readJsonContent(SkeletonKeyToken.class);
+        } catch (IOException e) {
+            throw new VerificationException(e);
+        }
+        if (token.getSubject() == null) {
+            throw new VerificationException("Token user was null");
+        }
+        if (!realm.getName().equals(token.getAudience())) {
+            throw new VerificationException("Token audience doesn't match domain");
+        }
+        return token;
+    }
+
 
     public void expireIdentityCookie(RealmModel realm, UriInfo uriInfo) {
         logger.debug("Expiring identity cookie");
@@ -166,8 +213,24 @@ public class AuthenticationManager {
         }
 
         String tokenString = cookie.getValue();
+        IdentityCookieCache.Entry cached = identityCookies.get(realm.getId(), realm.getPublicKeyPem(), tokenString);
+        if (cached != null) {
+            UserModel user = realm.getUser(cached.getUserLoginName());
+            // the client is checked like below, it may have been changed on another node or by an import
+            UserModel client = cached.getClientLoginName() != null ? realm.getUser(cached.getClientLoginName()) : null;
+            if (user != null && user.isEnabled()
+                    && (cached.getClientLoginName() == null || (client != null && client.isEnabled()))) {
+                Auth auth = new Auth(cached.getToken());
+                auth.setUser(user);
+                auth.setClient(client);
+                return auth;
+            }
+            // verify again, so the cookie is expired below
+            identityCookies.remove(realm.getId(), tokenString);
+        }
+
         try {
-            SkeletonKeyToken token = RSATokenVerifier.verifyToken(tokenString, realm.getPublicKey(), realm.getName());
+            SkeletonKeyToken token = verifyIdentityToken(realm, tokenString);
             if (!token.isActive()) {
                 logger.debug("identity cookie expired");
                 expireIdentityCookie(realm, uriInfo);
@@ -194,6 +257,7 @@ public class AuthenticationManager {
                 auth.setClient(client);
             }
 
+            identityCookies.put(realm.getId(), realm.getPublicKeyPem(), tokenString, token);
             return auth;
         } catch (VerificationException e) {
             logger.debug("Failed to verify identity cookie", e);
@@ -245,6 +309,23 @@ public class AuthenticationManager {
     }
 
     public AuthenticationStatus authenticateForm(RealmModel realm, UserModel user, MultivaluedMap<String, String> formData) {
+        return authenticateForm(realm, user, formData, false);
+    }
+
+    /**
+     * Authenticates an application or OAuth client.  Verified client secrets may be remembered by the model, see
+     * {@link RealmModel#validateSecret(UserModel, String)}.
+     *
+     * @param realm
+     * @param client
+     * @param formData
+     * @return
+     */
+    public AuthenticationStatus authenticateClient(RealmModel realm, UserModel client, MultivaluedMap<String, String> formData) {
+        return authenticateForm(realm, client, formData, true);
+    }
+
+    protected AuthenticationStatus authenticateForm(RealmModel realm, UserModel user, MultivaluedMap<String, String> formData, boolean client) {
         if (user == null) {
             logger.debug("Not Authenticated! Incorrect user name");
             return AuthenticationStatus.INVALID_USER;
@@ -255,6 +336,19 @@ public class AuthenticationManager {
             return AuthenticationStatus.ACCOUNT_DISABLED;
         }
 
+        // client secrets are long and random, locking clients out would only let anyone lock an application out
+        BruteForceProtector.Policy bruteForce = null;
+        String address = null;
+        if (!client && realm.isBruteForceProtected()) {
+            bruteForce = new BruteForceProtector.Policy(realm);
+            address = getRemoteAddress();
+            long lockout = BruteForceProtector.getInstance().getLockout(realm.getId(), bruteForce, user.getLoginName(), address);
+            if (lockout > 0) {
+                logger.warn("Too many failed logins, " + user.getLoginName() + " from " + address + " locked out for " + lockout + " seconds");
+                return AuthenticationStatus.ACCOUNT_TEMPORARILY_DISABLED;
+            }
+        }
+
         Set<String> types = new HashSet<String>();
 
         List<RequiredCredentialModel> requiredCredentials = null;
@@ -287,16 +381,21 @@ public class AuthenticationManager {
                 }
                 logger.debug("validating TOTP");
                 if (!realm.validateTOTP(user, password, token)) {
-                    return AuthenticationStatus.INVALID_CREDENTIALS;
+                    return invalidCredentials(realm, user, bruteForce, address);
                 }
             } else {
                 logger.debug("validating password for user: " + user.getLoginName());
-                if (!realm.validatePassword(user, password)) {
+                boolean valid = client ? realm.validateSecret(user, password) : realm.validatePassword(user, password);
+                if (!valid) {
                     logger.debug("invalid password for user: " + user.getLoginName());
-                    return AuthenticationStatus.INVALID_CREDENTIALS;
+                    return invalidCredentials(realm, user, bruteForce, address);
                 }
             }
 
+            if (bruteForce != null) {
+                BruteForceProtector.getInstance().success(realm.getId(), user.getLoginName());
+            }
+
             if (!user.getRequiredActions().isEmpty()) {
                 return AuthenticationStatus.ACTIONS_REQUIRED;
             } else {
@@ -308,8 +407,23 @@ public class AuthenticationManager {
         }
     }
 
+    protected AuthenticationStatus invalidCredentials(RealmModel realm, UserModel user, BruteForceProtector.Policy bruteForce, String address) {
+        if (bruteForce != null) {
+            BruteForceProtector.getInstance().failure(realm.getId(), bruteForce, user.getLoginName(), address);
+        }
+        return AuthenticationStatus.INVALID_CREDENTIALS;
+    }
+
+    /**
+     * @return address of the client making the current request, or null if not called within a request
+     */
+    protected String getRemoteAddress() {
+        HttpServletRequest request = ResteasyProviderFactory.getContextData(HttpServletRequest.class);
+        return request != null ? request.getRemoteAddr() : null;
+    }
+
     public enum AuthenticationStatus {
-        SUCCESS, ACCOUNT_DISABLED, ACTIONS_REQUIRED, INVALID_USER, INVALID_CREDENTIALS, MISSING_PASSWORD, MISSING_TOTP, FAILED
+        SUCCESS, ACCOUNT_DISABLED, ACCOUNT_TEMPORARILY_DISABLED, ACTIONS_REQUIRED, INVALID_USER, INVALID_CREDENTIALS, MISSING_PASSWORD, MISSING_TOTP, FAILED
     }
 
     public static class Auth {
@@ -0,0 +1,263 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.models.RealmModel;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts failed logins per user and per source address, and locks them out for a while once there were too many.  The
+ * lockout is checked before the password is hashed, so guessing passwords doesn't keep the server busy hashing.
+ * <p/>
+ * Once the failure factor of the realm is reached the user is locked out for the wait increment, which doubles with
+ * every further failure up to the maximum wait.  A source address may fail {@link #ADDRESS_FAILURE_MULTIPLIER} times
+ * as often as a user, as many users may log in from behind the same proxy.  Rather than remembering every failure,
+ * each counter is halved whenever a decay period has passed, which only needs the period the counter was last
+ * updated in.  Counters are updated with a compare-and-set, no locks are taken.
+ * <p/>
+ * Counters live in this node's memory.  In a cluster every node counts the failures it sees on its own, so without
+ * sticky sessions an attacker gets up to the failure factor on each node before being locked out everywhere, and
+ * clearing a lockout from the admin console only clears it on the node serving that request.
+ */
+public class BruteForceProtector {
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final int ADDRESS_FAILURE_MULTIPLIER = 10;
+
+    public static final int DEFAULT_FAILURE_FACTOR = 30;
+    public static final int DEFAULT_WAIT_INCREMENT = 60;
+    public static final int DEFAULT_MAX_WAIT = 900;
+    public static final int DEFAULT_DECAY = 3600;
+
+    private static final String USER = ":user:";
+    private static final String ADDRESS = ":address:";
+
+    private static final int FAILURE_BITS = 24;
+    private static final long FAILURE_MASK = (1L << FAILURE_BITS) - 1;
+
+    private static final BruteForceProtector instance = new BruteForceProtector();
+
+    protected final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    protected final int maxEntries;
+
+    /**
+     * Settings of a realm, with the defaults filled in.
+     */
+    public static class Policy {
+        protected final int failureFactor;
+        protected final int waitIncrement;
+        protected final int maxWait;
+        protected final int decay;
+
+        public Policy(int failureFactor, int waitIncrement, int maxWait, int decay) {
+            this.failureFactor = failureFactor > 0 ? failureFactor : DEFAULT_FAILURE_FACTOR;
+            this.waitIncrement = waitIncrement > 0 ? waitIncrement : DEFAULT_WAIT_INCREMENT;
+            this.maxWait = maxWait > 0 ? maxWait : DEFAULT_MAX_WAIT;
+            this.decay = decay > 0 ? decay : DEFAULT_DECAY;
+        }
+
+        public Policy(RealmModel realm) {
+            this(realm.getFailureFactor(), realm.getWaitIncrementSeconds(), realm.getMaxFailureWaitSeconds(), realm.getFailureDecaySeconds());
+        }
+    }
+
+    /**
+     * Failures in the period the counter was last updated in, packed with the period into a single long so both can
+     * be updated at once.
+     */
+    protected static class Counter {
+        protected final AtomicLong state = new AtomicLong();
+        protected volatile long lastFailure;
+        // settings of the realm at the last failure, to tell when the counter can be removed
+        protected volatile int decay;
+        protected volatile int maxWait;
+
+        protected int getFailures(long period) {
+            return decay(state.get(), period);
+        }
+
+        protected int failed(Policy policy, long time) {
+            long period = time / policy.decay;
+            while (true) {
+                long current = state.get();
+                long failures = Math.min(decay(current, period) + 1, FAILURE_MASK);
+                if (state.compareAndSet(current, (period << FAILURE_BITS) | failures)) {
+                    lastFailure = time;
+                    decay = policy.decay;
+                    maxWait = policy.maxWait;
+                    return (int) failures;
+                }
+            }
+        }
+
+        private static int decay(long state, long period) {
+            long elapsed = period - (state >>> FAILURE_BITS);
+            if (elapsed <= 0) return (int) (state & FAILURE_MASK);
+            if (elapsed >= FAILURE_BITS) return 0;
+            return (int) ((state & FAILURE_MASK) >>> elapsed);
+        }
+    }
+
+    public static BruteForceProtector getInstance() {
+        return instance;
+    }
+
+    public BruteForceProtector() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public BruteForceProtector(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param realmId
+     * @param policy
+     * @param loginName
+     * @param address source address of the request, may be null
+     * @return seconds until the user or address may try again, 0 if neither is locked out
+     */
+    public long getLockout(String realmId, Policy policy, String loginName, String address) {
+        long now = currentTime();
+        long lockout = lockedUntil(counters.get(realmId + USER + loginName), policy, policy.failureFactor, now);
+        if (address != null) {
+            lockout = Math.max(lockout, lockedUntil(counters.get(realmId + ADDRESS + address), policy,
+                    policy.failureFactor * ADDRESS_FAILURE_MULTIPLIER, now));
+        }
+        return Math.max(0, lockout - now);
+    }
+
+    /**
+     * Records a failed login.
+     *
+     * @param realmId
+     * @param policy
+     * @param loginName
+     * @param address source address of the request, may be null
+     */
+    public void failure(String realmId, Policy policy, String loginName, String address) {
+        long now = currentTime();
+        Counter counter = getCounter(realmId + USER + loginName, now);
+        if (counter != null) counter.failed(policy, now);
+        if (address != null) {
+            counter = getCounter(realmId + ADDRESS + address, now);
+            if (counter != null) counter.failed(policy, now);
+        }
+    }
+
+    /**
+     * Forgets the failures of a user after a successful login.  Failures of the address are kept, otherwise an
+     * attacker could reset them by logging in with an account of its own.
+     *
+     * @param realmId
+     * @param loginName
+     */
+    public void success(String realmId, String loginName) {
+        counters.remove(realmId + USER + loginName);
+    }
+
+    /**
+     * @param realmId
+     * @param policy
+     * @param loginName
+     * @return failures of the user, after decay
+     */
+    public int getUserFailures(String realmId, Policy policy, String loginName) {
+        Counter counter = counters.get(realmId + USER + loginName);
+        return counter != null ? counter.getFailures(currentTime() / policy.decay) : 0;
+    }
+
+    /**
+     * @param realmId
+     * @param policy
+     * @return seconds until they may try again, by login name for users and by address for source addresses
+     */
+    public Map<String, Map<String, Long>> getLockouts(String realmId, Policy policy) {
+        Map<String, Long> users = new HashMap<String, Long>();
+        Map<String, Long> addresses = new HashMap<String, Long>();
+        long now = currentTime();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(realmId + USER)) {
+                long lockout = lockedUntil(entry.getValue(), policy, policy.failureFactor, now) - now;
+                if (lockout > 0) users.put(key.substring(realmId.length() + USER.length()), lockout);
+            } else if (key.startsWith(realmId + ADDRESS)) {
+                long lockout = lockedUntil(entry.getValue(), policy, policy.failureFactor * ADDRESS_FAILURE_MULTIPLIER, now) - now;
+                if (lockout > 0) addresses.put(key.substring(realmId.length() + ADDRESS.length()), lockout);
+            }
+        }
+        Map<String, Map<String, Long>> lockouts = new HashMap<String, Map<String, Long>>();
+        lockouts.put("users", users);
+        lockouts.put("addresses", addresses);
+        return lockouts;
+    }
+
+    public void clearUser(String realmId, String loginName) {
+        counters.remove(realmId + USER + loginName);
+    }
+
+    public void clearAddress(String realmId, String address) {
+        counters.remove(realmId + ADDRESS + address);
+    }
+
+    public void evictRealm(String realmId) {
+        Iterator<String> itr = counters.keySet().iterator();
+        while (itr.hasNext()) {
+            String key = itr.next();
+            if (key.startsWith(realmId + USER) || key.startsWith(realmId + ADDRESS)) itr.remove();
+        }
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * @return current time in seconds
+     */
+    protected long currentTime() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * @return the counter for the key, or null if the protector is full of counters that still matter
+     */
+    protected Counter getCounter(String key, long now) {
+        Counter counter = counters.get(key);
+        if (counter != null) return counter;
+        if (counters.size() >= maxEntries) {
+            removeExpired(now);
+            if (counters.size() >= maxEntries) return null;
+        }
+        counter = new Counter();
+        Counter existing = counters.putIfAbsent(key, counter);
+        return existing != null ? existing : counter;
+    }
+
+    /**
+     * Removes counters that have decayed to nothing and aren't locking anyone out.
+     */
+    protected void removeExpired(long now) {
+        Iterator<Counter> itr = counters.values().iterator();
+        while (itr.hasNext()) {
+            Counter counter = itr.next();
+            if (counter.decay == 0) continue;
+            if (counter.getFailures(now / counter.decay) == 0 && counter.lastFailure + counter.maxWait < now) itr.remove();
+        }
+    }
+
+    protected long lockedUntil(Counter counter, Policy policy, int failureFactor, long now) {
+        if (counter == null) return 0;
+        int failures = counter.getFailures(now / policy.decay);
+        if (failures < failureFactor) return 0;
+        int doublings = Math.min(failures - failureFactor, 30);
+        long wait = Math.min((long) policy.waitIncrement << doublings, policy.maxWait);
+        return counter.lastFailure + wait;
+    }
+}
@@ -0,0 +1,415 @@
+package org.keycloak.services.managers;
+
+import org.jboss.resteasy.logging.Logger;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.util.JsonSerialization;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps every access code as a file in a directory.  Nodes that share the directory (a shared or replicated file
+ * system, or just several servers on one machine in tests) can exchange each other's codes.
+ * <p/>
+ * Entries are written in the binary form of {@link AccessCodeSealer}, followed by the code and the token, and MAC'd
+ * with HMAC-SHA256.  The MAC key is created in the directory by the first node that uses it.  Files are never
+ * deserialized as Java objects, and a file that doesn't carry a valid MAC is ignored.  The directory, the key and the
+ * entries are only accessible to the owner; a directory that can't be restricted to the user the server runs as is
+ * refused.
+ * <p/>
+ * Files are written to a temporary name and renamed into place, and {@link #remove(String)} claims an entry by
+ * renaming it to a name unique to the caller, so a code can only be exchanged once even if several nodes try at the
+ * same time.  {@link #update(AccessCodeEntry)} claims the entry the same way before it puts the new version in place,
+ * so an entry that another node claimed in the meantime isn't brought back.  The last modified time of a file is set to the expiration of its entry, which lets the sweeper find
+ * expired entries without reading them.
+ * <p/>
+ * A used id is recorded as an empty file, created with {@link File#createNewFile()}, which only succeeds for one of
+ * the nodes.  Its last modified time is set to the time after which it can be forgotten.
+ */
+public class FileAccessCodeStore implements AccessCodeStore {
+    private static final Logger log = Logger.getLogger(FileAccessCodeStore.class);
+
+    protected static final String SUFFIX = ".code";
+    protected static final String USED_SUFFIX = ".used";
+    protected static final String KEY_FILE = "access-code.key";
+    protected static final String MAC = "HmacSHA256";
+    protected static final int KEY_LENGTH = 32;
+    protected static final int MAC_LENGTH = 32;
+    protected static final int MAX_FILE_LENGTH = 1024 * 1024;
+    protected static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9-]+");
+
+    /**
+     * Entries without an expiration are kept for this long.
+     */
+    protected static final long MAX_LIFESPAN = 24 * 60 * 60;
+
+    /**
+     * Used ids are kept this much longer, as their last modified time is only set right after they were created.
+     */
+    protected static final long USED_GRACE = 60;
+
+    protected static final FilenameFilter CODES = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.endsWith(SUFFIX);
+        }
+    };
+
+    protected final File directory;
+    protected final SecretKey macKey;
+    protected final int maxEntries;
+    protected final long sweepInterval;
+    protected final AtomicLong nextSweep = new AtomicLong();
+    protected volatile int lastCount;
+
+    public FileAccessCodeStore(File directory, int maxEntries, long sweepInterval) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Can't create access code directory " + directory);
+        }
+        if (!restrictToOwner(directory, true)) {
+            throw new IllegalArgumentException("Can't restrict access code directory " + directory + " to its owner");
+        }
+        this.directory = directory;
+        try {
+            this.macKey = loadKey(new File(directory, KEY_FILE));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't load access code key from " + directory, e);
+        }
+        this.maxEntries = maxEntries;
+        this.sweepInterval = sweepInterval;
+    }
+
+    @Override
+    public boolean put(AccessCodeEntry entry) {
+        long now = currentTime();
+        if (now >= nextSweep.get()) sweep(now);
+        if (lastCount >= maxEntries) {
+            sweep(now);
+            if (lastCount >= maxEntries) return false;
+        }
+        write(entry);
+        lastCount++;
+        return true;
+    }
+
+    @Override
+    public AccessCodeEntry get(String id) {
+        File file = getFile(id);
+        if (file == null) return null;
+        return read(file);
+    }
+
+    @Override
+    public void update(AccessCodeEntry entry) {
+        File file = getFile(entry.getId());
+        if (file == null || !file.exists()) return;
+        File tmp = writeTemporary(entry);
+        // claimed like in remove, if another node got to it first the code is gone and stays gone
+        File claimed = new File(directory, entry.getId() + "." + UUID.randomUUID() + ".claimed");
+        if (!file.renameTo(claimed)) {
+            tmp.delete();
+            return;
+        }
+        try {
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new RuntimeException("Failed to rename " + tmp + " to " + file);
+            }
+        } finally {
+            claimed.delete();
+        }
+    }
+
+    @Override
+    public AccessCodeEntry remove(String id) {
+        File file = getFile(id);
+        if (file == null) return null;
+        File claimed = new File(directory, id + "." + UUID.randomUUID() + ".claimed");
+        if (!file.renameTo(claimed)) return null;
+        try {
+            return read(claimed);
+        } finally {
+            claimed.delete();
+        }
+    }
+
+    @Override
+    public Use markUsed(SingleUse type, String id, long until) {
+        File file = getUsedFile(type, id);
+        if (file == null) return Use.REPEATED;
+        try {
+            if (!file.createNewFile()) return Use.REPEATED;
+        } catch (IOException e) {
+            log.warn("Failed to record use of " + file.getName(), e);
+            return Use.UNRECORDED;
+        }
+        file.setLastModified(until * 1000);
+        return Use.FIRST;
+    }
+
+    @Override
+    public boolean isUsed(SingleUse type, String id) {
+        File file = getUsedFile(type, id);
+        return file == null || file.exists();
+    }
+
+    @Override
+    public void clear() {
+        File[] files = directory.listFiles(CODES);
+        if (files == null) return;
+        for (File file : files) file.delete();
+        lastCount = 0;
+    }
+
+    @Override
+    public int size() {
+        String[] names = directory.list(CODES);
+        return names == null ? 0 : names.length;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * @param id
+     * @return null if the id can't be an access code id (ids come from request parameters)
+     */
+    protected File getFile(String id) {
+        if (id == null || !VALID_ID.matcher(id).matches()) return null;
+        return new File(directory, id + SUFFIX);
+    }
+
+    /**
+     * @return null if the id can't be a valid id
+     */
+    protected File getUsedFile(SingleUse type, String id) {
+        if (id == null || !VALID_ID.matcher(id).matches()) return null;
+        return new File(directory, id + "." + type.name().toLowerCase(Locale.ENGLISH) + USED_SUFFIX);
+    }
+
+    protected void sweep(long now) {
+        nextSweep.set(now + sweepInterval);
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        int count = 0;
+        long nowMillis = now * 1000;
+        for (File file : files) {
+            if (file.getName().equals(KEY_FILE)) continue;
+            // left over temporary and claimed files are removed once they are old enough to be abandoned
+            long lastModified = file.lastModified();
+            boolean isCode = file.getName().endsWith(SUFFIX);
+            long expiration;
+            if (isCode) {
+                expiration = lastModified;
+            } else if (file.getName().endsWith(USED_SUFFIX)) {
+                expiration = lastModified + USED_GRACE * 1000;
+            } else {
+                expiration = lastModified + MAX_LIFESPAN * 1000;
+            }
+            if (expiration < nowMillis) {
+                file.delete();
+            } else if (isCode) {
+                count++;
+            }
+        }
+        lastCount = count;
+    }
+
+    protected void write(AccessCodeEntry entry) {
+        File target = getFile(entry.getId());
+        File tmp = writeTemporary(entry);
+        if (!tmp.renameTo(target)) {
+            // not atomic on every platform, replace explicitly
+            target.delete();
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                throw new RuntimeException("Failed to rename " + tmp + " to " + target);
+            }
+        }
+    }
+
+    /**
+     * @return a file with the entry, under a temporary name
+     */
+    protected File writeTemporary(AccessCodeEntry entry) {
+        File tmp = new File(directory, entry.getId() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            byte[] data = encode(entry);
+            // restricted before anything is written to it
+            if (!tmp.createNewFile() || !restrictToOwner(tmp, false)) throw new IOException("Failed to create " + tmp);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+            long expiration = entry.getExpiration() == 0 ? currentTime() + MAX_LIFESPAN : entry.getExpiration();
+            tmp.setLastModified(expiration * 1000);
+            return tmp;
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException("Failed to store access code", e);
+        }
+    }
+
+    protected AccessCodeEntry read(File file) {
+        try {
+            long length = file.length();
+            if (length > MAX_FILE_LENGTH) {
+                log.warn("Access code " + file.getName() + " is too large, ignoring it");
+                return null;
+            }
+            byte[] data = new byte[(int) length];
+            InputStream in = new FileInputStream(file);
+            try {
+                if (readFully(in, data) != data.length) return null;
+            } finally {
+                in.close();
+            }
+            AccessCodeEntry entry = decode(data);
+            if (entry == null) log.warn("Access code " + file.getName() + " has an invalid MAC, ignoring it");
+            return entry;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("Failed to read access code " + file.getName(), e);
+            return null;
+        }
+    }
+
+    protected byte[] encode(AccessCodeEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        AccessCodeSealer.write(out, entry);
+        AccessCodeSealer.writeNullable(out, entry.code);
+        if (entry.token == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] token = JsonSerialization.writeValueAsBytes(entry.token);
+            out.writeInt(token.length);
+            out.write(token);
+        }
+        out.write(mac(bytes.toByteArray(), bytes.size()));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the entry, or null if the MAC doesn't match
+     */
+    protected AccessCodeEntry decode(byte[] data) throws IOException {
+        int contentLength = data.length - MAC_LENGTH;
+        if (contentLength <= 0) return null;
+        byte[] actual = new byte[MAC_LENGTH];
+        System.arraycopy(data, contentLength, actual, 0, MAC_LENGTH);
+        if (!MessageDigest.isEqual(mac(data, contentLength), actual)) return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, contentLength));
+        AccessCodeEntry entry = AccessCodeSealer.read(in);
+        entry.code = AccessCodeSealer.readNullable(in);
+        int tokenLength = in.readInt();
+        if (tokenLength > contentLength) throw new IOException("Invalid token length " + tokenLength);
+        if (tokenLength >= 0) {
+            byte[] token = new byte[tokenLength];
+            in.readFully(token);
+            entry.token = JsonSerialization.readValue(token, SkeletonKeyToken.class);
+        }
+        return entry;
+    }
+
+    protected byte[] mac(byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(macKey);
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the MAC key shared by every store using the directory, or creates it if this is the first one.
+     */
+    protected static SecretKey loadKey(File file) throws IOException {
+        if (file.createNewFile()) {
+            if (!restrictToOwner(file, false)) {
+                file.delete();
+                throw new IOException("Can't restrict " + file + " to its owner");
+            }
+            byte[] key = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes(key);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(key);
+            } finally {
+                out.close();
+            }
+            return new SecretKeySpec(key, MAC);
+        }
+
+        // another node may have created the file and not written the key yet
+        byte[] key = new byte[KEY_LENGTH];
+        for (int attempt = 0; attempt < 50; attempt++) {
+            InputStream in = new FileInputStream(file);
+            try {
+                if (readFully(in, key) == KEY_LENGTH) return new SecretKeySpec(key, MAC);
+            } finally {
+                in.close();
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IOException("Invalid access code key " + file);
+    }
+
+    /**
+     * Removes all permissions but the owner's.
+     *
+     * @return false if the permissions couldn't be changed, for example because the file belongs to another user
+     */
+    protected static boolean restrictToOwner(File file, boolean directory) {
+        return file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true)
+                && file.setExecutable(false, false) && (!directory || file.setExecutable(true, true));
+    }
+
+    protected static int readFully(InputStream in, byte[] data) throws IOException {
+        int read = 0;
+        while (read < data.length) {
+            int count = in.read(data, read, data.length - read);
+            if (count < 0) break;
+            read += count;
+        }
+        return read;
+    }
+}
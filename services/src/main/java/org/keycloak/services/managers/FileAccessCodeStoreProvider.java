@@ -0,0 +1,30 @@
+package org.keycloak.services.managers;
+
+import java.io.File;
+
+/**
+ * Stores codes in the directory given by the "keycloak.accessCodeStore.dir" system property, which has to be set.
+ * Point all nodes at the same directory to let any of them exchange a code.  The directory must not be shared with
+ * other users, it is created if it doesn't exist and restricted to the user the server runs as.
+ */
+public class FileAccessCodeStoreProvider implements AccessCodeStoreProvider {
+    public static final String ID = "file";
+
+    public static final String DIRECTORY = "keycloak.accessCodeStore.dir";
+    public static final String MAX_ENTRIES = "keycloak.accessCodeStore.maxEntries";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public AccessCodeStore createStore() {
+        String dir = System.getProperty(DIRECTORY);
+        if (dir == null || dir.trim().isEmpty()) {
+            throw new RuntimeException("The " + ID + " access code store requires the " + DIRECTORY + " system property");
+        }
+        int maxEntries = Integer.parseInt(System.getProperty(MAX_ENTRIES, String.valueOf(InMemoryAccessCodeStore.DEFAULT_MAX_ENTRIES)));
+        return new FileAccessCodeStore(new File(dir), maxEntries, InMemoryAccessCodeStore.DEFAULT_TICK_SECONDS);
+    }
+}
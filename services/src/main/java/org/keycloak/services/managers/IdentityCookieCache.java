@@ -0,0 +1,192 @@
+package org.keycloak.services.managers;
+
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.util.Base64Url;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers identity cookies that have been verified, so a browser that keeps navigating doesn't cost an RSA verify
+ * and a JSON parse on every request.  Cookies are keyed by a SHA-256 digest of their value and are remembered for a
+ * short time only, never beyond the expiration of the token in them.
+ * <p/>
+ * Only names are cached, never models, so the user is still looked up for each request.  Entries of a user are
+ * dropped when the user is disabled or removed, see {@link #invalidateUser(String, String)}.
+ * <p/>
+ * The entries live in this node's memory and invalidation only clears them here.  Another node keeps its entries for
+ * a disabled user until they expire, but as every hit still looks up the user and client and checks they are enabled,
+ * such entries only take up space, they don't let the cookie in.
+ */
+public class IdentityCookieCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_TTL = 30;
+
+    private static final IdentityCookieCache instance = new IdentityCookieCache();
+
+    protected final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    protected final int maxEntries;
+    protected final long ttl;
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    public static class Entry {
+        protected final String realmId;
+        protected final String publicKeyPem;
+        protected final SkeletonKeyToken token;
+        protected final long expiration;
+
+        protected Entry(String realmId, String publicKeyPem, SkeletonKeyToken token, long expiration) {
+            this.realmId = realmId;
+            this.publicKeyPem = publicKeyPem;
+            this.token = token;
+            this.expiration = expiration;
+        }
+
+        public SkeletonKeyToken getToken() {
+            return token;
+        }
+
+        public String getUserLoginName() {
+            return token.getSubject();
+        }
+
+        /**
+         * @return login name of the client the cookie was issued for, or null
+         */
+        public String getClientLoginName() {
+            return token.getIssuedFor();
+        }
+
+        protected boolean isFor(String realmId, String loginName) {
+            return this.realmId.equals(realmId) && (loginName.equals(token.getSubject()) || loginName.equals(token.getIssuedFor()));
+        }
+    }
+
+    public static IdentityCookieCache getInstance() {
+        return instance;
+    }
+
+    public IdentityCookieCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    public IdentityCookieCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param realmId
+     * @param publicKeyPem the realm's current public key, cookies verified with another key are not returned
+     * @param cookie
+     * @return the entry of a cookie verified earlier, or null
+     */
+    public Entry get(String realmId, String publicKeyPem, String cookie) {
+        String key = key(realmId, cookie);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiration < currentTime() || !entry.publicKeyPem.equals(publicKeyPem)) {
+            entries.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Remembers a cookie after it has been verified and its user and client have been checked.  Nothing is
+     * remembered if the cache is full.
+     *
+     * @param realmId
+     * @param publicKeyPem
+     * @param cookie
+     * @param token
+     */
+    public void put(String realmId, String publicKeyPem, String cookie, SkeletonKeyToken token) {
+        long now = currentTime();
+        long expiration = now + ttl;
+        if (token.getExpiration() != 0 && token.getExpiration() < expiration) expiration = token.getExpiration();
+        if (entries.size() >= maxEntries) {
+            sweep(now);
+            if (entries.size() >= maxEntries) return;
+        }
+        entries.put(key(realmId, cookie), new Entry(realmId, publicKeyPem, token, expiration));
+    }
+
+    public void remove(String realmId, String cookie) {
+        entries.remove(key(realmId, cookie));
+    }
+
+    /**
+     * Drops every cookie of the user, and every cookie issued for the user as a client.
+     *
+     * @param realmId
+     * @param loginName
+     */
+    public void invalidateUser(String realmId, String loginName) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isFor(realmId, loginName)) it.remove();
+        }
+    }
+
+    public void evictRealm(String realmId) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().realmId.equals(realmId)) it.remove();
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    protected void sweep(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiration < now) it.remove();
+        }
+    }
+
+    protected String key(String realmId, String cookie) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return realmId + ":" + Base64Url.encode(digest.digest(cookie.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "identity cookies: size=" + entries.size() + ", hits=" + hits.get() + ", misses=" + misses.get();
+    }
+}
@@ -0,0 +1,215 @@
+package org.keycloak.services.managers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, in-process store of pending access codes.
+ * <p/>
+ * Expired codes are removed by a hashed timing wheel: every code is queued in the slot of the tick it expires in and
+ * the slots that have elapsed are swept as a side effect of {@link #put} and {@link #get}, by whichever thread gets
+ * there first.  No background thread is needed, so a store has no lifecycle.  A code whose expiration was pushed back
+ * (e.g. when the user is sent to a required action) is simply requeued when its old slot is swept.
+ * <p/>
+ * The store holds at most {@code maxEntries} codes.  Once full, expired codes are swept eagerly and if that doesn't
+ * free up space the new code is rejected.  Used ids are kept in an {@link AccessCodeReplayCache} per kind, so they are
+ * only known to this node.
+ */
+public class InMemoryAccessCodeStore implements AccessCodeStore {
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final int DEFAULT_TICK_SECONDS = 5;
+    public static final int WHEEL_SIZE = 128;
+
+    protected final int maxEntries;
+    protected final int tickSeconds;
+    protected final Map<String, AccessCodeEntry> entries = new ConcurrentHashMap<String, AccessCodeEntry>();
+    protected final ConcurrentLinkedQueue<AccessCodeEntry>[] wheel;
+    protected final ReentrantLock sweepLock = new ReentrantLock();
+    protected volatile long lastTick;
+    protected final Map<SingleUse, AccessCodeReplayCache> used = new EnumMap<SingleUse, AccessCodeReplayCache>(SingleUse.class);
+
+    protected final AtomicLong created = new AtomicLong();
+    protected final AtomicLong redeemed = new AtomicLong();
+    protected final AtomicLong expired = new AtomicLong();
+    protected final AtomicLong rejected = new AtomicLong();
+
+    public InMemoryAccessCodeStore() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TICK_SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public InMemoryAccessCodeStore(int maxEntries, int tickSeconds) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        if (tickSeconds <= 0) throw new IllegalArgumentException("tickSeconds must be positive");
+        this.maxEntries = maxEntries;
+        this.tickSeconds = tickSeconds;
+        this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) wheel[i] = new ConcurrentLinkedQueue<AccessCodeEntry>();
+        this.lastTick = tick(currentTime());
+        for (SingleUse type : SingleUse.values()) used.put(type, new AccessCodeReplayCache());
+    }
+
+    /**
+     * @param entry
+     * @return false if the store is full
+     */
+    @Override
+    public boolean put(AccessCodeEntry entry) {
+        long now = currentTime();
+        sweep(now);
+        if (entries.size() >= maxEntries) {
+            sweepAll(now);
+            if (entries.size() >= maxEntries) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+        entries.put(entry.getId(), entry);
+        schedule(entry, now);
+        created.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public AccessCodeEntry get(String id) {
+        sweep(currentTime());
+        return entries.get(id);
+    }
+
+    /**
+     * Entries are held by reference, there is nothing to write back.
+     */
+    @Override
+    public void update(AccessCodeEntry entry) {
+    }
+
+    @Override
+    public AccessCodeEntry remove(String id) {
+        long now = currentTime();
+        sweep(now);
+        AccessCodeEntry entry = entries.remove(id);
+        if (entry == null) return null;
+        if (entry.isExpired(now)) {
+            expired.incrementAndGet();
+        } else {
+            redeemed.incrementAndGet();
+        }
+        return entry;
+    }
+
+    @Override
+    public Use markUsed(SingleUse type, String id, long until) {
+        return used.get(type).markUsed(id, until);
+    }
+
+    @Override
+    public boolean isUsed(SingleUse type, String id) {
+        return used.get(type).isUsed(id);
+    }
+
+    public AccessCodeReplayCache getUsed(SingleUse type) {
+        return used.get(type);
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        for (ConcurrentLinkedQueue<AccessCodeEntry> slot : wheel) slot.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getRedeemed() {
+        return redeemed.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * @return number of codes that could not be created because the store was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    protected long tick(long time) {
+        return time / tickSeconds;
+    }
+
+    protected void schedule(AccessCodeEntry entry, long now) {
+        long expiration = entry.getExpiration();
+        // codes without an expiration only ever leave the store when they are redeemed, keep them circling
+        long due = expiration == 0 ? tick(now) + WHEEL_SIZE - 1 : Math.max(tick(expiration) + 1, tick(now) + 1);
+        wheel[(int) (due % WHEEL_SIZE)].add(entry);
+    }
+
+    /**
+     * Sweeps the slots that have elapsed since the last sweep.  Skipped if another thread is already sweeping.
+     */
+    protected void sweep(long now) {
+        long current = tick(now);
+        if (current <= lastTick || !sweepLock.tryLock()) return;
+        try {
+            long from = lastTick + 1;
+            if (current - from >= WHEEL_SIZE) from = current - WHEEL_SIZE + 1;
+            for (long t = from; t <= current; t++) {
+                sweepSlot(wheel[(int) (t % WHEEL_SIZE)], now);
+            }
+            lastTick = current;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    protected void sweepAll(long now) {
+        sweepLock.lock();
+        try {
+            for (ConcurrentLinkedQueue<AccessCodeEntry> slot : wheel) sweepSlot(slot, now);
+            lastTick = tick(now);
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    protected void sweepSlot(ConcurrentLinkedQueue<AccessCodeEntry> slot, long now) {
+        // entries requeued while sweeping land in a later slot, so draining only what's there now is enough
+        int count = slot.size();
+        for (int i = 0; i < count; i++) {
+            AccessCodeEntry entry = slot.poll();
+            if (entry == null) return;
+            if (entries.get(entry.getId()) != entry) continue;
+            if (entry.isExpired(now)) {
+                if (entries.remove(entry.getId()) != null) expired.incrementAndGet();
+            } else {
+                schedule(entry, now);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "access codes: " + entries.size() + "/" + maxEntries + ", created=" + created.get() + ", redeemed="
+                + redeemed.get() + ", expired=" + expired.get() + ", rejected=" + rejected.get() + ", " + used;
+    }
+}
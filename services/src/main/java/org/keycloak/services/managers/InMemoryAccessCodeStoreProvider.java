@@ -0,0 +1,18 @@
+package org.keycloak.services.managers;
+
+/**
+ * Codes are only visible to the node that issued them.
+ */
+public class InMemoryAccessCodeStoreProvider implements AccessCodeStoreProvider {
+    public static final String ID = "memory";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public AccessCodeStore createStore() {
+        return new InMemoryAccessCodeStore();
+    }
+}
@@ -71,6 +71,14 @@ public class ModelToRepresentation {
         rep.setTokenLifespan(realm.getTokenLifespan());
         rep.setAccessCodeLifespan(realm.getAccessCodeLifespan());
         rep.setAccessCodeLifespanUserAction(realm.getAccessCodeLifespanUserAction());
+        rep.setBruteForceProtected(realm.isBruteForceProtected());
+        rep.setFailureFactor(realm.getFailureFactor());
+        rep.setWaitIncrementSeconds(realm.getWaitIncrementSeconds());
+        rep.setMaxFailureWaitSeconds(realm.getMaxFailureWaitSeconds());
+        rep.setFailureDecaySeconds(realm.getFailureDecaySeconds());
+        rep.setRefreshTokenLifespan(realm.getRefreshTokenLifespan());
+        rep.setStatelessAccessCodes(realm.isStatelessAccessCodes());
+        rep.setCompressTokens(realm.isCompressTokens());
         rep.setSmtpServer(realm.getSmtpConfig());
         rep.setSocialProviders(realm.getSocialConfig());
         rep.setAccountTheme(realm.getAccountTheme());
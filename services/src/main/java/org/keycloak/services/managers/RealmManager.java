@@ -1,6 +1,8 @@
 package org.keycloak.services.managers;
 
+import net.iharder.Base64;
 import org.jboss.resteasy.logging.Logger;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
@@ -11,8 +13,10 @@ import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SocialLinkModel;
 import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserModel.RequiredAction;
+import org.keycloak.models.utils.Pbkdf2PasswordEncoder;
 import org.keycloak.representations.idm.ApplicationRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.OAuthClientRepresentation;
@@ -23,10 +27,14 @@ import org.keycloak.representations.idm.SocialLinkRepresentation;
 import org.keycloak.representations.idm.SocialMappingRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.keycloak.representations.idm.UserRoleMappingRepresentation;
+import org.keycloak.util.PemUtils;
 
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.ECGenParameterSpec;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +42,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -46,6 +59,11 @@ public class RealmManager {
     protected static final Logger logger = Logger.getLogger(RealmManager.class);
     private static AtomicLong counter = new AtomicLong(1);
 
+    // credentials stored before the next batch is hashed
+    protected static final int IMPORT_BATCH_SIZE = 1000;
+    // fewer passwords than this are hashed on the calling thread
+    protected static final int PARALLEL_IMPORT_THRESHOLD = 16;
+
     public static String generateId() {
         return counter.getAndIncrement() + "-" + System.currentTimeMillis();
     }
@@ -85,14 +103,72 @@ public class RealmManager {
     }
 
     public void generateRealmKeys(RealmModel realm) {
+        generateRealmKeys(realm, Algorithm.RS256);
+    }
+
+    /**
+     * Generate realm keys usable with the given JWS algorithm.  RSA keys are generated for RS256, P-256, P-384 and
+     * P-521 EC keys for ES256, ES384 and ES512.
+     *
+     * @param realm
+     * @param algorithm
+     * @throws IllegalArgumentException for any other algorithm
+     */
+    public void generateRealmKeys(RealmModel realm, Algorithm algorithm) {
         KeyPair keyPair = null;
         try {
-            keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+            switch (algorithm) {
+                case RS256:
+                    keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+                    realm.setPrivateKey(keyPair.getPrivate());
+                    realm.setPublicKey(keyPair.getPublic());
+                    return;
+                case ES256:
+                case ES384:
+                case ES512:
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec(getCurve(algorithm)));
+                    keyPair = generator.generateKeyPair();
+                    // store the standard PKCS8/X.509 encodings the realm adapters decode
+                    realm.setPrivateKeyPem(PemUtils.encodeKey(keyPair.getPrivate()));
+                    realm.setPublicKeyPem(PemUtils.encodeKey(keyPair.getPublic()));
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unsupported realm key algorithm: " + algorithm);
+            }
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String getCurve(Algorithm algorithm) {
+        switch (algorithm) {
+            case ES256:
+                return "secp256r1";
+            case ES384:
+                return "secp384r1";
+            default:
+                return "secp521r1";
         }
-        realm.setPrivateKey(keyPair.getPrivate());
-        realm.setPublicKey(keyPair.getPublic());
+    }
+
+    /**
+     * @throws IllegalArgumentException if realm keys can't be generated for the algorithm
+     */
+    protected Algorithm getKeyAlgorithm(RealmRepresentation rep) {
+        if (rep.getKeyAlgorithm() == null) return Algorithm.RS256;
+        Algorithm algorithm = null;
+        for (Algorithm a : Algorithm.values()) {
+            if (a.name().equals(rep.getKeyAlgorithm())) algorithm = a;
+        }
+        if (algorithm != Algorithm.RS256 && algorithm != Algorithm.ES256 && algorithm != Algorithm.ES384
+                && algorithm != Algorithm.ES512) {
+            throw new IllegalArgumentException("Unsupported realm key algorithm " + rep.getKeyAlgorithm()
+                    + ", expected RS256, ES256, ES384 or ES512");
+        }
+        return algorithm;
     }
 
     public void updateRealm(RealmRepresentation rep, RealmModel realm) {
@@ -111,6 +187,14 @@ public class RealmManager {
         if (rep.getAccessCodeLifespan() != null) realm.setAccessCodeLifespan(rep.getAccessCodeLifespan());
         if (rep.getAccessCodeLifespanUserAction() != null)
             realm.setAccessCodeLifespanUserAction(rep.getAccessCodeLifespanUserAction());
+        if (rep.isBruteForceProtected() != null) realm.setBruteForceProtected(rep.isBruteForceProtected());
+        if (rep.getFailureFactor() != null) realm.setFailureFactor(rep.getFailureFactor());
+        if (rep.getWaitIncrementSeconds() != null) realm.setWaitIncrementSeconds(rep.getWaitIncrementSeconds());
+        if (rep.getMaxFailureWaitSeconds() != null) realm.setMaxFailureWaitSeconds(rep.getMaxFailureWaitSeconds());
+        if (rep.getFailureDecaySeconds() != null) realm.setFailureDecaySeconds(rep.getFailureDecaySeconds());
+        if (rep.getRefreshTokenLifespan() != null) realm.setRefreshTokenLifespan(rep.getRefreshTokenLifespan());
+        if (rep.isStatelessAccessCodes() != null) realm.setStatelessAccessCodes(rep.isStatelessAccessCodes());
+        if (rep.isCompressTokens() != null) realm.setCompressTokens(rep.isCompressTokens());
         if (rep.getTokenLifespan() != null) realm.setTokenLifespan(rep.getTokenLifespan());
         if (rep.getRequiredOAuthClientCredentials() != null) {
             realm.updateRequiredOAuthClientCredentials(rep.getRequiredOAuthClientCredentials());
@@ -139,7 +223,7 @@ public class RealmManager {
         }
 
         if ("GENERATE".equals(rep.getPublicKey())) {
-            generateRealmKeys(realm);
+            generateRealmKeys(realm, getKeyAlgorithm(rep));
         }
     }
 
@@ -164,6 +248,8 @@ public class RealmManager {
     }
 
     public RealmModel importRealm(RealmRepresentation rep, UserModel realmCreator) {
+        // rejected before anything is created
+        getKeyAlgorithm(rep);
         String id = rep.getId();
         if (id == null) {
             id = generateId();
@@ -188,6 +274,22 @@ public class RealmManager {
             newRealm.setAccessCodeLifespanUserAction(rep.getAccessCodeLifespanUserAction());
         else newRealm.setAccessCodeLifespanUserAction(300);
 
+        if (rep.isBruteForceProtected() != null) newRealm.setBruteForceProtected(rep.isBruteForceProtected());
+
+        if (rep.getFailureFactor() != null) newRealm.setFailureFactor(rep.getFailureFactor());
+
+        if (rep.getWaitIncrementSeconds() != null) newRealm.setWaitIncrementSeconds(rep.getWaitIncrementSeconds());
+
+        if (rep.getMaxFailureWaitSeconds() != null) newRealm.setMaxFailureWaitSeconds(rep.getMaxFailureWaitSeconds());
+
+        if (rep.getFailureDecaySeconds() != null) newRealm.setFailureDecaySeconds(rep.getFailureDecaySeconds());
+
+        if (rep.getRefreshTokenLifespan() != null) newRealm.setRefreshTokenLifespan(rep.getRefreshTokenLifespan());
+
+        if (rep.isStatelessAccessCodes() != null) newRealm.setStatelessAccessCodes(rep.isStatelessAccessCodes());
+
+        if (rep.isCompressTokens() != null) newRealm.setCompressTokens(rep.isCompressTokens());
+
         if (rep.isSslNotRequired() != null) newRealm.setSslNotRequired(rep.isSslNotRequired());
         if (rep.isRegistrationAllowed() != null) newRealm.setRegistrationAllowed(rep.isRegistrationAllowed());
         if (rep.isVerifyEmail() != null) newRealm.setVerifyEmail(rep.isVerifyEmail());
@@ -195,7 +297,7 @@ public class RealmManager {
         if (rep.isUpdateProfileOnInitialSocialLogin() != null)
             newRealm.setUpdateProfileOnInitialSocialLogin(rep.isUpdateProfileOnInitialSocialLogin());
         if (rep.getPrivateKey() == null || rep.getPublicKey() == null) {
-            generateRealmKeys(newRealm);
+            generateRealmKeys(newRealm, getKeyAlgorithm(rep));
         } else {
             newRealm.setPrivateKeyPem(rep.getPrivateKey());
             newRealm.setPublicKeyPem(rep.getPublicKey());
@@ -232,10 +334,12 @@ public class RealmManager {
         newRealm.setPasswordPolicy(new PasswordPolicy(rep.getPasswordPolicy()));
 
         if (rep.getUsers() != null) {
+            List<ImportedCredential> credentials = new ArrayList<ImportedCredential>();
             for (UserRepresentation userRep : rep.getUsers()) {
-                UserModel user = createUser(newRealm, userRep);
+                UserModel user = createUser(newRealm, userRep, credentials);
                 userMap.put(user.getLoginName(), user);
             }
+            importCredentials(newRealm, credentials);
         }
 
         if (rep.getApplications() != null) {
@@ -412,6 +516,16 @@ public class RealmManager {
 
 
     public UserModel createUser(RealmModel newRealm, UserRepresentation userRep) {
+        List<ImportedCredential> credentials = new ArrayList<ImportedCredential>();
+        UserModel user = createUser(newRealm, userRep, credentials);
+        importCredentials(newRealm, credentials);
+        return user;
+    }
+
+    /**
+     * Creates a user, but only collects its credentials so they can be stored with those of the other users.
+     */
+    protected UserModel createUser(RealmModel newRealm, UserRepresentation userRep, List<ImportedCredential> credentials) {
         UserModel user = newRealm.addUser(userRep.getUsername());
         user.setEnabled(userRep.isEnabled());
         user.setEmail(userRep.getEmail());
@@ -427,13 +541,85 @@ public class RealmManager {
         }
         if (userRep.getCredentials() != null) {
             for (CredentialRepresentation cred : userRep.getCredentials()) {
-                UserCredentialModel credential = fromRepresentation(cred);
-                newRealm.updateCredential(user, credential);
+                credentials.add(new ImportedCredential(user, cred));
             }
         }
         return user;
     }
 
+    protected static class ImportedCredential {
+        protected final UserModel user;
+        protected final CredentialRepresentation rep;
+        protected UserCredentialValueModel value;
+
+        protected ImportedCredential(UserModel user, CredentialRepresentation rep) {
+            this.user = user;
+            this.rep = rep;
+        }
+    }
+
+    /**
+     * Stores imported credentials a batch at a time.  Passwords that were imported with their hash are stored as they
+     * are, the others are hashed in parallel before the batch is stored.
+     *
+     * @param realm
+     * @param credentials
+     */
+    protected void importCredentials(RealmModel realm, List<ImportedCredential> credentials) {
+        if (credentials.isEmpty()) return;
+
+        // loaded once here, the hashing threads mustn't touch the model
+        realm.getPasswordPolicy();
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = null;
+        if (threads > 1 && credentials.size() >= PARALLEL_IMPORT_THRESHOLD) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            for (int start = 0; start < credentials.size(); start += IMPORT_BATCH_SIZE) {
+                List<ImportedCredential> batch = credentials.subList(start, Math.min(start + IMPORT_BATCH_SIZE, credentials.size()));
+                hashCredentials(realm, batch, executor);
+                for (ImportedCredential credential : batch) {
+                    realm.updateCredentialDirectly(credential.user, credential.value);
+                }
+            }
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+    }
+
+    protected void hashCredentials(final RealmModel realm, List<ImportedCredential> batch, ExecutorService executor) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final ImportedCredential credential : batch) {
+            if (credential.rep.getHashedSaltedValue() != null) {
+                credential.value = fromHashedRepresentation(credential.user.getLoginName(), credential.rep);
+            } else if (executor == null) {
+                credential.value = realm.hashCredential(fromRepresentation(credential.rep));
+            } else {
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        credential.value = realm.hashCredential(fromRepresentation(credential.rep));
+                        return null;
+                    }
+                });
+            }
+        }
+        if (tasks.isEmpty()) return;
+
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     public static UserCredentialModel fromRepresentation(CredentialRepresentation cred) {
         UserCredentialModel credential = new UserCredentialModel();
         credential.setType(cred.getType());
@@ -441,6 +627,50 @@ public class RealmManager {
         return credential;
     }
 
+    /**
+     * Only passwords can be imported hashed, with a salt and hashing parameters that can be used to verify them.
+     *
+     * @param username the user the credential is imported for, to report an invalid credential
+     * @param cred a credential with its hashed salted value
+     * @return
+     * @throws IllegalArgumentException if the credential can't be imported
+     */
+    public static UserCredentialValueModel fromHashedRepresentation(String username, CredentialRepresentation cred) {
+        if (!CredentialRepresentation.PASSWORD.equals(cred.getType())) {
+            throw invalidHashedCredential("Unsupported type", username, cred, null);
+        }
+        UserCredentialValueModel credential = new UserCredentialValueModel();
+        credential.setType(cred.getType());
+        credential.setValue(cred.getHashedSaltedValue());
+        credential.setDevice(cred.getDevice());
+        if (cred.getSalt() == null) {
+            throw invalidHashedCredential("Missing salt", username, cred, null);
+        }
+        byte[] salt;
+        try {
+            salt = Base64.decode(cred.getSalt());
+        } catch (IOException e) {
+            throw invalidHashedCredential("Invalid salt", username, cred, e);
+        } catch (IllegalArgumentException e) {
+            throw invalidHashedCredential("Invalid salt", username, cred, e);
+        }
+        if (salt == null || salt.length == 0) throw invalidHashedCredential("Invalid salt", username, cred, null);
+        credential.setSalt(salt);
+        credential.setAlgorithm(cred.getAlgorithm() != null ? cred.getAlgorithm() : Pbkdf2PasswordEncoder.PBKDF2_ALGORITHM);
+        credential.setHashIterations(cred.getHashIterations() != null ? cred.getHashIterations() : Pbkdf2PasswordEncoder.DEFAULT_ITERATIONS);
+        credential.setKeySize(cred.getKeySize() != null ? cred.getKeySize() : Pbkdf2PasswordEncoder.DEFAULT_KEY_SIZE);
+        try {
+            Pbkdf2PasswordEncoder.checkParameters(credential.getAlgorithm(), credential.getHashIterations(), credential.getKeySize());
+        } catch (IllegalArgumentException e) {
+            throw invalidHashedCredential(e.getMessage(), username, cred, e);
+        }
+        return credential;
+    }
+
+    private static IllegalArgumentException invalidHashedCredential(String problem, String username, CredentialRepresentation cred, Exception cause) {
+        return new IllegalArgumentException(problem + " for hashed " + cred.getType() + " credential of user " + username, cause);
+    }
+
     /**
      * Query users based on a search string:
      * <p/>
@@ -1,23 +1,40 @@
 package org.keycloak.services.managers;
 
 import org.jboss.resteasy.logging.Logger;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.HMACProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.RealmModel;
-import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.RoleClosureCache;
+import org.keycloak.models.utils.RoleClosureCache.RealmRoles;
+import org.keycloak.models.utils.RoleClosureCache.RoleInfo;
+import org.keycloak.representations.RefreshToken;
 import org.keycloak.representations.SkeletonKeyScope;
 import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.services.managers.AccessCodeStore.SingleUse;
+import org.keycloak.services.managers.AccessCodeStore.Use;
 import org.keycloak.util.Base64Url;
 import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenSerialization;
 
-import javax.ws.rs.core.MultivaluedMap;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.ServiceUnavailableException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -29,18 +46,153 @@ import java.util.concurrent.ConcurrentHashMap;
 public class TokenManager {
     protected static final Logger logger = Logger.getLogger(TokenManager.class);
 
-    protected Map<String, AccessCodeEntry> accessCodeMap = new ConcurrentHashMap<String, AccessCodeEntry>();
+    protected static final String ACCESS_CODE_KEY_LABEL = "keycloak-access-code";
+    protected static final String ACCESS_CODE_ENCRYPTION_KEY_LABEL = "keycloak-access-code-encryption";
+    protected static final String ACCESS_CODE_SEALING_KEY_LABEL = "keycloak-access-code-sealing";
+    protected static final String REFRESH_TOKEN_KEY_LABEL = "keycloak-refresh-token";
+    protected static final String IDENTITY_COOKIE_KEY_LABEL = "keycloak-identity-cookie";
+
+    protected static final TokenSizeHistogram tokenSizes = new TokenSizeHistogram();
+    protected static final ConcurrentHashMap<String, TokenSizeHistogram> realmTokenSizes = new ConcurrentHashMap<String, TokenSizeHistogram>();
+
+    /**
+     * Seconds a client should wait before retrying when no more access codes can be created, or no more used codes
+     * or refresh tokens can be recorded.
+     */
+    protected static final long ACCESS_CODE_RETRY_AFTER = 10;
+
+    protected volatile AccessCodeStore accessCodeStore;
+    protected static final Map<String, AccessCodeKey> accessCodeKeys = new ConcurrentHashMap<String, AccessCodeKey>();
+    protected RoleClosureCache roleClosures = RoleClosureCache.getInstance();
+
+    /**
+     * RSA signed access codes issued before codes were switched to HMAC are accepted until this time plus the
+     * realm's access code lifespan.
+     */
+    protected long legacyAccessCodesIssuedUntil = System.currentTimeMillis() / 1000;
+
+    protected static class AccessCodeKey {
+        protected final String privateKeyPem;
+        protected final SecretKey key;
+        protected final SecretKey encryptionKey;
+        protected final SecretKey sealingKey;
+        protected final SecretKey refreshKey;
+        protected final SecretKey identityCookieKey;
+
+        protected AccessCodeKey(String privateKeyPem, SecretKey key, SecretKey encryptionKey, SecretKey sealingKey,
+                                SecretKey refreshKey, SecretKey identityCookieKey) {
+            this.privateKeyPem = privateKeyPem;
+            this.key = key;
+            this.encryptionKey = encryptionKey;
+            this.sealingKey = sealingKey;
+            this.refreshKey = refreshKey;
+            this.identityCookieKey = identityCookieKey;
+        }
+    }
+
+    /**
+     * The access code store is loaded with {@link AccessCodeStoreLoader} the first time it is needed.
+     */
+    public TokenManager() {
+    }
+
+    public TokenManager(AccessCodeStore accessCodeStore) {
+        this.accessCodeStore = accessCodeStore;
+    }
+
+    public AccessCodeStore getAccessCodeStore() {
+        AccessCodeStore store = accessCodeStore;
+        if (store == null) {
+            synchronized (this) {
+                store = accessCodeStore;
+                if (store == null) accessCodeStore = store = AccessCodeStoreLoader.load();
+            }
+        }
+        return store;
+    }
 
     public void clearAccessCodes() {
-        accessCodeMap.clear();
+        getAccessCodeStore().clear();
+    }
+
+    public RoleClosureCache getRoleClosures() {
+        return roleClosures;
     }
 
-    public AccessCodeEntry getAccessCode(String key) {
-        return accessCodeMap.get(key);
+    /**
+     * @param realm
+     * @param key the key returned by {@link #verifyAccessCode(RealmModel, String)} or {@link AccessCodeEntry#getKey()}
+     * @return the entry, or null if there is none
+     */
+    public AccessCodeEntry getAccessCode(RealmModel realm, String key) {
+        if (AccessCodeSealer.isSealed(key)) return unsealAccessCode(realm, key);
+        return getAccessCodeStore().get(key);
     }
 
-    public AccessCodeEntry pullAccessCode(String key) {
-        return accessCodeMap.remove(key);
+    /**
+     * Like {@link #getAccessCode(RealmModel, String)}, but the code can't be used again afterwards.
+     *
+     * @param realm
+     * @param key
+     * @return the entry, or null if there is none or it has already been pulled
+     */
+    public AccessCodeEntry pullAccessCode(RealmModel realm, String key) {
+        if (!AccessCodeSealer.isSealed(key)) return getAccessCodeStore().remove(key);
+
+        AccessCodeEntry entry = unsealAccessCode(realm, key);
+        if (entry == null) return null;
+        long until = entry.getExpiration() + getMaxAccessCodeLifespan(realm);
+        if (getAccessCodeStore().markUsed(SingleUse.ACCESS_CODE, entry.getId(), until) != Use.FIRST) return null;
+        UserModel client = realm.getUser(entry.getClientLoginName());
+        UserModel user = entry.getUser(realm);
+        if (client == null || user == null) return null;
+        createToken(entry, realm, client, user);
+        return entry;
+    }
+
+    /**
+     * Writes back changes made to an access code entry after it was created or looked up.  A self-contained code
+     * is sealed again with a new id, so {@link AccessCodeEntry#getCode()} changes, and the code it replaces is marked
+     * as used.
+     *
+     * @param realm
+     * @param accessCode
+     * @return false if the self-contained code has been used in the meantime.  It isn't sealed again then, and the code
+     * of the entry stays the used one, which won't be accepted anymore.
+     */
+    public boolean updateAccessCode(RealmModel realm, AccessCodeEntry accessCode) {
+        if (!accessCode.isSelfContained()) {
+            getAccessCodeStore().update(accessCode);
+            return true;
+        }
+        // the expiration of the code being replaced may already have been changed, this covers any expiration it had
+        long until = System.currentTimeMillis() / 1000 + 2 * getMaxAccessCodeLifespan(realm);
+        Use use = getAccessCodeStore().markUsed(SingleUse.ACCESS_CODE, accessCode.getId(), until);
+        if (use == Use.UNRECORDED) {
+            logger.warn("Can't record used access code, rejecting it: " + getAccessCodeStore());
+            throw new ServiceUnavailableException(ACCESS_CODE_RETRY_AFTER);
+        }
+        if (use == Use.REPEATED) return false;
+        accessCode.id = AccessCodeEntry.generateId();
+        AccessCodeKey keys = getAccessCodeKeys(realm);
+        accessCode.setCode(AccessCodeSealer.seal(accessCode, keys.encryptionKey, keys.sealingKey));
+        return true;
+    }
+
+    /**
+     * Codes that expired so long ago that the replay cache may have forgotten them are not accepted at all.
+     */
+    protected AccessCodeEntry unsealAccessCode(RealmModel realm, String code) {
+        AccessCodeKey keys = getAccessCodeKeys(realm);
+        AccessCodeEntry entry = AccessCodeSealer.unseal(code, keys.encryptionKey, keys.sealingKey);
+        if (entry == null || !realm.getId().equals(entry.getRealmId())) return null;
+        if (getAccessCodeStore().isUsed(SingleUse.ACCESS_CODE, entry.getId())) return null;
+        if (entry.isExpired(System.currentTimeMillis() / 1000 - getMaxAccessCodeLifespan(realm))) return null;
+        return entry;
+    }
+
+    protected long getMaxAccessCodeLifespan(RealmModel realm) {
+        return Math.max(realm.getAccessCodeLifespan(), realm.getAccessCodeLifespanUserAction());
     }
 
     protected boolean desiresScope(SkeletonKeyScope scope, String key, String roleName) {
@@ -60,74 +212,179 @@ public class TokenManager {
         return scope == null || scope.isEmpty();
     }
 
-    public static void applyScope(RoleModel role, RoleModel scope, Set<RoleModel> visited, Set<RoleModel> requested) {
-        if (visited.contains(scope)) return;
-        visited.add(scope);
-        if (role.hasRole(scope)) {
-            requested.add(scope);
-            return;
+    /**
+     * Walks down from each scope role and requests the first role on every path that the user has.  Roles further
+     * down are in the closure of the requested role, so they end up in the token anyway.
+     *
+     * @param effective every role the user has, including composites
+     * @param scopes
+     * @return
+     */
+    public static BitSet applyScope(BitSet effective, List<RoleInfo> scopes) {
+        BitSet requested = new BitSet();
+        BitSet visited = new BitSet();
+        List<RoleInfo> pending = new ArrayList<RoleInfo>(scopes);
+        while (!pending.isEmpty()) {
+            RoleInfo scope = pending.remove(pending.size() - 1);
+            if (visited.get(scope.getIndex())) continue;
+            visited.set(scope.getIndex());
+            if (effective.get(scope.getIndex())) {
+                requested.set(scope.getIndex());
+            } else if (effective.intersects(scope.getClosure())) {
+                pending.addAll(scope.getComposites());
+            }
         }
-        if (!scope.isComposite()) return;
+        return requested;
+    }
 
-        for (RoleModel contained : scope.getComposites()) {
-            applyScope(role, contained, visited, requested);
+    public AccessCodeEntry createAccessCode(String scopeParam, String state, String redirect, RealmModel realm, UserModel client, UserModel user) {
+        AccessCodeEntry code = new AccessCodeEntry();
+        requestRoles(code, scopeParam, realm, client, user);
+        createToken(code, realm, client, user);
+        code.setRealm(realm);
+        code.setExpiration((System.currentTimeMillis() / 1000) + realm.getAccessCodeLifespan());
+        code.setClient(client);
+        code.setUser(user);
+        code.setState(state);
+        code.setRedirectUri(redirect);
+        code.setScope(scopeParam);
+        if (realm.isStatelessAccessCodes()) {
+            code.selfContained = true;
+            AccessCodeKey keys = getAccessCodeKeys(realm);
+            code.setCode(AccessCodeSealer.seal(code, keys.encryptionKey, keys.sealingKey));
+            return code;
         }
+        String accessCode = null;
+        try {
+            accessCode = new JWSBuilder().content(code.getId().getBytes("UTF-8")).hmac256(getAccessCodeKey(realm));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        code.setCode(accessCode);
+        if (!getAccessCodeStore().put(code)) {
+            logger.warn("Access code store is full, rejecting login: " + getAccessCodeStore());
+            throw new ServiceUnavailableException(ACCESS_CODE_RETRY_AFTER);
+        }
+        return code;
     }
 
-
-
-    public AccessCodeEntry createAccessCode(String scopeParam, String state, String redirect, RealmModel realm, UserModel client, UserModel user) {
+    /**
+     * Creates a token for the client with the roles the user currently has within the client's scope, without an
+     * access code.
+     *
+     * @param scopeParam
+     * @param realm
+     * @param client
+     * @param user
+     * @return
+     */
+    public SkeletonKeyToken createClientToken(String scopeParam, RealmModel realm, UserModel client, UserModel user) {
         AccessCodeEntry code = new AccessCodeEntry();
+        requestRoles(code, scopeParam, realm, client, user);
+        createToken(code, realm, client, user);
+        return code.getToken();
+    }
+
+    protected void requestRoles(AccessCodeEntry code, String scopeParam, RealmModel realm, UserModel client, UserModel user) {
         SkeletonKeyScope scopeMap = null;
         if (scopeParam != null) scopeMap = decodeScope(scopeParam);
-        List<RoleModel> realmRolesRequested = code.getRealmRolesRequested();
-        MultivaluedMap<String, RoleModel> resourceRolesRequested = code.getResourceRolesRequested();
-
+        RealmRoles realmRoles = roleClosures.getRealmRoles(realm);
 
-        Set<RoleModel> roleMappings = realm.getRoleMappings(user);
-        Set<RoleModel> scopeMappings = realm.getScopeMappings(client);
+        BitSet effective = realmRoles.closureOf(realmRoles.getRoles(realm.getRoleMappings(user)));
+        List<RoleInfo> scopeMappings = realmRoles.getRoles(realm.getScopeMappings(client));
         ApplicationModel clientApp = realm.getApplicationByName(client.getLoginName());
-        Set<RoleModel> clientAppRoles = clientApp == null ? null : clientApp.getRoles();
-        if (clientAppRoles != null) scopeMappings.addAll(clientAppRoles);
+        if (clientApp != null) scopeMappings.addAll(realmRoles.getRoles(clientApp.getRoles()));
 
-        Set<RoleModel> requestedRoles = new HashSet<RoleModel>();
+        BitSet requestedRoles = applyScope(effective, scopeMappings);
 
-        for (RoleModel role : roleMappings) {
-            if (clientApp != null && role.getContainer().equals(clientApp)) requestedRoles.add(role);
-            for (RoleModel desiredRole : scopeMappings) {
-                Set<RoleModel> visited = new HashSet<RoleModel>();
-                applyScope(role, desiredRole, visited, requestedRoles);
+        for (RoleInfo role : realmRoles.fromBits(requestedRoles)) {
+            if (role.isRealmRole()) {
+                if (desiresScope(scopeMap, "realm", role.getName())) code.addRealmRoleRequested(role.getId());
+            } else if (desiresScope(scopeMap, role.getApplication(), role.getName())) {
+                code.addResourceRoleRequested(role.getApplication(), role.getId());
             }
         }
+    }
 
-        for (RoleModel role : requestedRoles) {
-            if (role.getContainer() instanceof RealmModel && desiresScope(scopeMap, "realm", role.getName())) {
-                realmRolesRequested.add(role);
-            } else if (role.getContainer() instanceof ApplicationModel) {
-                ApplicationModel app = (ApplicationModel)role.getContainer();
-                if (desiresScope(scopeMap, app.getName(), role.getName())) {
-                    resourceRolesRequested.add(app.getName(), role);
-
-                }
+    /**
+     * Verifies the signature of an access code.
+     *
+     * @param realm
+     * @param code
+     * @return the key to look the access code up with, or null if the code could not be verified.  For stored codes
+     * this is the id of the entry, self-contained codes are their own key.
+     */
+    public String verifyAccessCode(RealmModel realm, String code) {
+        if (code == null) return null;
+        if (AccessCodeSealer.isSealed(code)) {
+            AccessCodeKey keys = getAccessCodeKeys(realm);
+            return AccessCodeSealer.unseal(code, keys.encryptionKey, keys.sealingKey) != null ? code : null;
+        }
+        boolean verified = false;
+        JWSInput input = null;
+        try {
+            input = new JWSInput(code);
+            Algorithm algorithm = input.getHeader().getAlgorithm();
+            if (algorithm == Algorithm.HS256) {
+                verified = HMACProvider.verify(input, getAccessCodeKey(realm));
+            } else if (algorithm == Algorithm.RS256 && isLegacyAccessCodeAccepted(realm)) {
+                verified = RSAProvider.verify(input, realm.getPublicKey());
             }
+        } catch (Exception e) {
+            logger.debug("Failed to verify access code signature", e);
         }
+        if (!verified) return null;
+        return input.readContentAsString();
+    }
+
+    protected boolean isLegacyAccessCodeAccepted(RealmModel realm) {
+        return System.currentTimeMillis() / 1000 < legacyAccessCodesIssuedUntil + getMaxAccessCodeLifespan(realm);
+    }
+
+    /**
+     * Access codes are only handles into the access code store, so rather than RSA signing them they are MAC'd with
+     * a key derived from the realm's private key.  Every node derives the same key for a realm and the key changes
+     * whenever the realm keys are regenerated.  Self-contained access codes are encrypted and MAC'd with two more
+     * keys derived the same way, refresh tokens are MAC'd with a fourth and identity cookies with a fifth.
+     *
+     * @param realm
+     * @return
+     */
+    protected SecretKey getAccessCodeKey(RealmModel realm) {
+        return getAccessCodeKeys(realm).key;
+    }
+
+    /**
+     * Identity cookies are only ever read by the server that set them, so they are MAC'd instead of RSA signed.
+     *
+     * @param realm
+     * @return
+     */
+    public static SecretKey getIdentityCookieKey(RealmModel realm) {
+        return getAccessCodeKeys(realm).identityCookieKey;
+    }
+
+    protected static AccessCodeKey getAccessCodeKeys(RealmModel realm) {
+        String pem = realm.getPrivateKeyPem();
+        AccessCodeKey codeKey = accessCodeKeys.get(realm.getId());
+        if (codeKey != null && codeKey.privateKeyPem.equals(pem)) return codeKey;
 
-        createToken(code, realm, client, user);
-        code.setRealm(realm);
-        code.setExpiration((System.currentTimeMillis() / 1000) + realm.getAccessCodeLifespan());
-        code.setClient(client);
-        code.setUser(user);
-        code.setState(state);
-        code.setRedirectUri(redirect);
-        accessCodeMap.put(code.getId(), code);
-        String accessCode = null;
         try {
-            accessCode = new JWSBuilder().content(code.getId().getBytes("UTF-8")).rsa256(realm.getPrivateKey());
-        } catch (UnsupportedEncodingException e) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(realm.getPrivateKey().getEncoded(), "HmacSHA256"));
+            byte[] derived = mac.doFinal(ACCESS_CODE_KEY_LABEL.getBytes("UTF-8"));
+            byte[] encryption = mac.doFinal(ACCESS_CODE_ENCRYPTION_KEY_LABEL.getBytes("UTF-8"));
+            byte[] sealing = mac.doFinal(ACCESS_CODE_SEALING_KEY_LABEL.getBytes("UTF-8"));
+            byte[] refresh = mac.doFinal(REFRESH_TOKEN_KEY_LABEL.getBytes("UTF-8"));
+            byte[] identityCookie = mac.doFinal(IDENTITY_COOKIE_KEY_LABEL.getBytes("UTF-8"));
+            codeKey = new AccessCodeKey(pem, new SecretKeySpec(derived, "HmacSHA256"),
+                    new SecretKeySpec(encryption, 0, 16, "AES"), new SecretKeySpec(sealing, "HmacSHA256"),
+                    new SecretKeySpec(refresh, "HmacSHA256"), new SecretKeySpec(identityCookie, "HmacSHA256"));
+        } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        code.setCode(accessCode);
-        return code;
+        accessCodeKeys.put(realm.getId(), codeKey);
+        return codeKey;
     }
 
     protected SkeletonKeyToken initToken(RealmModel realm, UserModel client, UserModel user) {
@@ -147,51 +404,58 @@ public class TokenManager {
         return token;
     }
 
-    protected void addComposites(SkeletonKeyToken token, RoleModel role) {
-        SkeletonKeyToken.Access access = null;
-        if (role.getContainer() instanceof RealmModel) {
-            access = token.getRealmAccess();
-            if (token.getRealmAccess() == null) {
-                access = new SkeletonKeyToken.Access();
-                token.setRealmAccess(access);
-            } else if (token.getRealmAccess().getRoles() != null && token.getRealmAccess().isUserInRole(role.getName()))
-                return;
-
-        } else {
-            ApplicationModel app = (ApplicationModel) role.getContainer();
-            access = token.getResourceAccess(app.getName());
-            if (access == null) {
-                access = token.addAccess(app.getName());
-                if (app.isSurrogateAuthRequired()) access.verifyCaller(true);
-            } else if (access.isUserInRole(role.getName())) return;
-
-        }
-        access.addRole(role.getName());
-        if (!role.isComposite()) return;
-
-        for (RoleModel composite : role.getComposites()) {
-            addComposites(token, composite);
+    /**
+     * Adds every role in the set to the token.
+     *
+     * @param token
+     * @param realmRoles
+     * @param roles
+     */
+    protected void addRoles(SkeletonKeyToken token, RealmRoles realmRoles, BitSet roles) {
+        for (RoleInfo contained : realmRoles.fromBits(roles)) {
+            SkeletonKeyToken.Access access = null;
+            if (contained.isRealmRole()) {
+                access = token.getRealmAccess();
+                if (access == null) {
+                    access = new SkeletonKeyToken.Access();
+                    token.setRealmAccess(access);
+                }
+            } else {
+                access = token.getResourceAccess(contained.getApplication());
+                if (access == null) {
+                    access = token.addAccess(contained.getApplication());
+                    if (contained.isSurrogateAuthRequired()) access.verifyCaller(true);
+                }
+            }
+            access.addRole(contained.getName());
         }
-
     }
 
+    /**
+     * Creates the token for the roles requested by the access code.
+     *
+     * @param accessCodeEntry
+     * @param realm
+     * @param client
+     * @param user
+     */
     protected void createToken(AccessCodeEntry accessCodeEntry, RealmModel realm, UserModel client, UserModel user) {
-
+        RealmRoles realmRoles = roleClosures.getRealmRoles(realm);
         SkeletonKeyToken token = initToken(realm, client, user);
+        BitSet roles = new BitSet(realmRoles.size());
 
-        if (accessCodeEntry.getRealmRolesRequested().size() > 0) {
-            for (RoleModel role : accessCodeEntry.getRealmRolesRequested()) {
-                addComposites(token, role);
-            }
+        for (String roleId : accessCodeEntry.realmRolesRequested) {
+            RoleInfo role = realmRoles.getRole(roleId);
+            if (role != null && role.isRealmRole()) roles.or(role.getClosure());
         }
 
-        if (accessCodeEntry.getResourceRolesRequested().size() > 0) {
-            for (List<RoleModel> roles : accessCodeEntry.getResourceRolesRequested().values()) {
-                for (RoleModel role : roles) {
-                    addComposites(token, role);
-                }
+        for (Map.Entry<String, List<String>> entry : accessCodeEntry.resourceRolesRequested.entrySet()) {
+            for (String roleId : entry.getValue()) {
+                RoleInfo role = realmRoles.getRole(roleId);
+                if (role != null && entry.getKey().equals(role.getApplication())) roles.or(role.getClosure());
             }
         }
+        addRoles(token, realmRoles, roles);
         accessCodeEntry.setToken(token);
     }
 
@@ -218,6 +482,19 @@ public class TokenManager {
 
 
     public SkeletonKeyToken createAccessToken(RealmModel realm, UserModel user) {
+        return createAccessToken(realm, user, null);
+    }
+
+    /**
+     * Creates a token with every role of the user.  Tokens with the roles of every application grow with the realm,
+     * so callers that only talk to a few applications can ask for the roles of those only.
+     *
+     * @param realm
+     * @param user
+     * @param applications if not null, only realm roles and roles of these applications are added to the token
+     * @return
+     */
+    public SkeletonKeyToken createAccessToken(RealmModel realm, UserModel user, Collection<String> applications) {
         SkeletonKeyToken token = new SkeletonKeyToken();
         token.id(RealmManager.generateId());
         token.issuedNow();
@@ -226,17 +503,178 @@ public class TokenManager {
         if (realm.getTokenLifespan() > 0) {
             token.expiration((System.currentTimeMillis() / 1000) + realm.getTokenLifespan());
         }
-        for (RoleModel role : realm.getRoleMappings(user)) {
-            addComposites(token, role);
+        RealmRoles realmRoles = roleClosures.getRealmRoles(realm);
+        BitSet roles = realmRoles.closureOf(realmRoles.getRoles(realm.getRoleMappings(user)));
+        if (applications != null) restrictToApplications(realmRoles, roles, new HashSet<String>(applications));
+        addRoles(token, realmRoles, roles);
+        return token;
+    }
+
+    protected static void restrictToApplications(RealmRoles realmRoles, BitSet roles, Set<String> applications) {
+        for (int i = roles.nextSetBit(0); i >= 0; i = roles.nextSetBit(i + 1)) {
+            RoleInfo role = realmRoles.getRole(i);
+            if (!role.isRealmRole() && !applications.contains(role.getApplication())) roles.clear(i);
         }
+    }
+
+    /**
+     * Refresh tokens are MAC'd with a key derived from the realm's private key, like access codes, so exchanging
+     * one costs a MAC and a role lookup instead of verifying the user's credentials again.
+     *
+     * @param realm
+     * @param user
+     * @param client null unless the token was issued to a client
+     * @param grant one of the RefreshToken.GRANT_* constants
+     * @param scopeParam
+     * @return the encoded refresh token, or null if the realm doesn't issue refresh tokens
+     */
+    public String createRefreshToken(RealmModel realm, UserModel user, UserModel client, String grant, String scopeParam) {
+        return createRefreshToken(realm, user, client, grant, scopeParam, null);
+    }
+
+    /**
+     * @param applications applications the access token was restricted to, see
+     * {@link #createAccessToken(RealmModel, UserModel, Collection)}
+     */
+    public String createRefreshToken(RealmModel realm, UserModel user, UserModel client, String grant, String scopeParam,
+                                     Collection<String> applications) {
+        if (realm.getRefreshTokenLifespan() <= 0) return null;
+        RefreshToken token = new RefreshToken();
+        // recorded in the access code store once used, which may be shared with other nodes
+        token.id(UUID.randomUUID().toString());
+        token.issuedNow();
+        token.principal(user.getLoginName());
+        token.audience(realm.getName());
+        token.type(RefreshToken.TYPE);
+        token.expiration(token.getIssuedAt() + realm.getRefreshTokenLifespan());
+        if (client != null) token.issuedFor(client.getLoginName());
+        token.grant(grant);
+        token.scope(scopeParam);
+        if (applications != null) token.applications(new ArrayList<String>(applications));
+        try {
+            return new JWSBuilder().content(TokenSerialization.writeValueAsBytes(token)).hmac256(getAccessCodeKeys(realm).refreshKey);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Verifies a refresh token and uses it up, see {@link #useRefreshToken(RealmModel, RefreshToken)}.
+     *
+     * @param realm
+     * @param encoded
+     * @return the token, or null if it is invalid, expired or was already exchanged
+     */
+    public RefreshToken useRefreshToken(RealmModel realm, String encoded) {
+        RefreshToken token = verifyRefreshToken(realm, encoded);
+        return token != null && useRefreshToken(realm, token) ? token : null;
+    }
+
+    /**
+     * Verifies a refresh token without using it up.
+     *
+     * @param realm
+     * @param encoded
+     * @return the token, or null if it is invalid or expired
+     */
+    public RefreshToken verifyRefreshToken(RealmModel realm, String encoded) {
+        if (encoded == null) return null;
+        RefreshToken token = null;
+        try {
+            JWSInput input = new JWSInput(encoded);
+            if (input.getHeader().getAlgorithm() != Algorithm.HS256) return null;
+            if (!HMACProvider.verify(input, getAccessCodeKeys(realm).refreshKey)) return null;
+            token = input.readJsonContent(RefreshToken.class);
+        } catch (Exception e) {
+            logger.debug("Failed to verify refresh token", e);
+            return null;
+        }
+        if (!RefreshToken.TYPE.equals(token.getType()) || !realm.getName().equals(token.getAudience())) return null;
+        if (token.getId() == null || token.getSubject() == null || !token.isActive() || token.getExpiration() == 0) return null;
         return token;
     }
 
+    /**
+     * Uses up a verified refresh token.  Refresh tokens rotate: every token can be exchanged once, for a new access
+     * token and a new refresh token.  Used tokens are recorded in the access code store, so they can't be exchanged
+     * again on nodes that share the store.  With the default in-memory store that only holds for the node that
+     * exchanged the token.
+     * <p/>
+     * A used token is remembered until it expires, and expired ones are dropped to make room.  If the store still
+     * can't record any more used tokens, the refresh is refused until it can, like a used access code.
+     *
+     * @param realm
+     * @param token
+     * @return false if the token was already exchanged
+     * @throws ServiceUnavailableException if the use can't be recorded
+     */
+    public boolean useRefreshToken(RealmModel realm, RefreshToken token) {
+        Use use = getAccessCodeStore().markUsed(SingleUse.REFRESH_TOKEN, token.getId(), token.getExpiration());
+        if (use == Use.UNRECORDED) {
+            logger.warn("Can't record used refresh token, rejecting it: " + getAccessCodeStore());
+            throw new ServiceUnavailableException(ACCESS_CODE_RETRY_AFTER);
+        }
+        return use == Use.FIRST;
+    }
+
 
     public String encodeToken(RealmModel realm, Object token) {
-        String encodedToken = new JWSBuilder()
-                .jsonContent(token)
-                .rsa256(realm.getPrivateKey());
+        return encodeToken(realm, token, realm.isCompressTokens());
+    }
+
+    /**
+     * Tokens handed to browser adapters in the code flow are never compressed, keycloak.js can't inflate them.
+     *
+     * @param realm
+     * @param token
+     * @param compress whether to compress the claims, regardless of the realm's setting
+     * @return
+     */
+    public String encodeToken(RealmModel realm, Object token, boolean compress) {
+        byte[] claims;
+        try {
+            claims = TokenSerialization.writeValueAsBytes(token);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        JWSBuilder builder = new JWSBuilder();
+        if (compress) builder.compressed();
+        String encodedToken = builder
+                .content(claims)
+                .sign(realm.getPrivateKey());
+
+        int contentStart = encodedToken.indexOf('.') + 1;
+        int encodedContentLength = encodedToken.indexOf('.', contentStart) - contentStart;
+        tokenSizes.record(encodedToken.length(), claims.length, encodedContentLength * 3 / 4, compress);
+        getTokenSizes(realm.getId()).record(encodedToken.length(), claims.length, encodedContentLength * 3 / 4, compress);
         return encodedToken;
     }
+
+    /**
+     * Sizes of all tokens encoded by {@link #encodeToken(RealmModel, Object)} since startup.
+     *
+     * @return
+     */
+    public static TokenSizeHistogram getTokenSizes() {
+        return tokenSizes;
+    }
+
+    /**
+     * Sizes of the tokens of a single realm encoded since startup.
+     *
+     * @param realmId
+     * @return
+     */
+    public static TokenSizeHistogram getTokenSizes(String realmId) {
+        TokenSizeHistogram sizes = realmTokenSizes.get(realmId);
+        if (sizes == null) {
+            realmTokenSizes.putIfAbsent(realmId, new TokenSizeHistogram());
+            sizes = realmTokenSizes.get(realmId);
+        }
+        return sizes;
+    }
+
+    public static void removeTokenSizes(String realmId) {
+        realmTokenSizes.remove(realmId);
+    }
 }
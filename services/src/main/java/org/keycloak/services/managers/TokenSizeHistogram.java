@@ -0,0 +1,129 @@
+package org.keycloak.services.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Power-of-two histogram of encoded token sizes, split by whether the claims were compressed.  Also keeps the total
+ * number of claim bytes before and after compression so the savings of "zip":"DEF" can be read off directly, and the
+ * total length of all tokens for their average size.
+ */
+public class TokenSizeHistogram {
+    /**
+     * Bucket i counts tokens of at most 2^(i + MIN_SHIFT) characters; the last bucket takes everything larger.
+     */
+    public static final int MIN_SHIFT = 7;
+    public static final int BUCKETS = 10;
+
+    protected final AtomicLongArray plain = new AtomicLongArray(BUCKETS);
+    protected final AtomicLongArray compressed = new AtomicLongArray(BUCKETS);
+    protected final AtomicLong claimBytes = new AtomicLong();
+    protected final AtomicLong compressedClaimBytes = new AtomicLong();
+    protected final AtomicLong count = new AtomicLong();
+    protected final AtomicLong totalLength = new AtomicLong();
+
+    /**
+     * @param tokenLength length of the encoded token
+     * @param claimLength size of the serialized claims
+     * @param wireLength size of the claims as signed, i.e. after compression if it was applied
+     * @param isCompressed
+     */
+    public void record(int tokenLength, int claimLength, int wireLength, boolean isCompressed) {
+        AtomicLongArray buckets = isCompressed ? compressed : plain;
+        buckets.incrementAndGet(bucketFor(tokenLength));
+        count.incrementAndGet();
+        totalLength.addAndGet(tokenLength);
+        if (isCompressed) {
+            claimBytes.addAndGet(claimLength);
+            compressedClaimBytes.addAndGet(wireLength);
+        }
+    }
+
+    public static int bucketFor(int length) {
+        int bucket = 0;
+        int limit = 1 << MIN_SHIFT;
+        while (length > limit && bucket < BUCKETS - 1) {
+            limit <<= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public static int bucketLimit(int bucket) {
+        return bucket == BUCKETS - 1 ? Integer.MAX_VALUE : 1 << (bucket + MIN_SHIFT);
+    }
+
+    public long[] getPlainCounts() {
+        return toArray(plain);
+    }
+
+    public long[] getCompressedCounts() {
+        return toArray(compressed);
+    }
+
+    /**
+     * @return serialized claim bytes of compressed tokens before compression
+     */
+    public long getClaimBytes() {
+        return claimBytes.get();
+    }
+
+    /**
+     * @return serialized claim bytes of compressed tokens after compression
+     */
+    public long getCompressedClaimBytes() {
+        return compressedClaimBytes.get();
+    }
+
+    /**
+     * @return number of tokens recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return average length of the encoded tokens, or 0 if none were recorded
+     */
+    public long getAverageLength() {
+        long tokens = count.get();
+        return tokens == 0 ? 0 : totalLength.get() / tokens;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            plain.set(i, 0);
+            compressed.set(i, 0);
+        }
+        claimBytes.set(0);
+        compressedClaimBytes.set(0);
+        count.set(0);
+        totalLength.set(0);
+    }
+
+    protected static long[] toArray(AtomicLongArray array) {
+        long[] result = new long[array.length()];
+        for (int i = 0; i < result.length; i++) result[i] = array.get(i);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("token sizes (plain/compressed):");
+        for (int i = 0; i < BUCKETS; i++) {
+            long p = plain.get(i);
+            long c = compressed.get(i);
+            if (p == 0 && c == 0) continue;
+            builder.append(' ');
+            if (i == BUCKETS - 1) builder.append('>').append(bucketLimit(i - 1));
+            else builder.append("<=").append(bucketLimit(i));
+            builder.append('=').append(p).append('/').append(c);
+        }
+        builder.append(", average ").append(getAverageLength());
+        long raw = claimBytes.get();
+        if (raw > 0) {
+            builder.append(", claims compressed ").append(raw).append(" -> ").append(compressedClaimBytes.get()).append(" bytes");
+        }
+        return builder.toString();
+    }
+}
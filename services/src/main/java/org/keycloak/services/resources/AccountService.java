@@ -28,8 +28,6 @@ import org.keycloak.account.Account;
 import org.keycloak.account.AccountLoader;
 import org.keycloak.account.AccountPages;
 import org.keycloak.jaxrs.JaxrsOAuthClient;
-import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.*;
 import org.keycloak.models.utils.TimeBasedOTP;
 import org.keycloak.representations.SkeletonKeyToken;
@@ -284,19 +282,12 @@ public class AccountService {
             }
             String path = new JaxrsOAuthClient().checkStateCookie(uriInfo, headers);
 
-            JWSInput input = new JWSInput(code);
-            boolean verifiedCode = false;
-            try {
-                verifiedCode = RSAProvider.verify(input, realm.getPublicKey());
-            } catch (Exception ignored) {
-                logger.debug("Failed to verify signature", ignored);
-            }
-            if (!verifiedCode) {
+            String key = tokenManager.verifyAccessCode(realm, code);
+            if (key == null) {
                 logger.debug("unverified access code");
                 throw new BadRequestException();
             }
-            String key = input.readContentAsString();
-            AccessCodeEntry accessCode = tokenManager.pullAccessCode(key);
+            AccessCodeEntry accessCode = tokenManager.pullAccessCode(realm, key);
             if (accessCode == null) {
                 logger.debug("bad access code");
                 throw new BadRequestException();
@@ -309,12 +300,12 @@ public class AccountService {
                 logger.debug("access token expired");
                 throw new BadRequestException();
             }
-            if (!accessCode.getRealm().getId().equals(realm.getId())) {
+            if (!accessCode.getRealmId().equals(realm.getId())) {
                 logger.debug("bad realm");
                 throw new BadRequestException();
 
             }
-            if (!client.getLoginName().equals(accessCode.getClient().getLoginName())) {
+            if (!client.getLoginName().equals(accessCode.getClientLoginName())) {
                 logger.debug("bad client");
                 throw new BadRequestException();
             }
@@ -322,7 +313,7 @@ public class AccountService {
             URI accountUri = Urls.accountBase(uriInfo.getBaseUri()).path("/").build(realm.getName());
             URI redirectUri = path != null ? accountUri.resolve(path) : accountUri;
 
-            NewCookie cookie = authManager.createAccountIdentityCookie(realm, accessCode.getUser(), client, Urls.accountBase(uriInfo.getBaseUri()).build(realm.getName()));
+            NewCookie cookie = authManager.createAccountIdentityCookie(realm, accessCode.getUser(realm), client, Urls.accountBase(uriInfo.getBaseUri()).build(realm.getName()));
             return Response.status(302).cookie(cookie).location(redirectUri).build();
         } finally {
             authManager.expireCookie(AbstractOAuthClient.OAUTH_TOKEN_REQUEST_STATE, uriInfo.getAbsolutePath().getRawPath());
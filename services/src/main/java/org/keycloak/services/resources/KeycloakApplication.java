@@ -47,6 +47,7 @@ public class KeycloakApplication extends Application {
         singletons.add(new AdminService(tokenManager));
         singletons.add(new SocialResource(tokenManager, new SocialRequestManager()));
         classes.add(SkeletonKeyContextResolver.class);
+        classes.add(PasswordHashingRejectedExceptionMapper.class);
         classes.add(QRCodeResource.class);
         classes.add(ThemeResource.class);
 
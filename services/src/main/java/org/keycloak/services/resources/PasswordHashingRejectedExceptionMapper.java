@@ -0,0 +1,30 @@
+package org.keycloak.services.resources;
+
+import org.jboss.resteasy.logging.Logger;
+import org.keycloak.models.utils.PasswordHashingRejectedException;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Turns a saturated password hashing pool into a 503 with a Retry-After header, so clients back off instead of the
+ * request failing with a 500.
+ */
+@Provider
+public class PasswordHashingRejectedExceptionMapper implements ExceptionMapper<PasswordHashingRejectedException> {
+
+    private static final Logger logger = Logger.getLogger(PasswordHashingRejectedExceptionMapper.class);
+
+    @Override
+    public Response toResponse(PasswordHashingRejectedException exception) {
+        logger.warn(exception.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfter())
+                .type(MediaType.TEXT_PLAIN_TYPE)
+                .entity("Server is busy, please try again later")
+                .build();
+    }
+}
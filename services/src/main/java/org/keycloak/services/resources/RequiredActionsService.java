@@ -24,8 +24,6 @@ package org.keycloak.services.resources;
 import org.jboss.resteasy.logging.Logger;
 import org.jboss.resteasy.spi.HttpRequest;
 import org.keycloak.login.LoginForms;
-import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserModel;
@@ -194,7 +192,7 @@ public class RequiredActionsService {
     @GET
     public Response emailVerification() {
         if (uriInfo.getQueryParameters().containsKey("key")) {
-            AccessCodeEntry accessCode = tokenManager.getAccessCode(uriInfo.getQueryParameters().getFirst("key"));
+            AccessCodeEntry accessCode = tokenManager.getAccessCode(realm, uriInfo.getQueryParameters().getFirst("key"));
             if (accessCode == null || accessCode.isExpired()
                     || !accessCode.getRequiredActions().contains(RequiredAction.VERIFY_EMAIL)) {
                 return unauthorized();
@@ -213,7 +211,7 @@ public class RequiredActionsService {
                 return unauthorized();
             }
 
-            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getId(), accessCode.getCode()).setUser(accessCode.getUser())
+            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getKey(), accessCode.getCode()).setUser(getUser(accessCode))
                     .createResponse(RequiredAction.VERIFY_EMAIL);
         }
     }
@@ -222,12 +220,12 @@ public class RequiredActionsService {
     @GET
     public Response passwordReset() {
         if (uriInfo.getQueryParameters().containsKey("key")) {
-            AccessCodeEntry accessCode = tokenManager.getAccessCode(uriInfo.getQueryParameters().getFirst("key"));
+            AccessCodeEntry accessCode = tokenManager.getAccessCode(realm, uriInfo.getQueryParameters().getFirst("key"));
             if (accessCode == null || accessCode.isExpired()
                     || !accessCode.getRequiredActions().contains(RequiredAction.UPDATE_PASSWORD)) {
                 return unauthorized();
             }
-            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getId(), accessCode.getCode()).createResponse(RequiredAction.UPDATE_PASSWORD);
+            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getKey(), accessCode.getCode()).createResponse(RequiredAction.UPDATE_PASSWORD);
         } else {
             return Flows.forms(realm, request, uriInfo).createPasswordReset();
         }
@@ -265,6 +263,7 @@ public class RequiredActionsService {
         AccessCodeEntry accessCode = tokenManager.createAccessCode(scopeParam, state, redirect, realm, client, user);
         accessCode.setRequiredActions(requiredActions);
         accessCode.setExpiration(System.currentTimeMillis() / 1000 + realm.getAccessCodeLifespanUserAction());
+        tokenManager.updateAccessCode(realm, accessCode);
 
         try {
             new EmailSender(realm.getSmtpConfig()).sendPasswordReset(user, realm, accessCode, uriInfo);
@@ -322,22 +321,13 @@ public class RequiredActionsService {
             return null;
         }
 
-        JWSInput input = new JWSInput(code);
-        boolean verifiedCode = false;
-        try {
-            verifiedCode = RSAProvider.verify(input, realm.getPublicKey());
-        } catch (Exception ignored) {
+        String key = tokenManager.verifyAccessCode(realm, code);
+        if (key == null) {
             logger.debug("getAccessCodeEntry code failed verification");
             return null;
         }
 
-        if (!verifiedCode) {
-            logger.debug("getAccessCodeEntry code failed verification2");
-            return null;
-        }
-
-        String key = input.readContentAsString();
-        AccessCodeEntry accessCodeEntry = tokenManager.getAccessCode(key);
+        AccessCodeEntry accessCodeEntry = tokenManager.getAccessCode(realm, key);
         if (accessCodeEntry == null) {
             logger.debug("getAccessCodeEntry access code entry null");
             return null;
@@ -359,7 +349,7 @@ public class RequiredActionsService {
     }
 
     private UserModel getUser(AccessCodeEntry accessCode) {
-        return realm.getUser(accessCode.getUser().getLoginName());
+        return accessCode.getUser(realm);
     }
 
     private Response redirectOauth(UserModel user, AccessCodeEntry accessCode) {
@@ -369,11 +359,13 @@ public class RequiredActionsService {
 
         Set<RequiredAction> requiredActions = user.getRequiredActions();
         if (!requiredActions.isEmpty()) {
-            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getId(), accessCode.getCode()).setUser(user)
+            tokenManager.updateAccessCode(realm, accessCode);
+            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getKey(), accessCode.getCode()).setUser(user)
                     .createResponse(requiredActions.iterator().next());
         } else {
             logger.debug("redirectOauth: redirecting to: {0}", accessCode.getRedirectUri());
             accessCode.setExpiration((System.currentTimeMillis() / 1000) + realm.getAccessCodeLifespan());
+            tokenManager.updateAccessCode(realm, accessCode);
             return Flows.oauth(realm, request, uriInfo, authManager, tokenManager).redirectAccessCode(accessCode,
                     accessCode.getState(), accessCode.getRedirectUri());
         }
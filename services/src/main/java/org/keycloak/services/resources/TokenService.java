@@ -4,9 +4,6 @@ import org.jboss.resteasy.annotations.cache.NoCache;
 import org.jboss.resteasy.logging.Logger;
 import org.jboss.resteasy.spi.HttpRequest;
 import org.jboss.resteasy.spi.HttpResponse;
-import org.keycloak.jose.jws.JWSBuilder;
-import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakTransaction;
@@ -17,6 +14,7 @@ import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserModel.RequiredAction;
 import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.RefreshToken;
 import org.keycloak.representations.SkeletonKeyToken;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.services.managers.AccessCodeEntry;
@@ -47,7 +45,6 @@ import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.Providers;
-import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -112,6 +109,11 @@ public class TokenService {
 
     }
 
+    public static UriBuilder refreshAccessTokenUrl(UriInfo uriInfo) {
+        return tokenServiceBaseUrl(uriInfo).path(TokenService.class, "refreshAccessToken");
+
+    }
+
     public static UriBuilder loginPageUrl(UriInfo uriInfo) {
         return tokenServiceBaseUrl(uriInfo).path(TokenService.class, "loginPage");
     }
@@ -151,10 +153,10 @@ public class TokenService {
             throw new NotAuthorizedException(status);
         }
 
-        tokenManager = new TokenManager();
         SkeletonKeyToken token = authManager.createIdentityToken(realm, username);
         String encoded = tokenManager.encodeToken(realm, token);
         AccessTokenResponse res = accessTokenResponse(token, encoded);
+        res.setRefreshToken(tokenManager.createRefreshToken(realm, user, null, RefreshToken.GRANT_IDENTITY, null));
         return Response.ok(res, MediaType.APPLICATION_JSON_TYPE).build();
     }
 
@@ -184,12 +186,105 @@ public class TokenService {
         if (authManager.authenticateForm(realm, user, form) != AuthenticationStatus.SUCCESS) {
             throw new NotAuthorizedException("Auth failed");
         }
-        SkeletonKeyToken token = tokenManager.createAccessToken(realm, user);
+        // callers may ask for the roles of the applications they use only, rather than of every application
+        List<String> applications = form.get("application");
+        SkeletonKeyToken token = tokenManager.createAccessToken(realm, user, applications);
         String encoded = tokenManager.encodeToken(realm, token);
         AccessTokenResponse res = accessTokenResponse(token, encoded);
+        res.setRefreshToken(tokenManager.createRefreshToken(realm, user, null, RefreshToken.GRANT_ACCESS, null, applications));
         return Response.ok(res, MediaType.APPLICATION_JSON_TYPE).build();
     }
 
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token.  A token issued to a client can only
+     * be exchanged by that client, with its credentials, like the access code it was issued for.  The user and client
+     * must still be enabled and the roles in the new token are looked up again.
+     *
+     * @param form
+     * @return
+     */
+    @Path("refresh")
+    @POST
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response refreshAccessToken(final MultivaluedMap<String, String> form) {
+        if (!checkSsl()) {
+            throw new NotAcceptableException("HTTPS required");
+        }
+
+        if (!realm.isEnabled()) {
+            throw new NotAuthorizedException("Realm not enabled");
+        }
+
+        String encodedRefreshToken = form.getFirst("refresh_token");
+        if (encodedRefreshToken == null) {
+            Map<String, String> error = new HashMap<String, String>();
+            error.put("error", "invalid_request");
+            error.put("error_description", "refresh_token not specified");
+            return Response.status(Response.Status.BAD_REQUEST).entity(error).type("application/json").build();
+        }
+        RefreshToken refreshToken = tokenManager.verifyRefreshToken(realm, encodedRefreshToken);
+        if (refreshToken == null) {
+            Map<String, String> res = new HashMap<String, String>();
+            res.put("error", "invalid_grant");
+            res.put("error_description", "Invalid refresh token");
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
+                    .build();
+        }
+        UserModel user = realm.getUser(refreshToken.getSubject());
+        if (user == null || !user.isEnabled()) {
+            Map<String, String> res = new HashMap<String, String>();
+            res.put("error", "invalid_grant");
+            res.put("error_description", "User not found or not enabled");
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
+                    .build();
+        }
+        UserModel client = null;
+        if (refreshToken.getIssuedFor() != null) {
+            client = realm.getUser(refreshToken.getIssuedFor());
+            if (client == null || !client.isEnabled()) {
+                Map<String, String> res = new HashMap<String, String>();
+                res.put("error", "invalid_client");
+                res.put("error_description", "Client not found or not enabled");
+                return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
+                        .build();
+            }
+            // authenticated before the token is used up, so it can't be burned without the client's credentials
+            if (!client.getLoginName().equals(form.getFirst("client_id"))
+                    || authManager.authenticateClient(realm, client, form) != AuthenticationStatus.SUCCESS) {
+                Map<String, String> res = new HashMap<String, String>();
+                res.put("error", "unauthorized_client");
+                return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
+                        .build();
+            }
+        }
+        if (!tokenManager.useRefreshToken(realm, refreshToken)) {
+            Map<String, String> res = new HashMap<String, String>();
+            res.put("error", "invalid_grant");
+            res.put("error_description", "Invalid refresh token");
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
+                    .build();
+        }
+
+        SkeletonKeyToken token;
+        if (RefreshToken.GRANT_IDENTITY.equals(refreshToken.getGrant())) {
+            token = authManager.createIdentityToken(realm, user.getLoginName());
+        } else if (client != null) {
+            token = tokenManager.createClientToken(refreshToken.getScope(), realm, client, user);
+        } else {
+            token = tokenManager.createAccessToken(realm, user, refreshToken.getApplications());
+        }
+        // tokens of code-flow clients stay uncompressed, like the ones they got for their access code
+        String encoded = tokenManager.encodeToken(realm, token, client == null && realm.isCompressTokens());
+        AccessTokenResponse res = accessTokenResponse(token, encoded);
+        res.setRefreshToken(tokenManager.createRefreshToken(realm, user, client, refreshToken.getGrant(), refreshToken.getScope(),
+                refreshToken.getApplications()));
+        if (client == null) {
+            return Response.ok(res, MediaType.APPLICATION_JSON_TYPE).build();
+        }
+        return Cors.add(request, Response.ok(res)).allowedOrigins(client).allowedMethods("POST").build();
+    }
+
     @Path("auth/request/login")
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
@@ -238,6 +333,8 @@ public class TokenService {
                 return oauth.processAccessCode(scopeParam, state, redirect, client, user);
             case ACCOUNT_DISABLED:
                 return Flows.forms(realm, request, uriInfo).setError(Messages.ACCOUNT_DISABLED).setFormData(formData).createLogin();
+            case ACCOUNT_TEMPORARILY_DISABLED:
+                return Flows.forms(realm, request, uriInfo).setError(Messages.ACCOUNT_TEMPORARILY_DISABLED).setFormData(formData).createLogin();
             case MISSING_TOTP:
                 return Flows.forms(realm, request, uriInfo).setFormData(formData).createLoginTotp();
             default:
@@ -371,29 +468,22 @@ public class TokenService {
             return Response.status(Response.Status.BAD_REQUEST).entity(error).type("application/json").build();
         }
 
-        AuthenticationStatus status = authManager.authenticateForm(realm, client, formData);
+        AuthenticationStatus status = authManager.authenticateClient(realm, client, formData);
         if (status != AuthenticationStatus.SUCCESS) {
             Map<String, String> error = new HashMap<String, String>();
             error.put("error", "unauthorized_client");
             return Response.status(Response.Status.BAD_REQUEST).entity(error).type("application/json").build();
         }
 
-        JWSInput input = new JWSInput(code);
-        boolean verifiedCode = false;
-        try {
-            verifiedCode = RSAProvider.verify(input, realm.getPublicKey());
-        } catch (Exception ignored) {
-            logger.debug("Failed to verify signature", ignored);
-        }
-        if (!verifiedCode) {
+        String key = tokenManager.verifyAccessCode(realm, code);
+        if (key == null) {
             Map<String, String> res = new HashMap<String, String>();
             res.put("error", "invalid_grant");
             res.put("error_description", "Unable to verify code signature");
             return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
                     .build();
         }
-        String key = input.readContentAsString();
-        AccessCodeEntry accessCode = tokenManager.pullAccessCode(key);
+        AccessCodeEntry accessCode = tokenManager.pullAccessCode(realm, key);
         if (accessCode == null) {
             Map<String, String> res = new HashMap<String, String>();
             res.put("error", "invalid_grant");
@@ -415,7 +505,7 @@ public class TokenService {
             return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON_TYPE).entity(res)
                     .build();
         }
-        if (!client.getLoginName().equals(accessCode.getClient().getLoginName())) {
+        if (!client.getLoginName().equals(accessCode.getClientLoginName())) {
             Map<String, String> res = new HashMap<String, String>();
             res.put("error", "invalid_grant");
             res.put("error_description", "Auth error");
@@ -423,17 +513,16 @@ public class TokenService {
                     .build();
         }
         logger.debug("accessRequest SUCCESS");
-        AccessTokenResponse res = accessTokenResponse(realm.getPrivateKey(), accessCode.getToken());
+        // code-flow clients include keycloak.js, which only reads uncompressed tokens
+        AccessTokenResponse res = accessTokenResponse(accessCode.getToken(), tokenManager.encodeToken(realm, accessCode.getToken(), false));
+        UserModel user = accessCode.getUser(realm);
+        if (user != null) {
+            res.setRefreshToken(tokenManager.createRefreshToken(realm, user, client, RefreshToken.GRANT_CODE, accessCode.getScope()));
+        }
 
         return Cors.add(request, Response.ok(res)).allowedOrigins(client).allowedMethods("POST").build();
     }
 
-    protected AccessTokenResponse accessTokenResponse(PrivateKey privateKey, SkeletonKeyToken token) {
-        String encodedToken = new JWSBuilder().jsonContent(token).rsa256(privateKey);
-
-        return accessTokenResponse(token, encodedToken);
-    }
-
     protected AccessTokenResponse accessTokenResponse(SkeletonKeyToken token, String encodedToken) {
         AccessTokenResponse res = new AccessTokenResponse();
         res.setToken(encodedToken);
@@ -567,18 +656,11 @@ public class TokenService {
         }
 
         String code = formData.getFirst("code");
-        JWSInput input = new JWSInput(code);
-        boolean verifiedCode = false;
-        try {
-            verifiedCode = RSAProvider.verify(input, realm.getPublicKey());
-        } catch (Exception ignored) {
-            logger.debug("Failed to verify signature", ignored);
-        }
-        if (!verifiedCode) {
+        String key = tokenManager.verifyAccessCode(realm, code);
+        if (key == null) {
             return oauth.forwardToSecurityFailure("Illegal access code.");
         }
-        String key = input.readContentAsString();
-        AccessCodeEntry accessCodeEntry = tokenManager.getAccessCode(key);
+        AccessCodeEntry accessCodeEntry = tokenManager.getAccessCode(realm, key);
         if (accessCodeEntry == null) {
             return oauth.forwardToSecurityFailure("Unknown access code.");
         }
@@ -591,6 +673,7 @@ public class TokenService {
         }
 
         accessCodeEntry.setExpiration((System.currentTimeMillis() / 1000) + realm.getAccessCodeLifespan());
+        tokenManager.updateAccessCode(realm, accessCodeEntry);
         return oauth.redirectAccessCode(accessCodeEntry, state, redirect);
     }
 
@@ -7,8 +7,6 @@ import org.jboss.resteasy.spi.HttpResponse;
 import org.jboss.resteasy.spi.NotImplementedYetException;
 import org.keycloak.AbstractOAuthClient;
 import org.keycloak.jaxrs.JaxrsOAuthClient;
-import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
@@ -295,19 +293,12 @@ public class AdminService {
             }
             String path = new JaxrsOAuthClient().checkStateCookie(uriInfo, headers);
 
-            JWSInput input = new JWSInput(code);
-            boolean verifiedCode = false;
-            try {
-                verifiedCode = RSAProvider.verify(input, realm.getPublicKey());
-            } catch (Exception ignored) {
-                logger.debug("Failed to verify signature", ignored);
-            }
-            if (!verifiedCode) {
+            String key = tokenManager.verifyAccessCode(realm, code);
+            if (key == null) {
                 logger.debug("unverified access code");
                 return redirectOnLoginError("invalid login data");
             }
-            String key = input.readContentAsString();
-            AccessCodeEntry accessCode = tokenManager.pullAccessCode(key);
+            AccessCodeEntry accessCode = tokenManager.pullAccessCode(realm, key);
             if (accessCode == null) {
                 logger.debug("bad access code");
                 return redirectOnLoginError("invalid login data");
@@ -320,22 +311,23 @@ public class AdminService {
                 logger.debug("access token expired");
                 return redirectOnLoginError("invalid login data");
             }
-            if (!accessCode.getRealm().getId().equals(realm.getId())) {
+            if (!accessCode.getRealmId().equals(realm.getId())) {
                 logger.debug("bad realm");
                 return redirectOnLoginError("invalid login data");
 
             }
-            if (!adminConsoleUser.getLoginName().equals(accessCode.getClient().getLoginName())) {
+            if (!adminConsoleUser.getLoginName().equals(accessCode.getClientLoginName())) {
                 logger.debug("bad client");
                 return redirectOnLoginError("invalid login data");
             }
+            UserModel user = accessCode.getUser(realm);
             RoleModel adminConsoleAdminRole = adminConsole.getRole(Constants.ADMIN_CONSOLE_ADMIN_ROLE);
-            if (!realm.hasRole(accessCode.getUser(), adminConsoleAdminRole)) {
+            if (user == null || !realm.hasRole(user, adminConsoleAdminRole)) {
                 logger.debug("not allowed");
                 return redirectOnLoginError("No permission to access console");
             }
             logger.debug("loginRedirect SUCCESS");
-            NewCookie cookie = authManager.createSaasIdentityCookie(realm, accessCode.getUser(), uriInfo);
+            NewCookie cookie = authManager.createSaasIdentityCookie(realm, user, uriInfo);
 
             URI redirectUri = contextRoot(uriInfo).path(adminPath).build();
             if (path != null) {
@@ -395,6 +387,8 @@ public class AdminService {
                 return Response.status(302).cookie(cookie).location(contextRoot(uriInfo).path(adminPath).build()).build();
             case ACCOUNT_DISABLED:
                 return Flows.forms(realm, request, uriInfo).setError(Messages.ACCOUNT_DISABLED).setFormData(formData).createLogin();
+            case ACCOUNT_TEMPORARILY_DISABLED:
+                return Flows.forms(realm, request, uriInfo).setError(Messages.ACCOUNT_TEMPORARILY_DISABLED).setFormData(formData).createLogin();
             case ACTIONS_REQUIRED:
                 return oauth.processAccessCode(null, "n", contextRoot(uriInfo).path(adminPath).build().toString(), adminConsoleUser, user);
             default:
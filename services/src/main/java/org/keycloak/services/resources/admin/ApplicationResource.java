@@ -10,6 +10,7 @@ import org.keycloak.representations.adapters.config.BaseAdapterConfig;
 import org.keycloak.representations.idm.ApplicationRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.services.managers.ApplicationManager;
+import org.keycloak.services.managers.IdentityCookieCache;
 import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.resources.KeycloakApplication;
 import org.keycloak.util.JsonSerialization;
@@ -59,6 +60,9 @@ public class ApplicationResource extends RoleContainerResource {
     public void update(final ApplicationRepresentation rep) {
         ApplicationManager applicationManager = new ApplicationManager(new RealmManager(session));
         applicationManager.updateApplication(rep, application);
+        if (!rep.isEnabled()) {
+            IdentityCookieCache.getInstance().invalidateUser(realm.getId(), application.getApplicationUser().getLoginName());
+        }
     }
 
 
@@ -86,7 +90,9 @@ public class ApplicationResource extends RoleContainerResource {
     @DELETE
     @NoCache
     public void deleteApplication() {
+        String loginName = application.getApplicationUser().getLoginName();
         realm.removeApplication(application.getId());
+        IdentityCookieCache.getInstance().invalidateUser(realm.getId(), loginName);
     }
 
     @Path("credentials")
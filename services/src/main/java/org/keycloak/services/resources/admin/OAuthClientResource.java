@@ -10,6 +10,7 @@ import org.keycloak.representations.adapters.config.BaseAdapterConfig;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.OAuthClientRepresentation;
 import org.keycloak.services.managers.ApplicationManager;
+import org.keycloak.services.managers.IdentityCookieCache;
 import org.keycloak.services.managers.OAuthClientManager;
 import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.resources.KeycloakApplication;
@@ -58,6 +59,9 @@ public class OAuthClientResource  {
     public void update(final OAuthClientRepresentation rep) {
         OAuthClientManager manager = new OAuthClientManager(realm);
         manager.update(rep, oauthClient);
+        if (!rep.isEnabled()) {
+            IdentityCookieCache.getInstance().invalidateUser(realm.getId(), oauthClient.getOAuthAgent().getLoginName());
+        }
     }
 
 
@@ -83,7 +87,9 @@ public class OAuthClientResource  {
     @DELETE
     @NoCache
     public void deleteOAuthClient() {
+        String loginName = oauthClient.getOAuthAgent().getLoginName();
         realm.removeOAuthClient(oauthClient.getId());
+        IdentityCookieCache.getInstance().invalidateUser(realm.getId(), loginName);
     }
 
     @Path("credentials")
@@ -6,13 +6,20 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.services.managers.BruteForceProtector;
+import org.keycloak.services.managers.IdentityCookieCache;
 import org.keycloak.services.managers.ModelToRepresentation;
 import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.managers.TokenManager;
+import org.keycloak.services.managers.TokenSizeHistogram;
+import org.keycloak.services.resources.flows.Flows;
 
 import javax.ws.rs.*;
 import javax.ws.rs.container.ResourceContext;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -61,9 +68,16 @@ public class RealmAdminResource extends RoleContainerResource {
 
     @PUT
     @Consumes("application/json")
-    public void updateRealm(final RealmRepresentation rep) {
+    public Response updateRealm(final RealmRepresentation rep) {
         logger.debug("updating realm: " + realm.getName());
-        new RealmManager(session).updateRealm(rep, realm);
+        try {
+            new RealmManager(session).updateRealm(rep, realm);
+        } catch (IllegalArgumentException e) {
+            // e.g. a password policy that can't be used, nothing of the update is kept
+            session.getTransaction().setRollbackOnly();
+            return Flows.errors().error(e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+        return Response.noContent().build();
     }
 
     @DELETE
@@ -71,6 +85,73 @@ public class RealmAdminResource extends RoleContainerResource {
         if (!session.removeRealm(realm.getId())) {
             throw new NotFoundException();
         }
+        IdentityCookieCache.getInstance().evictRealm(realm.getId());
+        BruteForceProtector.getInstance().evictRealm(realm.getId());
+        TokenManager.removeTokenSizes(realm.getId());
+    }
+
+    /**
+     * Sizes of the tokens this node has issued for the realm since startup.
+     *
+     * @return
+     */
+    @Path("token-sizes")
+    @GET
+    @NoCache
+    @Produces("application/json")
+    public Map<String, Object> getTokenSizes() {
+        TokenSizeHistogram sizes = TokenManager.getTokenSizes(realm.getId());
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("tokens", sizes.getCount());
+        stats.put("averageLength", sizes.getAverageLength());
+        stats.put("plain", sizes.getPlainCounts());
+        stats.put("compressed", sizes.getCompressedCounts());
+        return stats;
+    }
+
+    /**
+     * Users and source addresses that are locked out after too many failed logins, with the seconds until they may
+     * try again.
+     *
+     * @return
+     */
+    @Path("attack-detection/brute-force")
+    @GET
+    @NoCache
+    @Produces("application/json")
+    public Map<String, Map<String, Long>> getBruteForceLockouts() {
+        return BruteForceProtector.getInstance().getLockouts(realm.getId(), new BruteForceProtector.Policy(realm));
+    }
+
+    @Path("attack-detection/brute-force")
+    @DELETE
+    public void clearBruteForce() {
+        BruteForceProtector.getInstance().evictRealm(realm.getId());
+    }
+
+    @Path("attack-detection/brute-force/users/{username}")
+    @GET
+    @NoCache
+    @Produces("application/json")
+    public Map<String, Object> getBruteForceUser(final @PathParam("username") String username) {
+        BruteForceProtector protector = BruteForceProtector.getInstance();
+        BruteForceProtector.Policy policy = new BruteForceProtector.Policy(realm);
+        Map<String, Object> status = new HashMap<String, Object>();
+        status.put("failures", protector.getUserFailures(realm.getId(), policy, username));
+        status.put("lockout", protector.getLockout(realm.getId(), policy, username, null));
+        return status;
+    }
+
+    @Path("attack-detection/brute-force/users/{username}")
+    @DELETE
+    public void clearBruteForceUser(final @PathParam("username") String username) {
+        BruteForceProtector.getInstance().clearUser(realm.getId(), username);
+    }
+
+    @Path("attack-detection/brute-force/addresses/{address}")
+    @DELETE
+    public void clearBruteForceAddress(final @PathParam("address") String address) {
+        BruteForceProtector.getInstance().clearAddress(realm.getId(), address);
     }
 
     @Path("users")
@@ -85,7 +85,12 @@ public class RealmsAdminResource {
             return Flows.errors().exists("Realm " + rep.getRealm() + " already exists");
         }
 
-        RealmModel realm = realmManager.importRealm(rep, admin);
+        RealmModel realm;
+        try {
+            realm = realmManager.importRealm(rep, admin);
+        } catch (IllegalArgumentException e) {
+            return invalidRealm(e);
+        }
         URI location = realmUrl(uriInfo).build(realm.getName());
         logger.debug("imported realm success, sending back: {0}", location.toString());
         return Response.created(location).build();
@@ -101,11 +106,25 @@ public class RealmsAdminResource {
         for (InputPart inputPart : inputParts) {
             inputPart.setMediaType(MediaType.APPLICATION_JSON_TYPE);
             RealmRepresentation rep = inputPart.getBody(new GenericType<RealmRepresentation>(){});
-            realmManager.importRealm(rep, admin);
+            try {
+                realmManager.importRealm(rep, admin);
+            } catch (IllegalArgumentException e) {
+                return invalidRealm(e);
+            }
         }
         return Response.noContent().build();
     }
 
+    /**
+     * A realm representation with invalid settings, e.g. a key algorithm that isn't supported.  Nothing of the
+     * import is kept.
+     */
+    protected Response invalidRealm(IllegalArgumentException e) {
+        logger.debug("rejected realm import: {0}", e.getMessage());
+        session.getTransaction().setRollbackOnly();
+        return Flows.errors().error(e.getMessage(), Response.Status.BAD_REQUEST);
+    }
+
     @Path("{realm}")
     public RealmAdminResource getRealmAdmin(@Context final HttpHeaders headers,
                                             @PathParam("realm") final String name) {
@@ -1,11 +1,15 @@
 package org.keycloak.services.resources.admin;
 
+import org.jboss.resteasy.annotations.cache.NoCache;
 import org.keycloak.freemarker.Theme;
 import org.keycloak.freemarker.ThemeProvider;
+import org.keycloak.models.utils.PasswordHashingExecutor;
 import org.keycloak.social.SocialProvider;
 import org.keycloak.util.ProviderLoader;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -25,6 +29,30 @@ public class ServerInfoAdminResource {
         return info;
     }
 
+    /**
+     * Queue depth and latency of the password hashing pool, see {@link PasswordHashingExecutor}.
+     *
+     * @return
+     */
+    @Path("password-hashing")
+    @GET
+    @NoCache
+    @Produces("application/json")
+    public Map<String, Object> getPasswordHashing() {
+        PasswordHashingExecutor executor = PasswordHashingExecutor.getInstance();
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("threads", executor.getThreads());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueueSize());
+        stats.put("queueDepth", executor.getQueueDepth());
+        stats.put("hashes", executor.getHashes());
+        stats.put("rejected", executor.getRejected());
+        stats.put("averageWaitMillis", executor.getAverageWaitMillis());
+        stats.put("averageHashMillis", executor.getAverageHashMillis());
+        stats.put("maxHashMillis", executor.getMaxHashMillis());
+        return stats;
+    }
+
     private void setThemes(ServerInfoRepresentation info) {
         Iterable<ThemeProvider> providers = ProviderLoader.load(ThemeProvider.class);
         info.themes = new HashMap<String, List<String>>();
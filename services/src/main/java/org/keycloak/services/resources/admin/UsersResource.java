@@ -13,6 +13,8 @@ import org.keycloak.representations.idm.*;
 import org.keycloak.services.email.EmailException;
 import org.keycloak.services.email.EmailSender;
 import org.keycloak.services.managers.AccessCodeEntry;
+import org.keycloak.services.managers.BruteForceProtector;
+import org.keycloak.services.managers.IdentityCookieCache;
 import org.keycloak.services.managers.ModelToRepresentation;
 import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.managers.TokenManager;
@@ -103,6 +105,9 @@ public class UsersResource {
         user.setLastName(rep.getLastName());
 
         user.setEnabled(rep.isEnabled());
+        if (!rep.isEnabled()) {
+            IdentityCookieCache.getInstance().invalidateUser(realm.getId(), user.getLoginName());
+        }
         user.setTotp(rep.isTotp());
         user.setEmailVerified(rep.isEmailVerified());
 
@@ -140,6 +145,8 @@ public class UsersResource {
     @NoCache
     public void deleteUser(final @PathParam("username") String username) {
         realm.removeUser(username);
+        IdentityCookieCache.getInstance().invalidateUser(realm.getId(), username);
+        BruteForceProtector.getInstance().clearUser(realm.getId(), username);
     }
 
     @GET
@@ -446,6 +453,7 @@ public class UsersResource {
         AccessCodeEntry accessCode = tokenManager.createAccessCode(scope, state, redirect, realm, client, user);
         accessCode.setRequiredActions(requiredActions);
         accessCode.setExpiration(System.currentTimeMillis() / 1000 + realm.getAccessCodeLifespanUserAction());
+        tokenManager.updateAccessCode(realm, accessCode);
 
         try {
             new EmailSender(realm.getSmtpConfig()).sendPasswordReset(user, realm, accessCode, uriInfo);
@@ -75,7 +75,7 @@ public class OAuthFlows {
         if (state != null)
             redirectUri.queryParam("state", state);
         Response.ResponseBuilder location = Response.status(302).location(redirectUri.build());
-        location.cookie(authManager.createLoginCookie(realm, accessCode.getUser(), uriInfo));
+        location.cookie(authManager.createLoginCookie(realm, accessCode.getUser(realm), uriInfo));
         return location.build();
     }
 
@@ -101,22 +101,23 @@ public class OAuthFlows {
         AccessCodeEntry accessCode = tokenManager.createAccessCode(scopeParam, state, redirect, realm, client, user);
         log.debug("processAccessCode: isResource: {0}", isResource);
         log.debug("processAccessCode: go to oauth page?: {0}",
-                (!isResource && (accessCode.getRealmRolesRequested().size() > 0 || accessCode.getResourceRolesRequested()
-                        .size() > 0)));
+                (!isResource && accessCode.hasRolesRequested()));
 
         Set<RequiredAction> requiredActions = user.getRequiredActions();
         if (!requiredActions.isEmpty()) {
             accessCode.setRequiredActions(new HashSet<UserModel.RequiredAction>(requiredActions));
             accessCode.setExpiration(System.currentTimeMillis() / 1000 + realm.getAccessCodeLifespanUserAction());
-            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getId(), accessCode.getCode()).setUser(user)
+            tokenManager.updateAccessCode(realm, accessCode);
+            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getKey(), accessCode.getCode()).setUser(user)
                     .createResponse(user.getRequiredActions().iterator().next());
         }
 
         if (!isResource
-                && (accessCode.getRealmRolesRequested().size() > 0 || accessCode.getResourceRolesRequested().size() > 0)) {
+                && accessCode.hasRolesRequested()) {
             accessCode.setExpiration(System.currentTimeMillis() / 1000 + realm.getAccessCodeLifespanUserAction());
-            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getId(), accessCode.getCode()).
-                    setAccessRequest(accessCode.getRealmRolesRequested(), accessCode.getResourceRolesRequested()).
+            tokenManager.updateAccessCode(realm, accessCode);
+            return Flows.forms(realm, request, uriInfo).setAccessCode(accessCode.getKey(), accessCode.getCode()).
+                    setAccessRequest(accessCode.getRealmRolesRequested(realm), accessCode.getResourceRolesRequested(realm)).
                     setClient(client).createOAuthGrant();
         }
 
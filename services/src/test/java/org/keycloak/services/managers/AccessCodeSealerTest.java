@@ -0,0 +1,114 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.UserModel.RequiredAction;
+import org.keycloak.models.utils.TestClock;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class AccessCodeSealerTest {
+
+    private SecretKey encryptionKey;
+    private SecretKey macKey;
+    private AccessCodeEntry entry;
+
+    @Before
+    public void before() {
+        encryptionKey = new SecretKeySpec(new byte[16], "AES");
+        macKey = new SecretKeySpec(new byte[32], "HmacSHA256");
+
+        entry = new AccessCodeEntry();
+        entry.realmId = "realm-id";
+        entry.userLoginName = "bburke";
+        entry.clientLoginName = "third-party";
+        entry.state = "state";
+        entry.redirectUri = "http://localhost/app?a=b";
+        entry.expiration = 1000060;
+        entry.requiredActions = new HashSet<RequiredAction>(Collections.singleton(RequiredAction.UPDATE_PASSWORD));
+        entry.realmRolesRequested.add("user-role-id");
+        entry.resourceRolesRequested.add("app", "admin-role-id");
+        entry.resourceRolesRequested.add("app", "viewer-role-id");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String code = AccessCodeSealer.seal(entry, encryptionKey, macKey);
+        Assert.assertTrue(AccessCodeSealer.isSealed(code));
+
+        AccessCodeEntry unsealed = AccessCodeSealer.unseal(code, encryptionKey, macKey);
+        Assert.assertNotNull(unsealed);
+        Assert.assertTrue(unsealed.isSelfContained());
+        Assert.assertEquals(code, unsealed.getKey());
+        Assert.assertEquals(entry.getId(), unsealed.getId());
+        Assert.assertEquals("realm-id", unsealed.getRealmId());
+        Assert.assertEquals("bburke", unsealed.getUserLoginName());
+        Assert.assertEquals("third-party", unsealed.getClientLoginName());
+        Assert.assertEquals("state", unsealed.getState());
+        Assert.assertEquals("http://localhost/app?a=b", unsealed.getRedirectUri());
+        Assert.assertEquals(1000060, unsealed.getExpiration());
+        Assert.assertEquals(entry.getRequiredActions(), unsealed.getRequiredActions());
+        Assert.assertEquals(Arrays.asList("user-role-id"), unsealed.realmRolesRequested);
+        Assert.assertEquals(Arrays.asList("admin-role-id", "viewer-role-id"), unsealed.resourceRolesRequested.get("app"));
+    }
+
+    @Test
+    public void testNullFields() {
+        entry.state = null;
+        entry.redirectUri = null;
+        entry.requiredActions = null;
+        AccessCodeEntry unsealed = AccessCodeSealer.unseal(AccessCodeSealer.seal(entry, encryptionKey, macKey), encryptionKey, macKey);
+        Assert.assertNull(unsealed.getState());
+        Assert.assertNull(unsealed.getRedirectUri());
+        Assert.assertNull(unsealed.getRequiredActions());
+    }
+
+    @Test
+    public void testTamperedCode() {
+        String code = AccessCodeSealer.seal(entry, encryptionKey, macKey);
+        int index = AccessCodeSealer.PREFIX.length() + 30;
+        char c = code.charAt(index) == 'A' ? 'B' : 'A';
+        String tampered = code.substring(0, index) + c + code.substring(index + 1);
+        Assert.assertNull(AccessCodeSealer.unseal(tampered, encryptionKey, macKey));
+        Assert.assertNull(AccessCodeSealer.unseal(code.substring(0, code.length() - 4), encryptionKey, macKey));
+        Assert.assertNull(AccessCodeSealer.unseal(AccessCodeSealer.PREFIX, encryptionKey, macKey));
+        Assert.assertNull(AccessCodeSealer.unseal(entry.getId(), encryptionKey, macKey));
+    }
+
+    @Test
+    public void testWrongKey() {
+        String code = AccessCodeSealer.seal(entry, encryptionKey, macKey);
+        byte[] other = new byte[32];
+        other[0] = 1;
+        Assert.assertNull(AccessCodeSealer.unseal(code, encryptionKey, new SecretKeySpec(other, "HmacSHA256")));
+    }
+
+    @Test
+    public void testReplayCache() {
+        final TestClock clock = new TestClock();
+        AccessCodeReplayCache cache = new AccessCodeReplayCache(2, 5) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+        Assert.assertEquals(AccessCodeStore.Use.FIRST, cache.markUsed("a", clock.currentTime() + 60));
+        Assert.assertEquals(AccessCodeStore.Use.REPEATED, cache.markUsed("a", clock.currentTime() + 60));
+        Assert.assertTrue(cache.isUsed("a"));
+        Assert.assertEquals(AccessCodeStore.Use.FIRST, cache.markUsed("b", clock.currentTime() + 120));
+
+        // full, nothing to sweep
+        Assert.assertEquals(AccessCodeStore.Use.UNRECORDED, cache.markUsed("c", clock.currentTime() + 60));
+        Assert.assertEquals(1, cache.getRejected());
+
+        clock.advance(61);
+        Assert.assertFalse(cache.isUsed("a"));
+        Assert.assertEquals(AccessCodeStore.Use.FIRST, cache.markUsed("c", clock.currentTime() + 60));
+        Assert.assertEquals(2, cache.size());
+    }
+}
@@ -1,20 +1,32 @@
 package org.keycloak.services.managers;
 
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.spi.ResteasyUriInfo;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.keycloak.VerificationException;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.models.PasswordPolicy;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserModel.RequiredAction;
 import org.keycloak.models.utils.TimeBasedOTP;
+import org.keycloak.representations.SkeletonKeyToken;
 import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.services.managers.AuthenticationManager.AuthenticationStatus;
+import org.keycloak.services.resources.AccountService;
 import org.keycloak.test.common.AbstractKeycloakTest;
 import org.keycloak.test.common.SessionFactoryTestContext;
 
+import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
+import java.net.URI;
+import java.util.Collections;
 import java.util.UUID;
 
 public class AuthenticationManagerTest extends AbstractKeycloakTest {
@@ -52,6 +64,72 @@ public class AuthenticationManagerTest extends AbstractKeycloakTest {
         Assert.assertEquals(AuthenticationStatus.MISSING_PASSWORD, status);
     }
 
+    @Test
+    public void authClientSecret() {
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateClient(realm, user, formData));
+        // verified secrets are remembered
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateClient(realm, user, formData));
+
+        formData.putSingle(CredentialRepresentation.PASSWORD, "invalid");
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, am.authenticateClient(realm, user, formData));
+
+        UserCredentialModel credential = new UserCredentialModel();
+        credential.setType(CredentialRepresentation.PASSWORD);
+        credential.setValue("new-password");
+        realm.updateCredential(user, credential);
+
+        formData.putSingle(CredentialRepresentation.PASSWORD, "password");
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, am.authenticateClient(realm, user, formData));
+        formData.putSingle(CredentialRepresentation.PASSWORD, "new-password");
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateClient(realm, user, formData));
+    }
+
+    @Test
+    public void authFormBruteForce() {
+        realm.setBruteForceProtected(true);
+        realm.setFailureFactor(2);
+        BruteForceProtector.getInstance().clearUser(realm.getId(), user.getLoginName());
+
+        formData.putSingle(CredentialRepresentation.PASSWORD, "invalid");
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, am.authenticateForm(realm, user, formData));
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, am.authenticateForm(realm, user, formData));
+
+        // locked out before the password is checked
+        formData.putSingle(CredentialRepresentation.PASSWORD, "password");
+        Assert.assertEquals(AuthenticationStatus.ACCOUNT_TEMPORARILY_DISABLED, am.authenticateForm(realm, user, formData));
+
+        BruteForceProtector.getInstance().clearUser(realm.getId(), user.getLoginName());
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+    }
+
+    @Test
+    public void authFormRehash() {
+        realm.setPasswordPolicy(new PasswordPolicy("hashIterations(1000)"));
+        // verified with the old parameters, and hashed again with the new ones
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+        Assert.assertFalse(realm.validatePassword(user, "invalid"));
+
+        realm.setPasswordPolicy(new PasswordPolicy(null));
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+        Assert.assertFalse(realm.validatePassword(user, "invalid"));
+    }
+
+    @Test
+    public void authFormRehashFailure() {
+        // a policy stored before hashing parameters were checked
+        realm.setPasswordPolicy(new PasswordPolicy(null) {
+            @Override
+            public String getHashAlgorithm() {
+                return "PBKDF2WithHmacMD4";
+            }
+        });
+        // the old hash is kept
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+        Assert.assertEquals(AuthenticationStatus.SUCCESS, am.authenticateForm(realm, user, formData));
+        Assert.assertFalse(realm.validatePassword(user, "invalid"));
+    }
+
     @Test
     public void authFormRequiredAction() {
         realm.addRequiredCredential(CredentialRepresentation.TOTP);
@@ -113,6 +191,15 @@ public class AuthenticationManagerTest extends AbstractKeycloakTest {
         Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, status);
     }
 
+    @Test
+    public void authFormWithTotpReplay() {
+        authFormWithTotp();
+
+        // a token can only be used once
+        AuthenticationStatus status = am.authenticateForm(realm, user, formData);
+        Assert.assertEquals(AuthenticationStatus.INVALID_CREDENTIALS, status);
+    }
+
     @Test
     public void authFormWithTotpMissingTotp() {
         authFormWithTotp();
@@ -123,6 +210,90 @@ public class AuthenticationManagerTest extends AbstractKeycloakTest {
         Assert.assertEquals(AuthenticationStatus.MISSING_TOTP, status);
     }
 
+    @Test
+    public void identityCookieClientDisabledOrRemoved() {
+        getRealmManager().generateRealmKeys(realm);
+        UserModel client = realm.addUser("third-party");
+        client.setEnabled(true);
+        String cookie = am.createAccountIdentityCookie(realm, user, client, URI.create("/account")).getValue();
+
+        Assert.assertEquals("third-party", authenticateCookie(cookie).getClient().getLoginName());
+        long hits = IdentityCookieCache.getInstance().getHits();
+        Assert.assertEquals("third-party", authenticateCookie(cookie).getClient().getLoginName());
+        Assert.assertEquals(hits + 1, IdentityCookieCache.getInstance().getHits());
+
+        // the cached cookie is rejected too
+        client.setEnabled(false);
+        Assert.assertNull(authenticateCookie(cookie));
+
+        client.setEnabled(true);
+        Assert.assertNotNull(authenticateCookie(cookie));
+        realm.removeUser("third-party");
+        Assert.assertNull(authenticateCookie(cookie));
+    }
+
+    @Test
+    public void identityCookieMac() throws Exception {
+        getRealmManager().generateRealmKeys(realm);
+        SkeletonKeyToken token = am.createIdentityToken(realm, "test");
+        String encoded = am.encodeToken(realm, token);
+
+        Assert.assertEquals(Algorithm.HS256, new JWSInput(encoded).getHeader().getAlgorithm());
+        Assert.assertEquals("test", am.verifyIdentityToken(realm, encoded).getSubject());
+
+        int content = encoded.indexOf('.') + 1;
+        int signature = encoded.lastIndexOf('.') + 1;
+        assertCookieRejected(tamper(encoded, content + 5));
+        assertCookieRejected(tamper(encoded, signature + 5));
+        assertCookieRejected(encoded.substring(0, signature));
+    }
+
+    @Test
+    public void identityCookieOtherRealm() throws Exception {
+        getRealmManager().generateRealmKeys(realm);
+        RealmModel other = getRealmManager().createRealm("Other");
+        getRealmManager().generateRealmKeys(other);
+
+        // MAC'd with the other realm's key
+        assertCookieRejected(am.encodeToken(other, am.createIdentityToken(realm, "test")));
+        // MAC'd with this realm's key, but for the other realm
+        assertCookieRejected(am.encodeToken(realm, am.createIdentityToken(other, "test")));
+    }
+
+    @Test
+    public void identityCookieLegacySignature() throws Exception {
+        getRealmManager().generateRealmKeys(realm);
+        SkeletonKeyToken token = am.createIdentityToken(realm, "test");
+
+        // cookies signed with the realm key before they were MAC'd
+        String signed = new JWSBuilder().jsonContent(token).rsa256(realm.getPrivateKey());
+        Assert.assertEquals("test", am.verifyIdentityToken(realm, signed).getSubject());
+        assertCookieRejected(tamper(signed, signed.indexOf('.') + 5));
+
+        assertCookieRejected(new JWSBuilder().jsonContent(token).none());
+    }
+
+    private String tamper(String encoded, int index) {
+        char c = encoded.charAt(index) == 'A' ? 'B' : 'A';
+        return encoded.substring(0, index) + c + encoded.substring(index + 1);
+    }
+
+    private void assertCookieRejected(String cookie) {
+        try {
+            am.verifyIdentityToken(realm, cookie);
+            Assert.fail("Expected cookie to be rejected");
+        } catch (VerificationException expected) {
+        }
+    }
+
+    private AuthenticationManager.Auth authenticateCookie(String value) {
+        String name = AccountService.ACCOUNT_IDENTITY_COOKIE;
+        ResteasyHttpHeaders headers = new ResteasyHttpHeaders(new MultivaluedHashMap<String, String>());
+        headers.setCookies(Collections.singletonMap(name, new Cookie(name, value)));
+        ResteasyUriInfo uriInfo = new ResteasyUriInfo(URI.create("http://localhost/auth/"), URI.create("realms"));
+        return am.authenticateIdentityCookie(realm, uriInfo, headers, name);
+    }
+
     @Before
     public void before() throws Exception {
         super.before();
@@ -0,0 +1,113 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.utils.TestClock;
+
+import java.util.Map;
+
+public class BruteForceProtectorTest {
+
+    private final TestClock clock = new TestClock();
+    private BruteForceProtector protector;
+    private BruteForceProtector.Policy policy;
+
+    @Before
+    public void before() {
+        protector = new BruteForceProtector(3) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+        policy = new BruteForceProtector.Policy(3, 10, 100, 1000);
+    }
+
+    private void fail(String loginName, String address, int count) {
+        for (int i = 0; i < count; i++) {
+            protector.failure("realm", policy, loginName, address);
+        }
+    }
+
+    @Test
+    public void testBackOff() {
+        fail("bburke", null, 2);
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "bburke", null));
+
+        fail("bburke", null, 1);
+        Assert.assertEquals(10, protector.getLockout("realm", policy, "bburke", null));
+        Assert.assertEquals(0, protector.getLockout("other", policy, "bburke", null));
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "other", null));
+
+        // doubled for each further failure, up to the maximum
+        fail("bburke", null, 1);
+        Assert.assertEquals(20, protector.getLockout("realm", policy, "bburke", null));
+        fail("bburke", null, 5);
+        Assert.assertEquals(100, protector.getLockout("realm", policy, "bburke", null));
+
+        clock.advance(40);
+        Assert.assertEquals(60, protector.getLockout("realm", policy, "bburke", null));
+        clock.advance(60);
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "bburke", null));
+    }
+
+    @Test
+    public void testDecay() {
+        clock.set(5000);
+        fail("bburke", null, 8);
+        Assert.assertEquals(8, protector.getUserFailures("realm", policy, "bburke"));
+
+        clock.advance(1000);
+        Assert.assertEquals(4, protector.getUserFailures("realm", policy, "bburke"));
+        clock.advance(2000);
+        Assert.assertEquals(1, protector.getUserFailures("realm", policy, "bburke"));
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "bburke", null));
+
+        fail("bburke", null, 1);
+        Assert.assertEquals(2, protector.getUserFailures("realm", policy, "bburke"));
+    }
+
+    @Test
+    public void testAddress() {
+        fail("bburke", "10.0.0.1", 2);
+        protector.success("realm", "bburke");
+        Assert.assertEquals(0, protector.getUserFailures("realm", policy, "bburke"));
+
+        // an address may fail ten times as often as a user
+        for (int i = 0; i < 27; i++) {
+            fail("user" + (i % 2), "10.0.0.1", 1);
+            protector.success("realm", "user" + (i % 2));
+        }
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "bburke", "10.0.0.1"));
+        fail("bburke", "10.0.0.1", 1);
+        Assert.assertEquals(10, protector.getLockout("realm", policy, "other", "10.0.0.1"));
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "other", "10.0.0.2"));
+
+        Map<String, Map<String, Long>> lockouts = protector.getLockouts("realm", policy);
+        Assert.assertEquals(Long.valueOf(10), lockouts.get("addresses").get("10.0.0.1"));
+        Assert.assertTrue(lockouts.get("users").isEmpty());
+
+        protector.clearAddress("realm", "10.0.0.1");
+        Assert.assertEquals(0, protector.getLockout("realm", policy, "other", "10.0.0.1"));
+    }
+
+    @Test
+    public void testFull() {
+        fail("a", null, 3);
+        fail("b", null, 1);
+        fail("c", null, 1);
+        fail("d", null, 1);
+        Assert.assertEquals(3, protector.size());
+        Assert.assertEquals(0, protector.getUserFailures("realm", policy, "d"));
+
+        // counters that decayed and lock no one out make room
+        clock.advance(100000);
+        fail("d", null, 1);
+        Assert.assertEquals(1, protector.size());
+        Assert.assertEquals(1, protector.getUserFailures("realm", policy, "d"));
+
+        protector.evictRealm("realm");
+        Assert.assertEquals(0, protector.size());
+    }
+}
@@ -0,0 +1,173 @@
+package org.keycloak.services.managers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.UserModel.RequiredAction;
+import org.keycloak.models.utils.TestClock;
+import org.keycloak.representations.SkeletonKeyToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.HashSet;
+
+public class FileAccessCodeStoreTest {
+
+    private File directory;
+    private TestClock clock;
+
+    @Before
+    public void before() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "keycloak-access-codes-" + System.nanoTime());
+        clock = new TestClock(System.currentTimeMillis() / 1000);
+    }
+
+    @After
+    public void after() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    private FileAccessCodeStore createStore(int maxEntries) {
+        return new FileAccessCodeStore(directory, maxEntries, 5) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+    }
+
+    private AccessCodeEntry entry(long lifespan) {
+        AccessCodeEntry entry = new AccessCodeEntry();
+        entry.setExpiration(clock.currentTime() + lifespan);
+        entry.setState("state");
+        SkeletonKeyToken token = new SkeletonKeyToken();
+        token.principal("bburke");
+        token.addAccess("app").addRole("user");
+        entry.setToken(token);
+        return entry;
+    }
+
+    @Test
+    public void testSharedBetweenStores() {
+        FileAccessCodeStore node1 = createStore(10);
+        FileAccessCodeStore node2 = createStore(10);
+
+        AccessCodeEntry entry = entry(60);
+        Assert.assertTrue(node1.put(entry));
+
+        AccessCodeEntry copy = node2.get(entry.getId());
+        Assert.assertEquals("state", copy.getState());
+        Assert.assertTrue(copy.getToken().getResourceAccess("app").isUserInRole("user"));
+
+        copy.setRequiredActions(new HashSet<RequiredAction>());
+        copy.getRequiredActions().add(RequiredAction.VERIFY_EMAIL);
+        node2.update(copy);
+        Assert.assertTrue(node1.get(entry.getId()).getRequiredActions().contains(RequiredAction.VERIFY_EMAIL));
+
+        Assert.assertNotNull(node1.remove(entry.getId()));
+        Assert.assertNull(node2.remove(entry.getId()));
+        Assert.assertNull(node2.get(entry.getId()));
+
+        // an update after removal must not bring the code back
+        node2.update(copy);
+        Assert.assertNull(node1.get(entry.getId()));
+    }
+
+    @Test
+    public void testRemoveDuringUpdate() {
+        final FileAccessCodeStore node1 = createStore(10);
+        FileAccessCodeStore node2 = new FileAccessCodeStore(directory, 10, 5) {
+            @Override
+            protected File writeTemporary(AccessCodeEntry entry) {
+                // the other node exchanges the code while this one is updating it
+                Assert.assertNotNull(node1.remove(entry.getId()));
+                return super.writeTemporary(entry);
+            }
+        };
+
+        AccessCodeEntry entry = entry(60);
+        Assert.assertTrue(node1.put(entry));
+        node2.update(entry);
+
+        Assert.assertNull(node1.get(entry.getId()));
+        Assert.assertNull(node2.remove(entry.getId()));
+        Assert.assertEquals(0, node1.size());
+        Assert.assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void testExpirationAndSizeCap() {
+        FileAccessCodeStore store = createStore(2);
+        Assert.assertTrue(store.put(entry(60)));
+        Assert.assertTrue(store.put(entry(600)));
+        Assert.assertFalse(store.put(entry(60)));
+
+        clock.advance(61);
+        Assert.assertTrue(store.put(entry(60)));
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testTamperedEntry() throws Exception {
+        FileAccessCodeStore store = createStore(10);
+        AccessCodeEntry entry = entry(60);
+        Assert.assertTrue(store.put(entry));
+
+        File file = store.getFile(entry.getId());
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            Assert.assertEquals(data.length, FileAccessCodeStore.readFully(in, data));
+        } finally {
+            in.close();
+        }
+        data[10] ^= 1;
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        Assert.assertNull(store.get(entry.getId()));
+
+        // another key, as if the file had been written by someone else
+        new File(directory, FileAccessCodeStore.KEY_FILE).delete();
+        FileAccessCodeStore other = createStore(10);
+        AccessCodeEntry otherEntry = entry(60);
+        Assert.assertTrue(other.put(otherEntry));
+        Assert.assertNull(store.get(otherEntry.getId()));
+    }
+
+    @Test
+    public void testMarkUsed() {
+        FileAccessCodeStore node1 = createStore(10);
+        FileAccessCodeStore node2 = createStore(10);
+
+        Assert.assertFalse(node2.isUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id"));
+        Assert.assertEquals(AccessCodeStore.Use.FIRST, node1.markUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id", clock.currentTime() + 60));
+        Assert.assertEquals(AccessCodeStore.Use.REPEATED, node2.markUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id", clock.currentTime() + 60));
+        Assert.assertTrue(node2.isUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id"));
+        Assert.assertEquals(AccessCodeStore.Use.REPEATED, node1.markUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "../id", clock.currentTime() + 60));
+
+        // kept until they can be forgotten, and not counted as codes
+        node1.clear();
+        Assert.assertEquals(0, node1.size());
+        Assert.assertTrue(node2.isUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id"));
+        clock.advance(60 + FileAccessCodeStore.USED_GRACE + 1);
+        node1.sweep(clock.currentTime());
+        Assert.assertFalse(node2.isUsed(AccessCodeStore.SingleUse.ACCESS_CODE, "id"));
+    }
+
+    @Test
+    public void testInvalidId() {
+        FileAccessCodeStore store = createStore(10);
+        Assert.assertNull(store.get("../../etc/passwd"));
+        Assert.assertNull(store.remove(null));
+    }
+}
@@ -0,0 +1,83 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.utils.TestClock;
+import org.keycloak.representations.SkeletonKeyToken;
+
+public class IdentityCookieCacheTest {
+
+    private final TestClock clock = new TestClock();
+    private IdentityCookieCache cache;
+    private SkeletonKeyToken token;
+
+    @Before
+    public void before() {
+        cache = new IdentityCookieCache(2, 30) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+        token = new SkeletonKeyToken();
+        token.principal("bburke");
+        token.issuedFor("third-party");
+    }
+
+    @Test
+    public void testExpiration() {
+        cache.put("realm", "key", "cookie", token);
+        Assert.assertSame(token, cache.get("realm", "key", "cookie").getToken());
+        Assert.assertNull(cache.get("realm", "key", "other"));
+        Assert.assertNull(cache.get("other", "key", "cookie"));
+
+        clock.advance(31);
+        Assert.assertNull(cache.get("realm", "key", "cookie"));
+
+        // never beyond the expiration of the token
+        token.expiration(clock.currentTime() + 10);
+        cache.put("realm", "key", "cookie", token);
+        clock.advance(11);
+        Assert.assertNull(cache.get("realm", "key", "cookie"));
+    }
+
+    @Test
+    public void testRealmKeyChanged() {
+        cache.put("realm", "key", "cookie", token);
+        Assert.assertNull(cache.get("realm", "new-key", "cookie"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put("realm", "key", "cookie", token);
+        cache.invalidateUser("other", "bburke");
+        Assert.assertNotNull(cache.get("realm", "key", "cookie"));
+
+        cache.invalidateUser("realm", "bburke");
+        Assert.assertNull(cache.get("realm", "key", "cookie"));
+
+        // cookies issued for a client go when the client does
+        cache.put("realm", "key", "cookie", token);
+        cache.invalidateUser("realm", "third-party");
+        Assert.assertNull(cache.get("realm", "key", "cookie"));
+
+        cache.put("realm", "key", "cookie", token);
+        cache.evictRealm("realm");
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFull() {
+        cache.put("realm", "key", "a", token);
+        cache.put("realm", "key", "b", token);
+        cache.put("realm", "key", "c", token);
+        Assert.assertNull(cache.get("realm", "key", "c"));
+
+        clock.advance(31);
+        cache.put("realm", "key", "c", token);
+        Assert.assertNotNull(cache.get("realm", "key", "c"));
+        Assert.assertEquals(1, cache.size());
+    }
+}
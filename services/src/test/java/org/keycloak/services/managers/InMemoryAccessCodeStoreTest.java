@@ -0,0 +1,85 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.utils.TestClock;
+
+public class InMemoryAccessCodeStoreTest {
+
+    private TestClock clock;
+    private InMemoryAccessCodeStore store;
+
+    @Before
+    public void before() {
+        clock = new TestClock();
+        store = new InMemoryAccessCodeStore(3, 5) {
+            @Override
+            protected long currentTime() {
+                return clock.currentTime();
+            }
+        };
+    }
+
+    private AccessCodeEntry entry(long lifespan) {
+        AccessCodeEntry entry = new AccessCodeEntry();
+        entry.setExpiration(clock.currentTime() + lifespan);
+        return entry;
+    }
+
+    @Test
+    public void testExpiredEntriesAreSwept() {
+        AccessCodeEntry shortLived = entry(60);
+        AccessCodeEntry longLived = entry(3600);
+        Assert.assertTrue(store.put(shortLived));
+        Assert.assertTrue(store.put(longLived));
+
+        // expired entries are swept at the next tick
+        clock.advance(61);
+        Assert.assertTrue(store.get(shortLived.getId()).isExpired(clock.currentTime()));
+        clock.advance(5);
+        Assert.assertNull(store.get(shortLived.getId()));
+        Assert.assertSame(longLived, store.get(longLived.getId()));
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(1, store.getExpired());
+
+        // more than a full turn of the wheel
+        clock.advance(3600);
+        store.get(longLived.getId());
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(2, store.getExpired());
+    }
+
+    @Test
+    public void testExtendedExpiration() {
+        AccessCodeEntry entry = entry(60);
+        store.put(entry);
+        clock.advance(30);
+        entry.setExpiration(clock.currentTime() + 300);
+
+        clock.advance(100);
+        Assert.assertSame(entry, store.get(entry.getId()));
+        clock.advance(206);
+        Assert.assertNull(store.get(entry.getId()));
+    }
+
+    @Test
+    public void testSizeCap() {
+        Assert.assertTrue(store.put(entry(60)));
+        Assert.assertTrue(store.put(entry(60)));
+        AccessCodeEntry last = entry(600);
+        Assert.assertTrue(store.put(last));
+
+        Assert.assertFalse(store.put(entry(60)));
+        Assert.assertEquals(1, store.getRejected());
+
+        // expired entries make room again
+        clock.advance(61);
+        Assert.assertTrue(store.put(entry(60)));
+        Assert.assertEquals(2, store.size());
+
+        Assert.assertSame(last, store.remove(last.getId()));
+        Assert.assertNull(store.remove(last.getId()));
+        Assert.assertEquals(1, store.getRedeemed());
+    }
+}
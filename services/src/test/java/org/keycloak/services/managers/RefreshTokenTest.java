@@ -0,0 +1,108 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.representations.RefreshToken;
+import org.keycloak.test.common.AbstractKeycloakTest;
+import org.keycloak.test.common.SessionFactoryTestContext;
+
+import javax.ws.rs.ServiceUnavailableException;
+
+public class RefreshTokenTest extends AbstractKeycloakTest {
+
+    private TokenManager tokenManager;
+    private RealmModel realm;
+    private UserModel user;
+    private UserModel client;
+
+    public RefreshTokenTest(SessionFactoryTestContext testContext) {
+        super(testContext);
+    }
+
+    @Before
+    public void before() throws Exception {
+        super.before();
+        tokenManager = new TokenManager();
+        realm = getRealmManager().createRealm("Test");
+        getRealmManager().generateRealmKeys(realm);
+        realm.setRefreshTokenLifespan(3600);
+        user = realm.addUser("bburke");
+        client = realm.addUser("third-party");
+    }
+
+    @Test
+    public void testRotation() {
+        String encoded = tokenManager.createRefreshToken(realm, user, client, RefreshToken.GRANT_CODE, "scope");
+        RefreshToken token = tokenManager.useRefreshToken(realm, encoded);
+        Assert.assertNotNull(token);
+        Assert.assertEquals("bburke", token.getSubject());
+        Assert.assertEquals("third-party", token.getIssuedFor());
+        Assert.assertEquals(RefreshToken.GRANT_CODE, token.getGrant());
+        Assert.assertEquals("scope", token.getScope());
+
+        // every refresh token can only be exchanged once
+        Assert.assertNull(tokenManager.useRefreshToken(realm, encoded));
+
+        String next = tokenManager.createRefreshToken(realm, user, client, token.getGrant(), token.getScope());
+        Assert.assertNotNull(tokenManager.useRefreshToken(realm, next));
+    }
+
+    @Test
+    public void testSharedStore() {
+        InMemoryAccessCodeStore store = new InMemoryAccessCodeStore();
+        TokenManager node1 = new TokenManager(store);
+        TokenManager node2 = new TokenManager(store);
+        String encoded = node1.createRefreshToken(realm, user, client, RefreshToken.GRANT_CODE, null);
+
+        // verifying doesn't use the token up
+        Assert.assertNotNull(node2.verifyRefreshToken(realm, encoded));
+        Assert.assertNotNull(node2.useRefreshToken(realm, encoded));
+        Assert.assertNull(node1.useRefreshToken(realm, encoded));
+    }
+
+    @Test
+    public void testFullStoreFailsClosed() {
+        InMemoryAccessCodeStore store = new InMemoryAccessCodeStore();
+        store.used.put(AccessCodeStore.SingleUse.REFRESH_TOKEN, new AccessCodeReplayCache(1, 60));
+        TokenManager manager = new TokenManager(store);
+        String first = manager.createRefreshToken(realm, user, client, RefreshToken.GRANT_CODE, null);
+        String second = manager.createRefreshToken(realm, user, client, RefreshToken.GRANT_CODE, null);
+
+        Assert.assertNotNull(manager.useRefreshToken(realm, first));
+        Assert.assertNull(manager.useRefreshToken(realm, first));
+        // nothing more can be recorded, so the token can't be exchanged safely
+        try {
+            manager.useRefreshToken(realm, second);
+            Assert.fail("Expected the refresh to be refused");
+        } catch (ServiceUnavailableException expected) {
+        }
+        Assert.assertEquals(1, store.getUsed(AccessCodeStore.SingleUse.REFRESH_TOKEN).getRejected());
+
+        // refreshes work again once there is room
+        store.getUsed(AccessCodeStore.SingleUse.REFRESH_TOKEN).clear();
+        Assert.assertNotNull(manager.useRefreshToken(realm, second));
+    }
+
+    @Test
+    public void testInvalid() {
+        String encoded = tokenManager.createRefreshToken(realm, user, null, RefreshToken.GRANT_ACCESS, null);
+        int index = encoded.length() - 5;
+        char c = encoded.charAt(index) == 'A' ? 'B' : 'A';
+        String tampered = encoded.substring(0, index) + c + encoded.substring(index + 1);
+        Assert.assertNull(tokenManager.useRefreshToken(realm, tampered));
+        Assert.assertNull(tokenManager.useRefreshToken(realm, "invalid"));
+
+        // the key changes with the realm keys
+        getRealmManager().generateRealmKeys(realm);
+        Assert.assertNull(tokenManager.useRefreshToken(realm, encoded));
+    }
+
+    @Test
+    public void testDisabled() {
+        realm.setRefreshTokenLifespan(0);
+        Assert.assertNull(tokenManager.createRefreshToken(realm, user, null, RefreshToken.GRANT_ACCESS, null));
+    }
+}
@@ -0,0 +1,188 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.ApplicationModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.RoleClosureCache;
+import org.keycloak.models.utils.RoleClosureCache.RealmRoles;
+import org.keycloak.models.utils.RoleClosureCache.RoleInfo;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.test.common.AbstractKeycloakTest;
+import org.keycloak.test.common.SessionFactoryTestContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class RoleClosureCacheTest extends AbstractKeycloakTest {
+
+    private RoleClosureCache cache;
+    private RealmModel realm;
+    private ApplicationModel app;
+    private RoleModel admin;
+    private RoleModel user;
+    private RoleModel appAdmin;
+    private RoleModel appUser;
+
+    public RoleClosureCacheTest(SessionFactoryTestContext testContext) {
+        super(testContext);
+    }
+
+    @Before
+    public void before() throws Exception {
+        super.before();
+        cache = new RoleClosureCache();
+        realm = getRealmManager().createRealm("Test");
+        admin = realm.addRole("admin");
+        user = realm.addRole("user");
+        app = new ApplicationManager(getRealmManager()).createApplication(realm, "app");
+        app.setSurrogateAuthRequired(true);
+        appAdmin = app.addRole("app-admin");
+        appUser = app.addRole("app-user");
+
+        admin.addCompositeRole(user);
+        admin.addCompositeRole(appAdmin);
+        appAdmin.addCompositeRole(appUser);
+    }
+
+    private Set<String> closure(RoleModel role) {
+        RealmRoles roles = cache.getRealmRoles(realm);
+        return names(roles.fromBits(roles.getRole(role).getClosure()));
+    }
+
+    private Set<String> names(List<RoleInfo> roles) {
+        Set<String> names = new HashSet<String>();
+        for (RoleInfo info : roles) {
+            names.add(info.toString());
+        }
+        return names;
+    }
+
+    private Set<String> names(String... names) {
+        Set<String> set = new HashSet<String>();
+        for (String name : names) set.add(name);
+        return set;
+    }
+
+    @Test
+    public void testClosure() {
+        Assert.assertEquals(names("admin", "user", "app/app-admin", "app/app-user"), closure(admin));
+        Assert.assertEquals(names("app/app-admin", "app/app-user"), closure(appAdmin));
+        Assert.assertEquals(names("user"), closure(user));
+
+        RealmRoles roles = cache.getRealmRoles(realm);
+        RoleInfo appUserInfo = roles.getRole(appUser);
+        Assert.assertFalse(appUserInfo.isRealmRole());
+        Assert.assertTrue(appUserInfo.isSurrogateAuthRequired());
+        Assert.assertTrue(roles.getRole(admin).hasRole(appUserInfo));
+        Assert.assertFalse(roles.getRole(user).hasRole(appUserInfo));
+    }
+
+    @Test
+    public void testApplyScope() {
+        RealmRoles roles = cache.getRealmRoles(realm);
+        BitSet effective = roles.closureOf(Arrays.asList(roles.getRole(user), roles.getRole(appAdmin)));
+
+        // the first roles the user has below the scope are requested, not the ones they contain
+        BitSet requested = TokenManager.applyScope(effective, Arrays.asList(roles.getRole(admin)));
+        Assert.assertEquals(names("user", "app/app-admin"), names(roles.fromBits(requested)));
+
+        requested = TokenManager.applyScope(effective, Arrays.asList(roles.getRole(appUser)));
+        Assert.assertEquals(names("app/app-user"), names(roles.fromBits(requested)));
+
+        effective = roles.closureOf(Arrays.asList(roles.getRole(user)));
+        requested = TokenManager.applyScope(effective, Arrays.asList(roles.getRole(appAdmin)));
+        Assert.assertTrue(requested.isEmpty());
+    }
+
+    @Test
+    public void testAccessTokenForApplications() {
+        UserModel bburke = realm.addUser("bburke");
+        realm.grantRole(bburke, admin);
+        TokenManager tokenManager = new TokenManager();
+
+        SkeletonKeyToken token = tokenManager.createAccessToken(realm, bburke);
+        Assert.assertNotNull(token.getResourceAccess("app"));
+
+        token = tokenManager.createAccessToken(realm, bburke, Collections.<String>emptyList());
+        Assert.assertEquals(names("admin", "user"), token.getRealmAccess().getRoles());
+        Assert.assertNull(token.getResourceAccess("app"));
+
+        token = tokenManager.createAccessToken(realm, bburke, Arrays.asList("app"));
+        Assert.assertEquals(names("app-admin", "app-user"), token.getResourceAccess("app").getRoles());
+    }
+
+    @Test
+    public void testHasRoleWithUnknownRoles() {
+        UserModel bburke = realm.addUser("bburke");
+        realm.grantRole(bburke, admin);
+        UserModel other = realm.addUser("other");
+        realm.grantRole(other, user);
+
+        // a snapshot of the current version that doesn't know the realm roles, like one loaded while they were added
+        RoleClosureCache shared = RoleClosureCache.getInstance();
+        shared.evict(realm.getId());
+        shared.getRealmRoles(withoutRealmRoles(realm));
+        try {
+            Assert.assertNull(shared.getRealmRoles(realm).getRole(admin));
+            Assert.assertTrue(realm.hasRole(bburke, user));
+            Assert.assertTrue(realm.hasRole(bburke, appUser));
+            Assert.assertFalse(realm.hasRole(other, admin));
+            Assert.assertFalse(realm.hasRole(other, appUser));
+        } finally {
+            shared.evict(realm.getId());
+        }
+    }
+
+    private static RealmModel withoutRealmRoles(final RealmModel realm) {
+        return (RealmModel) Proxy.newProxyInstance(RealmModel.class.getClassLoader(), new Class[] { RealmModel.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getRoles")) return Collections.emptySet();
+                        try {
+                            return method.invoke(realm, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void testCycle() {
+        appUser.addCompositeRole(admin);
+        Assert.assertEquals(closure(admin), closure(appUser));
+    }
+
+    @Test
+    public void testCachedUntilRolesChange() {
+        RealmRoles roles = cache.getRealmRoles(realm);
+        Assert.assertSame(roles, cache.getRealmRoles(realm));
+
+        user.addCompositeRole(appUser);
+        Assert.assertNotSame(roles, cache.getRealmRoles(realm));
+        Assert.assertEquals(names("user", "app/app-user"), closure(user));
+
+        admin.removeCompositeRole(appAdmin);
+        Assert.assertEquals(names("admin", "user", "app/app-user"), closure(admin));
+
+        appUser.setName("app-viewer");
+        Assert.assertEquals(names("admin", "user", "app/app-viewer"), closure(admin));
+
+        app.removeRoleById(appAdmin.getId());
+        Assert.assertEquals(names("admin", "user", "app/app-viewer"), closure(admin));
+        Assert.assertNull(cache.getRealmRoles(realm).getRole(appAdmin.getId()));
+    }
+}
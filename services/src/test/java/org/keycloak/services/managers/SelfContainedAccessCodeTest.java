@@ -0,0 +1,69 @@
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.test.common.AbstractKeycloakTest;
+import org.keycloak.test.common.SessionFactoryTestContext;
+
+public class SelfContainedAccessCodeTest extends AbstractKeycloakTest {
+
+    // two nodes sharing an access code store
+    private TokenManager node1;
+    private TokenManager node2;
+    private RealmModel realm;
+    private UserModel user;
+    private UserModel client;
+
+    public SelfContainedAccessCodeTest(SessionFactoryTestContext testContext) {
+        super(testContext);
+    }
+
+    @Before
+    public void before() throws Exception {
+        super.before();
+        AccessCodeStore store = new InMemoryAccessCodeStore();
+        node1 = new TokenManager(store);
+        node2 = new TokenManager(store);
+        realm = getRealmManager().createRealm("Test");
+        getRealmManager().generateRealmKeys(realm);
+        realm.setAccessCodeLifespan(60);
+        realm.setAccessCodeLifespanUserAction(300);
+        realm.setStatelessAccessCodes(true);
+        user = realm.addUser("bburke");
+        client = realm.addUser("third-party");
+    }
+
+    @Test
+    public void testSingleUseAcrossNodes() {
+        AccessCodeEntry code = node1.createAccessCode(null, "state", "http://localhost/app", realm, client, user);
+        Assert.assertTrue(code.isSelfContained());
+
+        Assert.assertNotNull(node2.pullAccessCode(realm, code.getKey()));
+        Assert.assertNull(node1.pullAccessCode(realm, code.getKey()));
+        Assert.assertNull(node1.getAccessCode(realm, code.getKey()));
+    }
+
+    @Test
+    public void testUpdateReplacesCode() {
+        AccessCodeEntry code = node1.createAccessCode(null, "state", "http://localhost/app", realm, client, user);
+        String first = code.getKey();
+        // another request holding on to the same code
+        AccessCodeEntry copy = node2.getAccessCode(realm, first);
+        Assert.assertNotNull(copy);
+
+        Assert.assertTrue(node1.updateAccessCode(realm, code));
+        String second = code.getKey();
+        Assert.assertFalse(first.equals(second));
+
+        Assert.assertNull(node2.getAccessCode(realm, first));
+        Assert.assertNull(node2.pullAccessCode(realm, first));
+        Assert.assertFalse(node2.updateAccessCode(realm, copy));
+        Assert.assertEquals(first, copy.getKey());
+
+        Assert.assertNotNull(node2.pullAccessCode(realm, second));
+        Assert.assertNull(node1.pullAccessCode(realm, second));
+    }
+}
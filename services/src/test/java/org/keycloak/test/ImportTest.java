@@ -1,20 +1,32 @@
 package org.keycloak.test;
 
+import net.iharder.Base64;
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.keycloak.RSATokenVerifier;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.models.ApplicationModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SocialLinkModel;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.Pbkdf2PasswordEncoder;
+import org.keycloak.representations.SkeletonKeyToken;
+import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.keycloak.services.managers.AuthenticationManager;
 import org.keycloak.services.managers.RealmManager;
+import org.keycloak.services.managers.TokenManager;
 import org.keycloak.test.common.AbstractKeycloakTest;
 import org.keycloak.test.common.SessionFactoryTestContext;
 
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -103,6 +115,128 @@ public class ImportTest extends AbstractKeycloakTest {
         verifyRequiredCredentials(realm.getRequiredOAuthClientCredentials(), "cert");
     }
 
+    @Test
+    public void installCredentials() throws Exception {
+        RealmManager manager = getRealmManager();
+        RealmRepresentation rep = AbstractKeycloakServerTest.loadJson("testrealm.json");
+
+        // enough users for the passwords to be hashed in parallel
+        for (int i = 0; i < 20; i++) {
+            rep.getUsers().add(new UserRepresentation().credential(CredentialRepresentation.PASSWORD, "password" + i));
+            rep.getUsers().get(rep.getUsers().size() - 1).setUsername("user" + i);
+        }
+
+        byte[] salt = Pbkdf2PasswordEncoder.getSalt();
+        CredentialRepresentation hashed = new CredentialRepresentation();
+        hashed.setType(CredentialRepresentation.PASSWORD);
+        hashed.setHashedSaltedValue(new Pbkdf2PasswordEncoder(salt, 1000).hash("hashedpassword"));
+        hashed.setSalt(Base64.encodeBytes(salt));
+        hashed.setHashIterations(1000);
+        UserRepresentation hashedUser = new UserRepresentation();
+        hashedUser.setUsername("hasheduser");
+        hashedUser.setCredentials(new ArrayList<CredentialRepresentation>());
+        hashedUser.getCredentials().add(hashed);
+        rep.getUsers().add(hashedUser);
+
+        RealmModel realm = manager.createRealm("demo", rep.getRealm());
+        manager.importRealm(rep, realm);
+
+        Assert.assertTrue(realm.validatePassword(realm.getUser("loginclient"), "clientpassword"));
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(realm.validatePassword(realm.getUser("user" + i), "password" + i));
+            Assert.assertFalse(realm.validatePassword(realm.getUser("user" + i), "password"));
+        }
+        Assert.assertTrue(realm.validatePassword(realm.getUser("hasheduser"), "hashedpassword"));
+        Assert.assertFalse(realm.validatePassword(realm.getUser("hasheduser"), "password"));
+    }
+
+    @Test
+    public void installHashedCredentialWithoutSalt() throws Exception {
+        CredentialRepresentation hashed = new CredentialRepresentation();
+        hashed.setType(CredentialRepresentation.PASSWORD);
+        hashed.setHashedSaltedValue(new Pbkdf2PasswordEncoder(Pbkdf2PasswordEncoder.getSalt(), 1000).hash("hashedpassword"));
+        try {
+            RealmManager.fromHashedRepresentation("hasheduser", hashed);
+            Assert.fail("Expected missing salt to be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Missing salt for hashed password credential of user hasheduser", e.getMessage());
+        }
+
+        hashed.setSalt("not base64!");
+        try {
+            RealmManager.fromHashedRepresentation("hasheduser", hashed);
+            Assert.fail("Expected invalid salt to be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Invalid salt for hashed password credential of user hasheduser", e.getMessage());
+        }
+    }
+
+    @Test
+    public void installHashedCredentialInvalidParameters() throws Exception {
+        CredentialRepresentation hashed = new CredentialRepresentation();
+        hashed.setType(CredentialRepresentation.PASSWORD);
+        hashed.setHashedSaltedValue(new Pbkdf2PasswordEncoder(Pbkdf2PasswordEncoder.getSalt(), 1000).hash("hashedpassword"));
+        hashed.setSalt(Base64.encodeBytes(Pbkdf2PasswordEncoder.getSalt()));
+
+        hashed.setAlgorithm("PBKDF2WithHmacMD4");
+        assertInvalidHashed(hashed, "Unsupported hash algorithm: PBKDF2WithHmacMD4 for hashed password credential of user hasheduser");
+        hashed.setAlgorithm(null);
+        hashed.setHashIterations(0);
+        assertInvalidHashed(hashed, "Invalid hash iterations: 0 for hashed password credential of user hasheduser");
+        hashed.setHashIterations(1000);
+        hashed.setKeySize(-512);
+        assertInvalidHashed(hashed, "Invalid hash key size: -512 for hashed password credential of user hasheduser");
+        hashed.setKeySize(null);
+        Assert.assertNotNull(RealmManager.fromHashedRepresentation("hasheduser", hashed));
+
+        // other credentials would be stored as they are, with the hash as the secret
+        hashed.setType(CredentialRepresentation.TOTP);
+        assertInvalidHashed(hashed, "Unsupported type for hashed totp credential of user hasheduser");
+    }
+
+    private void assertInvalidHashed(CredentialRepresentation hashed, String message) {
+        try {
+            RealmManager.fromHashedRepresentation("hasheduser", hashed);
+            Assert.fail("Expected " + message);
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void installEcKeys() throws Exception {
+        RealmManager manager = getRealmManager();
+        RealmRepresentation rep = AbstractKeycloakServerTest.loadJson("testrealm.json");
+        rep.setPrivateKey(null);
+        rep.setPublicKey(null);
+        rep.setKeyAlgorithm("ES512");
+        RealmModel realm = manager.importRealm(rep, (UserModel) null);
+
+        Assert.assertTrue(realm.getPublicKey() instanceof ECPublicKey);
+        Assert.assertEquals(521, ((ECPublicKey) realm.getPublicKey()).getParams().getCurve().getField().getFieldSize());
+        SkeletonKeyToken token = new AuthenticationManager().createIdentityToken(realm, "loginclient");
+        String encoded = new TokenManager().encodeToken(realm, token);
+        Assert.assertEquals(Algorithm.ES512, new JWSInput(encoded).getHeader().getAlgorithm());
+        Assert.assertEquals("loginclient", RSATokenVerifier.verifyToken(encoded, realm.getPublicKey(), realm.getName()).getSubject());
+    }
+
+    @Test
+    public void installInvalidKeyAlgorithm() throws Exception {
+        RealmManager manager = getRealmManager();
+        for (String algorithm : new String[] { "es256", "HS256", "none", "RSA" }) {
+            RealmRepresentation rep = AbstractKeycloakServerTest.loadJson("testrealm.json");
+            rep.setRealm("invalid-" + algorithm);
+            rep.setKeyAlgorithm(algorithm);
+            try {
+                manager.importRealm(rep, (UserModel) null);
+                Assert.fail("Expected " + algorithm + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("Unsupported realm key algorithm " + algorithm + ", expected RS256, ES256, ES384 or ES512", e.getMessage());
+            }
+            Assert.assertNull(manager.getRealmByName("invalid-" + algorithm));
+        }
+    }
+
     private void verifyRequiredCredentials(List<RequiredCredentialModel> requiredCreds, String expectedType) {
         Assert.assertEquals(1, requiredCreds.size());
         Assert.assertEquals(expectedType, requiredCreds.get(0).getType());
@@ -0,0 +1,106 @@
+package org.keycloak.testsuite.performance;
+
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.HMACProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.representations.SkeletonKeyToken;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+/**
+ * Measures the CPU time the token signing of a single browser login costs, before and after access codes and
+ * identity cookies were switched from RSA signatures to HMACs.  A login creates an access code, sets an identity
+ * cookie, exchanges the code for an access token and then verifies the identity cookie on the next request.  Only the
+ * access token still has to be RSA signed, as applications verify it with the realm's public key.
+ * <p/>
+ * Run with <code>java -cp ... org.keycloak.testsuite.performance.LoginSigningBenchmark [logins] [keySize]</code>.
+ */
+public class LoginSigningBenchmark {
+
+    private final KeyPair keyPair;
+    private final SecretKey accessCodeKey;
+    private final SecretKey identityCookieKey;
+
+    public LoginSigningBenchmark(int keySize) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(keySize);
+        keyPair = generator.generateKeyPair();
+        accessCodeKey = derive("keycloak-access-code");
+        identityCookieKey = derive("keycloak-identity-cookie");
+    }
+
+    private SecretKey derive(String label) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(keyPair.getPrivate().getEncoded(), "HmacSHA256"));
+        return new SecretKeySpec(mac.doFinal(label.getBytes("UTF-8")), "HmacSHA256");
+    }
+
+    private SkeletonKeyToken identityToken(int i) {
+        SkeletonKeyToken token = new SkeletonKeyToken();
+        token.id("id-" + i);
+        token.issuedNow();
+        token.principal(PerfTestUtils.getUsername(i));
+        token.audience("realm");
+        token.expiration(token.getIssuedAt() + 300);
+        return token;
+    }
+
+    private SkeletonKeyToken accessToken(int i) {
+        SkeletonKeyToken token = identityToken(i);
+        token.issuedFor("application");
+        token.addAccess("application").addRole("user");
+        return token;
+    }
+
+    public void loginBefore(int i) throws Exception {
+        String code = new JWSBuilder().content(("code-" + i).getBytes("UTF-8")).rsa256(keyPair.getPrivate());
+        String cookie = new JWSBuilder().jsonContent(identityToken(i)).rsa256(keyPair.getPrivate());
+        if (!RSAProvider.verify(new JWSInput(code), keyPair.getPublic())) throw new IllegalStateException();
+        new JWSBuilder().jsonContent(accessToken(i)).rsa256(keyPair.getPrivate());
+        if (!RSAProvider.verify(new JWSInput(cookie), keyPair.getPublic())) throw new IllegalStateException();
+    }
+
+    public void loginAfter(int i) throws Exception {
+        String code = new JWSBuilder().content(("code-" + i).getBytes("UTF-8")).hmac256(accessCodeKey);
+        String cookie = new JWSBuilder().jsonContent(identityToken(i)).hmac256(identityCookieKey);
+        if (!HMACProvider.verify(new JWSInput(code), accessCodeKey)) throw new IllegalStateException();
+        new JWSBuilder().jsonContent(accessToken(i)).rsa256(keyPair.getPrivate());
+        if (!HMACProvider.verify(new JWSInput(cookie), identityCookieKey)) throw new IllegalStateException();
+    }
+
+    /**
+     * @return CPU nanoseconds per login
+     */
+    public long measure(boolean before, int logins) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < logins; i++) {
+            if (before) loginBefore(i);
+            else loginAfter(i);
+        }
+        return (threads.getCurrentThreadCpuTime() - start) / logins;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int keySize = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+        LoginSigningBenchmark benchmark = new LoginSigningBenchmark(keySize);
+
+        // warm up both paths before measuring
+        benchmark.measure(true, logins / 10 + 1);
+        benchmark.measure(false, logins / 10 + 1);
+
+        long before = benchmark.measure(true, logins);
+        long after = benchmark.measure(false, logins);
+        System.out.println("RSA " + keySize + ", " + logins + " logins");
+        System.out.println("before: " + before / 1000 + " us CPU per login (3 RSA signatures, 2 RSA verifications)");
+        System.out.println("after:  " + after / 1000 + " us CPU per login (1 RSA signature, 2 HMACs, 2 HMAC verifications)");
+    }
+}